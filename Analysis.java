@@ -1,4 +1,14 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import soot.options.Options;
 
 import soot.Unit;
@@ -7,6 +17,7 @@ import soot.Body;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.jimple.Stmt;
+import soot.toolkits.graph.BriefUnitGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.util.cfgcmd.CFGToDotGraph;
 import soot.util.dot.DotGraph;
@@ -19,32 +30,73 @@ import soot.LongType;
 import soot.ByteType;
 import soot.ShortType;
 import soot.ValueBox;
-import soot.toolkits.graph.UnitGraph;
-import soot.toolkits.graph.BriefUnitGraph;
 import soot.jimple.IfStmt;
+import soot.jimple.IdentityStmt;
 import soot.jimple.AssignStmt;
 import soot.Type;
 import soot.ArrayType;
 import soot.jimple.NewArrayExpr;
-import soot.jimple.internal.JArrayRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.NullConstant;
+import soot.PackManager;
+import soot.SourceLocator;
+import soot.ClassProvider;
+import soot.asm.AsmClassProvider;
+import soot.asm.AsmJava9ClassProvider;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
 
 import pav.Pair;
 import pav.LatticeElement;
 import pav.IntervalElement;
+import pav.IntervalLattice;
+import pav.IntervalArrayElement;
+import pav.Liveness;
+import pav.LocalIndex;
+import pav.LongIntervalElement;
+import pav.PersistentLocalMap;
+import pav.PointerLattice;
+import pav.AllocationIndex;
 import pav.IntegerArrayPointer;
+import pav.IntegerArrayBitsetPointer;
+import pav.ProductElement;
+import pav.SparseGraph;
+import pav.PointGraph;
+import pav.ResultCache;
 import pav.Printer;
+import pav.AnalysisContext;
+import pav.FixpointStats;
+import pav.AnalysisMetrics;
+import pav.Fixpoint;
+import pav.ProgramPoints;
+import pav.MethodSummary;
+import pav.CallGraphOrder;
+import pav.BottomUpScheduler;
+import pav.IncrementalFixpoint;
+import pav.ResultFormat;
+import pav.ResultFileWriter;
+import pav.ClassIndex;
+import pav.ArrayAccessIndex;
+import pav.RelationalElement;
+import pav.VariablePacks;
 
 public class Analysis{
-    public static String targetDirectory;
-    public static String tClass;
-    public static String tMethod;
+    // Analysis function (the body must be retrieved beforehand, since Soot body building is not thread-safe).
+    // Returns the summary of the method for its callers (see summarize).
+    public static MethodSummary doAnalysis(Body body, AnalysisContext context) {
+        return doAnalysis(body, context, true, null);
+    }
 
-    // Analysis function
-    public static void doAnalysis(SootMethod targetMethod) {
-        Body body = targetMethod.retrieveActiveBody();
+    // Analysis of a method that only writes its output files if writeOutput is set (in interprocedural
+    // mode, callees are analyzed for their summaries only). If record is not null, the results are
+    // also encoded into it in the binary result format (see ResultFormat).
+    static MethodSummary doAnalysis(Body body, AnalysisContext context, boolean writeOutput, OutputStream record) {
+        // time of every phase (see AnalysisMetrics), kept if --metrics is given
+        AnalysisMetrics.Method metrics = new AnalysisMetrics.Method(body.getMethod().getSignature());
+        long phaseStart = System.nanoTime();
 
         // Get integer variables (considering byte, short, int, long)
-        List<Local> integerLocals = new ArrayList<>();
+        Set<Local> integerLocals = new LinkedHashSet<>();
         for (Local local : body.getLocals()) {
             if (local.getType() instanceof IntType ||
                     local.getType() instanceof LongType ||
@@ -65,75 +117,20 @@ public class Analysis{
             }
         }
 
-        // Create the CFG for the method
-        UnitGraph graph = new BriefUnitGraph(body);
-        Map<Unit, Set<Unit>> flow = new HashMap<>();
-        Unit entry = graph.getHeads().get(0);
-        for (Unit u : graph) {
-            flow.put(u, new HashSet<Unit>());
-            List<Unit> succs = graph.getSuccsOf(u);
-            for (Unit succ : succs) {
-                flow.get(u).add(succ);
-            }
-        }
-
         // Create a CFG based on program-points
-        Map<Integer, Set<Integer>> flowPoints = new HashMap<>();
-        int entryPoint = 0;
-
-        // Map from pairs of program-points to enclosing unit
-        Map<Pair<Integer, Integer>, Unit> enclosingUnit = new HashMap<>();
-
-        // Maintain a set of true branches
-        Set<Pair<Integer, Integer>> trueBranches = new HashSet<>();
-
-        // Add a point before every unit
-        Map<Unit, Integer> pointBeforeUnit = new HashMap<>();
-        pointBeforeUnit.put(entry, entryPoint);
-        int i = 1;
-        for (Unit u : graph) {
-            if (u != entry) {
-                pointBeforeUnit.put(u, i);
-                i++;
-            }
-        }
-
-        // populate flowPoints and enclosingUnit
-        for (Unit u : flow.keySet()) {
-            int uPoint = pointBeforeUnit.get(u);
-            Set<Integer> succPoints = new HashSet<>();
-            for (Unit succ : flow.get(u)) {
-                int succPoint = pointBeforeUnit.get(succ);
-                succPoints.add(succPoint);
-                enclosingUnit.put(new Pair<>(uPoint, succPoint), u);
-
-                // if u was an if statement, check if succ is the true-descendant
-                if (u instanceof IfStmt) {
-                    IfStmt ifStmt = (IfStmt) u;
-                    Unit trueTarget = ifStmt.getTarget();
-                    boolean isTrueBranch = succ.equals(trueTarget);
-                    if (isTrueBranch) {
-                        trueBranches.add(new Pair<>(uPoint, succPoint));
-                    }
-                }
-            }
-            flowPoints.put(uPoint, succPoints);
-        }
-
-        // Run the Kildall's algorithm
+        ProgramPoints points = new ProgramPoints(body);
+        PointGraph graph = points.graph;
+        Map<Unit, Integer> pointBeforeUnit = points.pointBeforeUnit;
+        // Initial element of the interval analysis
         Map<Local, Pair<Float, Float>> initialIntervalMap = new HashMap<>();
         for (Local local : integerLocals) {
             initialIntervalMap.put(local, new Pair<>(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY));
         }
-        IntervalElement initialElement = new IntervalElement(initialIntervalMap);
-
-        Map<Integer, LatticeElement> resultIntervalAnalysis = runKildall(initialElement, flowPoints,
-                enclosingUnit, trueBranches);
-
-        Printer.IntervalAnalysis(targetDirectory, tClass, tMethod, resultIntervalAnalysis);
+        final LocalIndex localIndex = new LocalIndex(body.getLocals());
+        LatticeElement initialElement = intervalElement(new HashMap<>(initialIntervalMap), localIndex, context);
 
         // get all integer arrays in the method
-        List<Local> integerArrays = new ArrayList<>();
+        Set<Local> integerArrays = new LinkedHashSet<>();
         for (Local local : body.getLocals()) {
             Type type = local.getType();
     
@@ -145,6 +142,8 @@ public class Analysis{
                 }
             }
         }
+        // the accesses to them, indexed once for the safety check
+        ArrayAccessIndex accessIndex = new ArrayAccessIndex(body, integerArrays, pointBeforeUnit);
 
         // get all the statements with "new int[...]"
         Set<Unit> newArrayStatements = new HashSet<>();
@@ -165,7 +164,19 @@ public class Analysis{
             }
         }
 
-        // Run the Kildall's algorithm for Pointer Analysis with integer arrays
+        // in interprocedural mode, a call whose callees always return a new integer array is an
+        // allocation site as well (the lengths of the arrays come from the summaries)
+        Map<Unit, MethodSummary> callAllocations = new HashMap<>();
+        for (Unit unit : body.getUnits()) {
+            MethodSummary summary = context.callSummary(unit);
+            if (summary != null && summary.returnLength != null && !summary.returnsNull
+                    && integerArrays.contains(((AssignStmt) unit).getLeftOp())) {
+                newArrayStatements.add(unit);
+                callAllocations.put(unit, summary);
+            }
+        }
+
+        // Initial element of the pointer analysis with integer arrays
         Map<Local, Set<Unit>> initialPointerMap = new HashMap<>();
 
         // make all integer array variables point to {null}
@@ -175,15 +186,160 @@ public class Analysis{
             initialPointerMap.get(local).add(null);
         }
 
-        IntegerArrayPointer initialIntegerArrayPointer = new IntegerArrayPointer(initialPointerMap, newArrayStatements);
-        
-        Map<Integer, LatticeElement> resultPointerAnalysis = runKildall(initialIntegerArrayPointer, flowPoints,
-                enclosingUnit, trueBranches);
-        Printer.PointerAnalysis(targetDirectory, tClass, tMethod, resultPointerAnalysis);
+        // for bitset points-to sets, allocation sites are numbered in the order of the statements
+        AllocationIndex allocationIndex = null;
+        if (context.option("pointer", "map").equals("bitset")) {
+            List<Unit> allocationSites = new ArrayList<>();
+            for (Unit unit : body.getUnits()) {
+                if (newArrayStatements.contains(unit)) {
+                    allocationSites.add(unit);
+                }
+            }
+            allocationIndex = new AllocationIndex(allocationSites);
+        }
+        LatticeElement initialPointerElement = pointerElement(initialPointerMap, localIndex, newArrayStatements,
+                allocationIndex, context);
+
+        FixpointStats intervalStats = new FixpointStats();
+        FixpointStats pointerStats = new FixpointStats();
+        FixpointStats productStats = null;
+        Map<Integer, LatticeElement> resultIntervalAnalysis;
+        Map<Integer, LatticeElement> resultPointerAnalysis;
+        // in sparse mode, chains of statements that touch neither integers nor integer arrays (and so
+        // cannot change any fact) are collapsed before the fixpoint is computed
+        SparseGraph sparseGraph = null;
+        if (context.flag("sparse")) {
+            Set<Unit> relevantUnits = new HashSet<>(intStatements);
+            for (Unit unit : body.getUnits()) {
+                if (unit instanceof IfStmt || unit instanceof IdentityStmt) {
+                    relevantUnits.add(unit);
+                    continue;
+                }
+                for (ValueBox box : unit.getUseAndDefBoxes()) {
+                    if (integerArrays.contains(box.getValue())) {
+                        relevantUnits.add(unit);
+                        break;
+                    }
+                }
+            }
+            sparseGraph = new SparseGraph(graph, relevantUnits);
+            graph = sparseGraph.graph;
+        }
+
+        // with --liveness, the facts of every point hold only the integers and integer arrays live there
+        Liveness liveness = null;
+        if (context.flag("liveness")) {
+            liveness = new Liveness(points.graph, pointBeforeUnit, localIndex);
+        }
+
+        // in incremental mode (server only, Kildall engine), the fixpoints start from the facts of the
+        // last analysis of the method wherever its body did not change
+        IncrementalFixpoint incremental = null;
+        Function<LatticeElement, LatticeElement> intervalTranslation = null;
+        Function<LatticeElement, LatticeElement> pointerTranslation = null;
+        if (context.flag("incremental") && context.factStore() != null
+                && context.option("engine", "kildall").equals("kildall")) {
+            incremental = new IncrementalFixpoint(context.factStore(), body, pointBeforeUnit, graph, liveness,
+                    context);
+            intervalTranslation = intervalTranslation(incremental, initialIntervalMap, localIndex, context);
+            pointerTranslation = pointerTranslation(incremental, initialPointerMap, localIndex, newArrayStatements,
+                    allocationIndex, context);
+        }
+
+        phaseStart = metrics.time(AnalysisMetrics.CFG, phaseStart);
+
+        boolean reduce = context.flag("reduce");
+        if (context.flag("product") || reduce) {
+            // both analyses in one fixpoint
+            Map<Unit, Integer> arrayLengths = null;
+            Set<Local> unknownArrays = Collections.emptySet();
+            if (reduce) {
+                unknownArrays = ProductElement.unknownArrays(body, integerArrays, newArrayStatements);
+                arrayLengths = new HashMap<>();
+                for (Unit unit : newArrayStatements) {
+                    if (callAllocations.containsKey(unit)) {
+                        Pair<Float, Float> length = callAllocations.get(unit).returnLength;
+                        if (length.first.equals(length.second)) {
+                            arrayLengths.put(unit, Math.round(length.first));
+                        }
+                        continue;
+                    }
+                    Value sizeValue = ((NewArrayExpr) ((AssignStmt) unit).getRightOp()).getSize();
+                    if (sizeValue instanceof IntConstant) {
+                        arrayLengths.put(unit, ((IntConstant) sizeValue).value);
+                    }
+                }
+            }
+            ProductElement initialProduct = new ProductElement((IntervalLattice) initialElement,
+                    (PointerLattice) initialPointerElement, arrayLengths, unknownArrays);
+            productStats = new FixpointStats();
+            Map<Integer, LatticeElement> resultProduct;
+            if (incremental != null) {
+                resultProduct = incremental.solve("product", initialProduct,
+                        productTranslation(intervalTranslation, pointerTranslation, arrayLengths,
+                                unknownArrays), productStats);
+            } else {
+                resultProduct = Fixpoint.solve(initialProduct, graph, liveness, context, productStats);
+            }
+
+            // split the product into the results of the two analyses
+            resultIntervalAnalysis = new HashMap<>();
+            resultPointerAnalysis = new HashMap<>();
+            for (Integer point : resultProduct.keySet()) {
+                ProductElement product = (ProductElement) resultProduct.get(point);
+                resultIntervalAnalysis.put(point, product.intervals);
+                resultPointerAnalysis.put(point, product.pointers);
+            }
+            phaseStart = metrics.time(AnalysisMetrics.PRODUCT, phaseStart);
+        } else if (incremental != null) {
+            resultIntervalAnalysis = incremental.solve("intervals", initialElement, intervalTranslation, intervalStats);
+            phaseStart = metrics.time(AnalysisMetrics.INTERVALS, phaseStart);
+            resultPointerAnalysis = incremental.solve("pointers", initialPointerElement, pointerTranslation,
+                    pointerStats);
+            phaseStart = metrics.time(AnalysisMetrics.POINTERS, phaseStart);
+        } else {
+            resultIntervalAnalysis = Fixpoint.solve(initialElement, graph, liveness, context, intervalStats);
+            phaseStart = metrics.time(AnalysisMetrics.INTERVALS, phaseStart);
+            resultPointerAnalysis = Fixpoint.solve(initialPointerElement, graph, liveness, context, pointerStats);
+            phaseStart = metrics.time(AnalysisMetrics.POINTERS, phaseStart);
+        }
+        if (incremental != null) {
+            incremental.finish();
+        }
+        // with --relational, differences between integers and array lengths are tracked as well, so
+        // that accesses such as a[i] under i < a.length or i < n with a = new int[n] are proven safe
+        Map<Integer, LatticeElement> resultRelationalAnalysis = null;
+        FixpointStats relationalStats = null;
+        if (context.flag("relational")) {
+            relationalStats = new FixpointStats();
+            RelationalElement initialRelations = new RelationalElement(
+                    new VariablePacks(body, integerLocals, integerArrays), context);
+            resultRelationalAnalysis = Fixpoint.solve(initialRelations, graph, context, relationalStats);
+            phaseStart = metrics.time(AnalysisMetrics.RELATIONAL, phaseStart);
+        }
+        if (sparseGraph != null) {
+            resultIntervalAnalysis = sparseGraph.expand(resultIntervalAnalysis);
+            resultPointerAnalysis = sparseGraph.expand(resultPointerAnalysis);
+            if (resultRelationalAnalysis != null) {
+                resultRelationalAnalysis = sparseGraph.expand(resultRelationalAnalysis);
+            }
+        }
+        phaseStart = metrics.time(AnalysisMetrics.CFG, phaseStart);
+
+        if (writeOutput) {
+            Printer.IntervalAnalysis(context.targetDirectory, context.tClass, context.tMethod, resultIntervalAnalysis);
+            Printer.PointerAnalysis(context.targetDirectory, context.tClass, context.tMethod, resultPointerAnalysis,
+                    pointBeforeUnit);
+        }
+        phaseStart = metrics.time(AnalysisMetrics.PRINTING, phaseStart);
 
         // record the size of each allocated array
         Map<Unit, Pair<Float, Float>> arraySizeMap = new HashMap<>();
         for (Unit unit : newArrayStatements) {
+            if (callAllocations.containsKey(unit)) {
+                arraySizeMap.put(unit, callAllocations.get(unit).returnLength);
+                continue;
+            }
             NewArrayExpr newArrayExpr = (NewArrayExpr) ((AssignStmt) unit).getRightOp();
             Value sizeValue = newArrayExpr.getSize();
             
@@ -194,154 +350,275 @@ public class Analysis{
             } 
             // check whether the array size is a variable
             else if (sizeValue instanceof Local) {
-                Pair<Float, Float> size = ((IntervalElement) resultIntervalAnalysis.get(pointBeforeUnit.get(unit))).intervalMap.get(sizeValue);
+                Pair<Float, Float> size = ((IntervalLattice) resultIntervalAnalysis.get(pointBeforeUnit.get(unit))).getInterval((Local) sizeValue);
                 arraySizeMap.put(unit, size);
             }
         }
 
-        // now check all the array accesses
+        // now check all the array accesses; a statement is safe if all its accesses are
+        ArrayAccessIndex.Verdict[] verdicts = accessIndex.check(resultIntervalAnalysis, resultPointerAnalysis,
+                resultRelationalAnalysis, arraySizeMap, pointBeforeUnit);
         Map<Integer, String> safetyMap = new HashMap<>();
-        int lineno = -1;
-        for (Unit unit : body.getUnits()) {
-            lineno++;
-
-            // get all JArrayRefs in the unit
-            List<JArrayRef> arrayRefs = new ArrayList<>();
-            for (ValueBox box : unit.getUseBoxes()) {
-                if (box.getValue() instanceof JArrayRef) {
-                    Local base = (Local) ((JArrayRef) box.getValue()).getBase();
-                    if (integerArrays.contains(base)) {
-                        arrayRefs.add((JArrayRef) box.getValue());
-                    }
-                }
+        for (int i = 0; i < verdicts.length; i++) {
+            int line = accessIndex.accesses.get(i).line;
+            if (!verdicts[i].safe || !safetyMap.containsKey(line)) {
+                safetyMap.put(line, verdicts[i].safe ? "Safe" : "Potentially Unsafe");
             }
-            for (ValueBox box : unit.getDefBoxes()) {
-                if (box.getValue() instanceof JArrayRef) {
-                    Local base = (Local) ((JArrayRef) box.getValue()).getBase();
-                    if (integerArrays.contains(base)) {
-                        arrayRefs.add((JArrayRef) box.getValue());
-                    }
-                }
+        }
+        phaseStart = metrics.time(AnalysisMetrics.SAFETY, phaseStart);
+
+        if (writeOutput) {
+            Printer.ArraySafety(context.targetDirectory, context.tClass, context.tMethod, safetyMap);
+            if (context.flag("details")) {
+                Printer.ArrayAccesses(context.targetDirectory, context.tClass, context.tMethod, accessIndex.accesses,
+                        verdicts);
+            }
+        }
+        if (record != null) {
+            try {
+                ResultFormat.encode(record, resultIntervalAnalysis, resultPointerAnalysis, safetyMap, newArrayStatements,
+                        pointBeforeUnit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
+        metrics.time(AnalysisMetrics.PRINTING, phaseStart);
 
-            if (arrayRefs.isEmpty()) {
-                continue;
+        if (context.metrics() != null) {
+            metrics.points = pointBeforeUnit.size();
+            metrics.stats.add(intervalStats);
+            metrics.stats.add(pointerStats);
+            if (productStats != null) {
+                metrics.stats.add(productStats);
+            }
+            if (relationalStats != null) {
+                metrics.stats.add(relationalStats);
             }
+            context.metrics().add(metrics);
+        }
 
-            boolean safe = true;
-
-            // check that neither interval analysis nor pointer analysis is bot
-            if (!(resultIntervalAnalysis.get(pointBeforeUnit.get(unit)).isBot() || resultPointerAnalysis.get(pointBeforeUnit.get(unit)).isBot())) {
-                // every array access should be safe
-                for (JArrayRef arrayRef : arrayRefs) {
-                    Local base = (Local) arrayRef.getBase();
-                    Value index = arrayRef.getIndex();
-
-                    // check if the index is a constant or a variable (and get its interval)
-                    Pair<Float, Float> indexInterval = null;
-                    if (index instanceof Constant) {
-                        int indexValue = ((IntConstant) index).value;
-                        indexInterval = new Pair<>((float) indexValue, (float) indexValue);
-                    } else if (index instanceof Local) {
-                        indexInterval = ((IntervalElement) resultIntervalAnalysis.get(pointBeforeUnit.get(unit))).intervalMap.get(index);
-                    } else {   // To prevent indexInterval from being null
-                        indexInterval = new Pair<>((float) 0, (float) 0);
-                    }
+        if (context.flag("stats")) {
+            String fixpoints = productStats != null ? "product analysis: " + productStats
+                    : "interval analysis: " + intervalStats + "; pointer analysis: " + pointerStats;
+            if (relationalStats != null) {
+                fixpoints += "; relational analysis: " + relationalStats;
+            }
+            String sparse = sparseGraph == null ? "" : ", sparse: " + sparseGraph.size() + " of "
+                    + pointBeforeUnit.size() + " points";
+            String kept = incremental == null ? "" : ", incremental: " + incremental;
+            String live = liveness == null ? "" : ", liveness: " + liveness;
+            System.out.println(context.tClass + "." + context.tMethod + ": " + fixpoints + " ("
+                    + context.option("engine", "kildall") + ", " + context.option("worklist", "fifo") + sparse + kept
+                    + live + ")");
+        }
 
-                    // check what the base points to
-                    Set<Unit> basePointsTo = ((IntegerArrayPointer) resultPointerAnalysis.get(pointBeforeUnit.get(unit))).pointerMap.get(base);
+        return summarize(body, resultIntervalAnalysis, resultPointerAnalysis, pointBeforeUnit, arraySizeMap);
+    }
 
-                    // check if the base points to null
-                    if (basePointsTo.contains(null)) {
-                        safe = false; // null pointer possible!
-                        break;
-                    }
+    // Interval element in the representation chosen by the "interval" option (map, array, persistent
+    // or long)
+    private static LatticeElement intervalElement(Map<Local, Pair<Float, Float>> intervals, LocalIndex localIndex,
+            AnalysisContext context) {
+        String intervalRepresentation = context.option("interval", "map");
+        if (intervalRepresentation.equals("map")) {
+            return new IntervalElement(intervals, context);
+        } else if (intervalRepresentation.equals("array")) {
+            return new IntervalArrayElement(intervals, localIndex, context);
+        } else if (intervalRepresentation.equals("persistent")) {
+            return new IntervalElement(new PersistentLocalMap<>(localIndex, intervals), context);
+        } else if (intervalRepresentation.equals("long")) {
+            return new LongIntervalElement(intervals, localIndex, context);
+        } else {
+            throw new IllegalArgumentException("Unknown interval representation: " + intervalRepresentation);
+        }
+    }
 
-                    // check that the index is within the bounds of all the arrays that base points to
-                    for (Unit newArrayStmt : basePointsTo) {
-                        Pair<Float, Float> arraySize = arraySizeMap.get(newArrayStmt);
-                        if (arraySize != null) {
-                            if (indexInterval.second >= arraySize.first) {
-                                safe = false; // out of bounds access!
-                                break;
-                            }
-                        }
-                    }
+    // Pointer element in the representation chosen by the "pointer" option (map, persistent or bitset)
+    private static LatticeElement pointerElement(Map<Local, Set<Unit>> pointsTo, LocalIndex localIndex,
+            Set<Unit> newArrayStatements, AllocationIndex allocationIndex, AnalysisContext context) {
+        String pointerRepresentation = context.option("pointer", "map");
+        if (pointerRepresentation.equals("map")) {
+            return new IntegerArrayPointer(pointsTo, newArrayStatements);
+        } else if (pointerRepresentation.equals("persistent")) {
+            return new IntegerArrayPointer(new PersistentLocalMap<>(localIndex, pointsTo), newArrayStatements);
+        } else if (pointerRepresentation.equals("bitset")) {
+            return new IntegerArrayBitsetPointer(pointsTo, localIndex, allocationIndex);
+        } else {
+            throw new IllegalArgumentException("Unknown pointer representation: " + pointerRepresentation);
+        }
+    }
 
+    // Translation of the interval facts of the last analysis of a method to its new body
+    private static Function<LatticeElement, LatticeElement> intervalTranslation(final IncrementalFixpoint incremental,
+            final Map<Local, Pair<Float, Float>> initialIntervalMap, final LocalIndex localIndex,
+            final AnalysisContext context) {
+        final LatticeElement bot = intervalElement(new HashMap<>(initialIntervalMap), localIndex, context).getBot();
+        return new Function<LatticeElement, LatticeElement>() {
+            public LatticeElement apply(LatticeElement fact) {
+                if (fact.isBot()) {
+                    return bot;
                 }
-            } 
-            // otherwise, unreachable code is safe!
+                return intervalElement(incremental.intervals((IntervalLattice) fact, initialIntervalMap), localIndex,
+                        context);
+            }
+        };
+    }
 
-            safetyMap.put(lineno, safe ? "Safe" : "Potentially Unsafe");
-        }
+    // Translation of the points-to facts of the last analysis of a method to its new body
+    private static Function<LatticeElement, LatticeElement> pointerTranslation(final IncrementalFixpoint incremental,
+            final Map<Local, Set<Unit>> initialPointerMap, final LocalIndex localIndex,
+            final Set<Unit> newArrayStatements, final AllocationIndex allocationIndex, final AnalysisContext context) {
+        final LatticeElement bot = pointerElement(initialPointerMap, localIndex, newArrayStatements, allocationIndex,
+                context).getBot();
+        return new Function<LatticeElement, LatticeElement>() {
+            public LatticeElement apply(LatticeElement fact) {
+                if (fact.isBot()) {
+                    return bot;
+                }
+                Map<Local, Set<Unit>> pointsTo = incremental.pointsTo((PointerLattice) fact, initialPointerMap,
+                        newArrayStatements);
+                return pointsTo == null ? null
+                        : pointerElement(pointsTo, localIndex, newArrayStatements, allocationIndex, context);
+            }
+        };
+    }
 
-        Printer.ArraySafety(targetDirectory, tClass, tMethod, safetyMap);
+    // Translation of the facts of the product analysis, component by component
+    private static Function<LatticeElement, LatticeElement> productTranslation(
+            final Function<LatticeElement, LatticeElement> intervalTranslation,
+            final Function<LatticeElement, LatticeElement> pointerTranslation, final Map<Unit, Integer> arrayLengths,
+            final Set<Local> unknownArrays) {
+        return new Function<LatticeElement, LatticeElement>() {
+            public LatticeElement apply(LatticeElement fact) {
+                ProductElement product = (ProductElement) fact;
+                LatticeElement intervals = intervalTranslation.apply(product.intervals);
+                LatticeElement pointers = pointerTranslation.apply(product.pointers);
+                if (pointers == null) {
+                    return null;
+                }
+                return new ProductElement((IntervalLattice) intervals, (PointerLattice) pointers, arrayLengths,
+                        unknownArrays);
+            }
+        };
     }
 
-    // Running Kildall's algorithm
-    public static Map<Integer, LatticeElement> runKildall(LatticeElement initialElement, Map<Integer, Set<Integer>> flowPoints,
-            Map<Pair<Integer, Integer>, Unit> enclosingUnit, Set<Pair<Integer, Integer>> trueBranches) {
-        // facts will store details necessary for pointer_analysis
-        Map<Integer, LatticeElement> facts = new HashMap<>();
-        
-        // Initialize facts with initial lattice elements
-        for (Integer point : flowPoints.keySet()) {
-            facts.put(point, initialElement.getBot());
+    // Summary of a method for its callers, from the results at its return statements: the hull of the
+    // returned integers, or for integer arrays, the hull of the lengths of the returned arrays and
+    // whether null may be returned. Returns null if the method returns neither, or never returns.
+    private static MethodSummary summarize(Body body, Map<Integer, LatticeElement> resultIntervalAnalysis,
+            Map<Integer, LatticeElement> resultPointerAnalysis, Map<Unit, Integer> pointBeforeUnit,
+            Map<Unit, Pair<Float, Float>> arraySizeMap) {
+        Type returnType = body.getMethod().getReturnType();
+        boolean returnsInteger = isIntegerType(returnType);
+        boolean returnsIntegerArray = isIntegerArrayType(returnType);
+        if (!returnsInteger && !returnsIntegerArray) {
+            return null;
         }
-        facts.put(0, initialElement);
-
-        // Initialize worklist with all nodes in the flowPoints
-        Queue<Integer> worklist = new LinkedList<>(flowPoints.keySet());
-
-        // Process the worklist
-        while (!worklist.isEmpty()) {
-            Integer current = worklist.poll();
-            LatticeElement oldFact = facts.get(current);
-
-            // Compute the current fact to all successors
-            for (Integer succ : flowPoints.get(current)) {
-                Pair<Integer, Integer> transition = new Pair<>(current, succ);
-                LatticeElement newFact = oldFact.tf_assignment((Stmt) enclosingUnit.get(transition), trueBranches.contains(transition));
-                LatticeElement oldSuccFact = facts.get(succ);
-                LatticeElement newSuccFact = oldSuccFact.join(newFact);
-                facts.put(succ, newSuccFact);
-                if (!newSuccFact.equals(oldSuccFact)) {
-                    worklist.add(succ);
+        Pair<Float, Float> returnInterval = null;
+        Pair<Float, Float> returnLength = null;
+        boolean returnsNull = false;
+        boolean returns = false;
+        for (Unit unit : body.getUnits()) {
+            if (!(unit instanceof ReturnStmt)) {
+                continue;
+            }
+            IntervalLattice intervals = (IntervalLattice) resultIntervalAnalysis.get(pointBeforeUnit.get(unit));
+            PointerLattice pointers = (PointerLattice) resultPointerAnalysis.get(pointBeforeUnit.get(unit));
+            if (intervals.isBot() || pointers.isBot()) {
+                continue; // unreachable
+            }
+            Value value = ((ReturnStmt) unit).getOp();
+            Pair<Float, Float> interval = null;
+            if (returnsInteger) {
+                if (value instanceof IntConstant) {
+                    float constant = ((IntConstant) value).value;
+                    interval = new Pair<>(constant, constant);
+                } else if (value instanceof Local && intervals.getInterval((Local) value) != null) {
+                    interval = intervals.getInterval((Local) value);
+                } else {
+                    interval = new Pair<>(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+                }
+            } else {
+                Set<Unit> pointsTo = value instanceof Local ? pointers.getPointsTo((Local) value) : null;
+                if (value instanceof NullConstant) {
+                    returnsNull = true;
+                    continue;
+                } else if (pointsTo == null) {
+                    return null; // not tracked
+                }
+                for (Unit site : pointsTo) {
+                    if (site == null) {
+                        returnsNull = true;
+                        continue;
+                    }
+                    Pair<Float, Float> length = arraySizeMap.get(site);
+                    if (length == null) {
+                        length = new Pair<>(0f, Float.POSITIVE_INFINITY);
+                    }
+                    interval = interval == null ? length : MethodSummary.join(interval, length);
+                }
+                if (interval == null) {
+                    continue; // only null
                 }
             }
+            if (returnsInteger) {
+                returnInterval = returns ? MethodSummary.join(returnInterval, interval) : interval;
+            } else {
+                returnLength = returnLength == null ? interval : MethodSummary.join(returnLength, interval);
+            }
+            returns = true;
         }
-
-        // Return the final facts map
-        return facts;
+        if (!returns && !returnsNull) {
+            return null;
+        }
+        return new MethodSummary(returnInterval, returnLength, returnsNull);
     }
 
-    public static void main(String[] args) {
-        String targetDirectory = args[0];
-        String mClass = args[1];
-        String tClass = args[2];
-        String tMethod = args[3];
-        float upperBound = Float.parseFloat(args[4]);
-        boolean methodFound = false;
+    private static boolean isIntegerType(Type type) {
+        return type instanceof IntType || type instanceof LongType || type instanceof ByteType
+                || type instanceof ShortType;
+    }
 
-        Analysis.targetDirectory = targetDirectory;
-        Analysis.tClass = tClass;
-        Analysis.tMethod = tMethod;
+    private static boolean isIntegerArrayType(Type type) {
+        return type instanceof ArrayType && ((ArrayType) type).getElementType().toString().equals("int");
+    }
 
-        List<String> procDir = new ArrayList<String>();
-        procDir.add(targetDirectory);
+    public static void main(String[] args) {
+        // positional arguments, followed by optional --name or --name=value flags
+        List<String> positional = new ArrayList<>();
+        Map<String, String> flags = parseFlags(args, positional);
+        if (flags.containsKey("batch")) {
+            runBatch(positional, flags);
+            return;
+        }
+        if (flags.containsKey("query")) {
+            ResultQuery.run(positional);
+            return;
+        }
+        if (flags.containsKey("server")) {
+            try {
+                AnalysisServer.run(positional, flags);
+            } catch (java.io.IOException e) {
+                System.out.println("Server stopped: " + e);
+                System.exit(1);
+            }
+            return;
+        }
 
-        // Set Soot options
-        soot.G.reset();
-        Options.v().set_process_dir(procDir);
-        // Options.v().set_prepend_classpath(true);
-        Options.v().set_src_prec(Options.src_prec_only_class);
-        Options.v().set_whole_program(true);
-        Options.v().set_allow_phantom_refs(true);
-        Options.v().set_output_format(Options.output_format_none);
-        Options.v().set_keep_line_number(true);
-        Options.v().setPhaseOption("cg.spark", "verbose:false");
+        String targetDirectory = positional.get(0);
+        String mClass = positional.get(1);
+        String tClass = positional.get(2);
+        String tMethod = positional.get(3);
+        float upperBound = Float.parseFloat(positional.get(4));
+        boolean methodFound = false;
 
-        Scene.v().loadNecessaryClasses();
+        AnalysisMetrics metrics = openMetrics(flags);
+        long startTime = System.nanoTime();
+        setupSoot(targetDirectory, flags);
+        loadClasses(targetDirectory, flags, Arrays.asList(mClass, tClass));
+        if (metrics != null) {
+            metrics.time(AnalysisMetrics.SOOT_LOAD, System.nanoTime() - startTime);
+        }
 
         SootClass entryClass = Scene.v().getSootClass(mClass);
         //SootMethod entryMethod = entryClass.getMethodByNameUnsafe("main");
@@ -369,25 +646,541 @@ public class Analysis{
         // If tMethod is found in targetClass 
         if (methodFound) {
             Printer.Info(targetMethod);
-            drawMethodDependenceGraph(targetMethod);
+            if (!lean(flags) || flags.containsKey("dot")) {
+                drawMethodDependenceGraph(targetDirectory, targetMethod, lean(flags));
+            }
 
-            IntervalElement.lowerBound = 0;
-            IntervalElement.upperBound = upperBound;
-            doAnalysis(targetMethod);
+            ResultFileWriter resultFile = openResultFile(flags);
+            AnalysisContext context = new AnalysisContext(targetDirectory, tClass, tMethod, 0, upperBound, flags)
+                    .withResultFile(resultFile).withMetrics(metrics);
+            ResultCache cache = openCache(flags);
+            if (context.flag("interprocedural")) {
+                Map<String, List<Body>> jobs = new HashMap<>();
+                jobs.put(tClass + "." + tMethod, Collections.singletonList(targetMethod.retrieveActiveBody()));
+                runInterprocedural(jobs, context, cache);
+            } else {
+                analyzeMethod(targetMethod.retrieveActiveBody(), context, cache);
+            }
+            closeResultFile(resultFile);
+            closeMetrics(metrics, flags);
+            printCacheStats(cache);
         } else {
             System.out.println("Method not found: " + tMethod);
             System.exit(1);
         }
     }
 
-    private static void drawMethodDependenceGraph(SootMethod method) {
+    // Split the command line into positional arguments and --name[=value] flags
+    static Map<String, String> parseFlags(String[] args, List<String> positional) {
+        Map<String, String> flags = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    flags.put(arg.substring(2), "");
+                } else {
+                    flags.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+        return flags;
+    }
+
+    // Set Soot options
+    static void setupSoot(String targetDirectory, Map<String, String> flags) {
+        List<String> procDir = new ArrayList<String>();
+        procDir.add(targetDirectory);
+
+        soot.G.reset();
+        if (!lazy(flags)) {
+            Options.v().set_process_dir(procDir);
+        }
+        // Options.v().set_prepend_classpath(true);
+        Options.v().set_src_prec(Options.src_prec_only_class);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_output_format(Options.output_format_none);
+        // in lean mode, the whole-program setup is left out unless the call graph is needed: the
+        // intraprocedural analysis only needs the bodies of the analyzed methods
+        if (!lean(flags) || flags.containsKey("interprocedural")) {
+            Options.v().set_whole_program(true);
+            Options.v().set_keep_line_number(true);
+            Options.v().setPhaseOption("cg.spark", "verbose:false");
+        }
+        if (flags.containsKey("interprocedural")) {
+            // the call graph only needs the application classes; building it through the bodies of
+            // the JDK would take minutes
+            Options.v().set_exclude(Arrays.asList("java.*", "javax.*", "jdk.*", "sun.*", "com.sun.*"));
+            Options.v().set_no_bodies_for_excluded(true);
+        }
+    }
+
+    // Check whether only what the analysis needs is run (--lean): no whole-program mode, and no CFG
+    // in DOT format unless --dot is given
+    static boolean lean(Map<String, String> flags) {
+        return flags.containsKey("lean");
+    }
+
+    // Check whether classes are loaded lazily from a class index (--lazy, or --input=path:...)
+    static boolean lazy(Map<String, String> flags) {
+        return flags.containsKey("lazy") || flags.containsKey("input");
+    }
+
+    // Load the classes of the Scene after setupSoot. Normally these are all the classes of the target
+    // directory. With --lazy, the class files of the target directory (or of the jars and directories
+    // of --input) are memory-mapped and indexed, and only the classes reachable from those that match
+    // one of classGlobs are loaded; everything else is resolved by Soot on demand.
+    static void loadClasses(String targetDirectory, Map<String, String> flags, List<String> classGlobs) {
+        if (!lazy(flags)) {
+            Scene.v().loadNecessaryClasses();
+            return;
+        }
+        List<String> roots = flags.containsKey("input") && !flags.get("input").isEmpty()
+                ? Arrays.asList(flags.get("input").split(java.io.File.pathSeparator))
+                : Collections.singletonList(targetDirectory);
+        ClassIndex classIndex;
+        Set<String> reachable;
+        try {
+            classIndex = new ClassIndex(roots);
+            List<String> targetClasses = new ArrayList<>();
+            for (String className : classIndex.classNames()) {
+                for (String classGlob : classGlobs) {
+                    if (globMatches(classGlob, className)) {
+                        targetClasses.add(className);
+                        break;
+                    }
+                }
+            }
+            reachable = classIndex.reachable(targetClasses);
+        } catch (IOException e) {
+            System.out.println("Cannot read classes from " + roots + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // the indexed classes come first; the JDK is found as usual (in its modules since Java 9)
+        List<ClassProvider> classProviders = new ArrayList<>();
+        classProviders.add(classIndex.classProvider());
+        classProviders.add(new AsmClassProvider());
+        if (!System.getProperty("java.version").startsWith("1.")) {
+            classProviders.add(new AsmJava9ClassProvider());
+        }
+        SourceLocator.v().setClassProviders(classProviders);
+        Scene.v().loadBasicClasses();
+        for (String className : reachable) {
+            SootClass sc = Scene.v().loadClassAndSupport(className);
+            if (!sc.isPhantom()) {
+                sc.setApplicationClass();
+            }
+        }
+        Scene.v().loadDynamicClasses();
+        Scene.v().setDoneResolving();
+        System.out.println("Loaded " + reachable.size() + " of " + classIndex.classNames().size() + " classes");
+    }
+
+    // Batch mode: load the Scene once and analyze every matching concrete method
+    // Usage: Analysis --batch <Dir> <ClassGlob> <MethodGlob> <UpperBound> [--threads=N]
+    public static void runBatch(List<String> positional, Map<String, String> flags) {
+        if (positional.size() != 4) {
+            System.out.println("Usage: Analysis --batch <Dir> <ClassGlob> <MethodGlob> <UpperBound> [--threads=N]");
+            System.exit(1);
+        }
+        String targetDirectory = positional.get(0);
+        String classGlob = positional.get(1);
+        String methodGlob = positional.get(2);
+        float upperBound = Float.parseFloat(positional.get(3));
+        int threads = flags.containsKey("threads") ? Integer.parseInt(flags.get("threads"))
+                : Runtime.getRuntime().availableProcessors();
+
+        AnalysisMetrics metrics = openMetrics(flags);
+        long startTime = System.nanoTime();
+        setupSoot(targetDirectory, flags);
+        loadClasses(targetDirectory, flags, Collections.singletonList(classGlob));
+        long loadTime = System.nanoTime() - startTime;
+        System.out.println("Scene loaded in " + (loadTime / 1000000) + " ms");
+
+        ResultFileWriter resultFile = openResultFile(flags);
+        final AnalysisContext runContext = new AnalysisContext(targetDirectory, null, null, 0, upperBound, flags)
+                .withResultFile(resultFile).withMetrics(metrics);
+        final ResultCache cache = openCache(flags);
+
+        // Retrieve all bodies up front, since Soot body building is not thread-safe.
+        // Every method is a job of its own, named by its output name (see outputName).
+        Map<String, List<Body>> jobs = new LinkedHashMap<>();
+        int failed = 0;
+        // copy the class list, since retrieving bodies may add phantom classes to the Scene
+        List<SootClass> classes = new ArrayList<>(Scene.v().getApplicationClasses());
+        for (SootClass sc : classes) {
+            if (!globMatches(classGlob, sc.getName())) {
+                continue;
+            }
+            for (SootMethod sm : new ArrayList<>(sc.getMethods())) {
+                if (sm.isPhantom() || !sm.isConcrete() || !globMatches(methodGlob, sm.getName())) {
+                    continue;
+                }
+                try {
+                    Body body = sm.retrieveActiveBody();
+                    jobs.put(sc.getName() + "." + outputName(sm), Collections.singletonList(body));
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.out.println(sc.getName() + "." + sm.getName() + ": failed (" + e + ")");
+                }
+            }
+        }
+        long bodyTime = System.nanoTime() - startTime - loadTime;
+        System.out.println("Bodies retrieved in " + (bodyTime / 1000000) + " ms");
+        if (metrics != null) {
+            metrics.time(AnalysisMetrics.SOOT_LOAD, loadTime);
+            metrics.time(AnalysisMetrics.BODIES, bodyTime);
+        }
+
+        final AtomicInteger analyzed = new AtomicInteger();
+        final AtomicInteger failedAnalysis = new AtomicInteger(failed);
+        if (runContext.flag("interprocedural")) {
+            // callers need the summaries of their callees, so the call graph decides the order
+            int failedMethods = runInterprocedural(jobs, runContext, cache);
+            for (List<Body> bodies : jobs.values()) {
+                analyzed.addAndGet(bodies.size());
+            }
+            analyzed.addAndGet(-failedMethods);
+            failedAnalysis.addAndGet(failedMethods);
+        } else {
+            // Analyze the independent methods on a work-stealing pool
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (final List<Body> bodies : jobs.values()) {
+                tasks.add(pool.submit(new Runnable() {
+                    public void run() {
+                        for (Body body : bodies) {
+                            SootMethod sm = body.getMethod();
+                            String name = sm.getDeclaringClass().getName() + "." + outputName(sm);
+                            long methodStart = System.nanoTime();
+                            try {
+                                analyzeMethod(body,
+                                        runContext.forMethod(sm.getDeclaringClass().getName(), outputName(sm)), cache);
+                                analyzed.incrementAndGet();
+                                System.out.println(name + ": " + ((System.nanoTime() - methodStart) / 1000000)
+                                        + " ms");
+                            } catch (RuntimeException e) {
+                                // a single broken method should not stop the batch
+                                failedAnalysis.incrementAndGet();
+                                System.out.println(name + ": failed (" + e + ")");
+                            }
+                        }
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            pool.shutdown();
+        }
+
+        closeResultFile(resultFile);
+        closeMetrics(metrics, flags);
+
+        long totalTime = System.nanoTime() - startTime;
+        System.out.println("Analyzed " + analyzed.get() + " methods (" + failedAnalysis.get() + " failed) on "
+                + threads + " threads in " + (totalTime / 1000000) + " ms ("
+                + ((totalTime - loadTime - bodyTime) / 1000000) + " ms analysis)");
+        printCacheStats(cache);
+    }
+
+    // Analysis of one method, whose results are taken from the result cache (if there is one) when
+    // it holds the results of an identical body under the same configuration; returns its summary.
+    // With --binary, the results are also appended to the binary result file.
+    public static MethodSummary analyzeMethod(Body body, AnalysisContext context, ResultCache cache) {
+        ByteArrayOutputStream record = context.resultFile() == null ? null : new ByteArrayOutputStream();
+        String key = cache == null ? null : cache.key(body, context);
+        if (key != null && cache.restore(key, context)) {
+            byte[] cachedRecord = record == null ? null : cache.record(key);
+            if (record == null || cachedRecord != null) {
+                appendRecord(context, cachedRecord);
+                return cache.summary(key);
+            }
+        }
+        MethodSummary summary = doAnalysis(body, context, true, record);
+        byte[] bytes = record == null ? null : record.toByteArray();
+        appendRecord(context, bytes);
+        if (key != null) {
+            cache.store(key, context, summary, bytes);
+        }
+        return summary;
+    }
+
+    private static void appendRecord(AnalysisContext context, byte[] record) {
+        if (record == null) {
+            return;
+        }
+        try {
+            context.resultFile().append(context.tClass, context.tMethod, record);
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + context.resultFile().fileName);
+        }
+    }
+
+    // Name of a method in its output files: its name, followed by its parameter types if another
+    // concrete method of its class has the same name, so that overloads do not overwrite each
+    // other's files (e.g. Output_Test_over(int[]).txt)
+    public static String outputName(SootMethod sm) {
+        for (SootMethod other : sm.getDeclaringClass().getMethods()) {
+            if (other != sm && other.isConcrete() && other.getName().equals(sm.getName())) {
+                StringBuilder name = new StringBuilder(sm.getName()).append('(');
+                for (int i = 0; i < sm.getParameterCount(); i++) {
+                    name.append(i == 0 ? "" : ",").append(sm.getParameterType(i));
+                }
+                return name.append(')').toString();
+            }
+        }
+        return sm.getName();
+    }
+
+    // Binary result file given by --binary=file, or null if none was requested
+    static ResultFileWriter openResultFile(Map<String, String> flags) {
+        if (!flags.containsKey("binary")) {
+            return null;
+        }
+        try {
+            return new ResultFileWriter(flags.get("binary"));
+        } catch (IOException e) {
+            System.out.println("Cannot create binary result file " + flags.get("binary") + ": " + e);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static void closeResultFile(ResultFileWriter resultFile) {
+        if (resultFile == null) {
+            return;
+        }
+        try {
+            resultFile.close();
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + resultFile.fileName);
+        }
+    }
+
+    // Metrics of the run if --metrics[=file] is given (published over JMX until closeMetrics), else null
+    static AnalysisMetrics openMetrics(Map<String, String> flags) {
+        if (!flags.containsKey("metrics")) {
+            return null;
+        }
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        metrics.register();
+        return metrics;
+    }
+
+    // Write the summary file of the metrics (if --metrics=file names one) and stop publishing them
+    static void closeMetrics(AnalysisMetrics metrics, Map<String, String> flags) {
+        if (metrics == null) {
+            return;
+        }
+        writeMetrics(metrics, flags);
+        metrics.unregister();
+    }
+
+    static void writeMetrics(AnalysisMetrics metrics, Map<String, String> flags) {
+        String fileName = flags.get("metrics");
+        if (fileName.isEmpty()) {
+            return;
+        }
+        try {
+            metrics.write(fileName);
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + fileName);
+        }
+    }
+
+    // Interprocedural mode: analyze the methods of jobs, and every method they may call, bottom-up over
+    // the strongly connected components of Spark's call graph. Each method is analyzed once, when the
+    // summaries of all its callees are known, except for calls within a component (recursion), whose
+    // results stay unknown. Components whose callees are done are analyzed in parallel on --threads=N
+    // threads. Only the methods of jobs write output files. Returns the number of them whose analysis
+    // failed.
+    static int runInterprocedural(Map<String, List<Body>> jobs, final AnalysisContext runContext,
+            final ResultCache cache) {
+        long startTime = System.nanoTime();
+        int threads = Integer.parseInt(runContext.option("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        CallGraph callGraph = buildCallGraph();
+
+        // the methods of jobs and all application methods reachable from them
+        final Set<SootMethod> outputMethods = new HashSet<>();
+        final Map<SootMethod, Body> bodies = new LinkedHashMap<>();
+        Deque<SootMethod> queue = new ArrayDeque<>();
+        for (List<Body> jobBodies : jobs.values()) {
+            for (Body body : jobBodies) {
+                outputMethods.add(body.getMethod());
+                bodies.put(body.getMethod(), body);
+                queue.add(body.getMethod());
+            }
+        }
+        Map<SootMethod, Set<SootMethod>> callees = new HashMap<>();
+        // targets of the call sites whose result is assigned (the call graph is not read concurrently)
+        final Map<Unit, List<SootMethod>> callTargets = new HashMap<>();
+        while (!queue.isEmpty()) {
+            SootMethod method = queue.poll();
+            callTargets.putAll(callTargets(bodies.get(method), callGraph));
+            callees.put(method, new LinkedHashSet<SootMethod>());
+            Iterator<Edge> edges = callGraph.edgesOutOf(method);
+            while (edges.hasNext()) {
+                SootMethod callee = edges.next().tgt();
+                if (!callee.isConcrete() || !callee.getDeclaringClass().isApplicationClass()) {
+                    continue;
+                }
+                callees.get(method).add(callee);
+                if (!bodies.containsKey(callee)) {
+                    try {
+                        bodies.put(callee, callee.retrieveActiveBody());
+                        queue.add(callee);
+                    } catch (RuntimeException e) {
+                        System.out.println(callee.getSignature() + ": no body (" + e + ")");
+                    }
+                }
+            }
+        }
+        CallGraphOrder<SootMethod> order = new CallGraphOrder<>(bodies.keySet(), callees);
+        System.out.println("Call graph: " + bodies.size() + " methods in " + order.components.size()
+                + " components, built in " + ((System.nanoTime() - startTime) / 1000000) + " ms");
+
+        final Map<SootMethod, MethodSummary> summaries = new ConcurrentHashMap<>();
+        final AtomicInteger failed = new AtomicInteger();
+        new BottomUpScheduler<>(order, callees).run(threads, new Consumer<List<SootMethod>>() {
+            public void accept(List<SootMethod> component) {
+                // the summaries of a component are only used once the whole component has been analyzed
+                Map<SootMethod, MethodSummary> componentSummaries = new HashMap<>();
+                for (SootMethod method : component) {
+                    String name = method.getDeclaringClass().getName() + "." + outputName(method);
+                    AnalysisContext context = runContext.forMethod(method.getDeclaringClass().getName(), outputName(method))
+                            .withCallSummaries(callSummaries(bodies.get(method), callTargets, summaries));
+                    long methodStart = System.nanoTime();
+                    try {
+                        MethodSummary summary;
+                        if (outputMethods.contains(method)) {
+                            summary = analyzeMethod(bodies.get(method), context, cache);
+                            System.out.println(name + ": " + ((System.nanoTime() - methodStart) / 1000000) + " ms");
+                        } else {
+                            summary = doAnalysis(bodies.get(method), context, false, null);
+                        }
+                        if (summary != null) {
+                            componentSummaries.put(method, summary);
+                        }
+                    } catch (RuntimeException e) {
+                        // the callers of a broken method see its calls as unknown
+                        if (outputMethods.contains(method)) {
+                            failed.incrementAndGet();
+                        }
+                        System.out.println(name + ": failed (" + e + ")");
+                    }
+                }
+                summaries.putAll(componentSummaries);
+            }
+        });
+        return failed.get();
+    }
+
+    // Call graph built by Spark, with every concrete application method as an entry point (the
+    // analyzed methods need not be reachable from a main method)
+    private static CallGraph buildCallGraph() {
+        List<SootMethod> entryPoints = new ArrayList<>();
+        for (SootClass sc : new ArrayList<>(Scene.v().getApplicationClasses())) {
+            for (SootMethod sm : sc.getMethods()) {
+                if (sm.isConcrete()) {
+                    entryPoints.add(sm);
+                }
+            }
+        }
+        Scene.v().setEntryPoints(entryPoints);
+        Options.v().setPhaseOption("cg.spark", "enabled:true");
+        PackManager.v().getPack("cg").apply();
+        return Scene.v().getCallGraph();
+    }
+
+    // Methods that may be called by each call site of a method that assigns the result of the call
+    private static Map<Unit, List<SootMethod>> callTargets(Body body, CallGraph callGraph) {
+        Map<Unit, List<SootMethod>> callTargets = new HashMap<>();
+        for (Unit unit : body.getUnits()) {
+            if (!(unit instanceof AssignStmt) || !((AssignStmt) unit).containsInvokeExpr()) {
+                continue;
+            }
+            List<SootMethod> targets = new ArrayList<>();
+            Iterator<Edge> edges = callGraph.edgesOutOf(unit);
+            while (edges.hasNext()) {
+                Edge edge = edges.next();
+                if (edge.isExplicit()) {
+                    targets.add(edge.tgt()); // static initializers run by the call are left out
+                }
+            }
+            callTargets.put(unit, targets);
+        }
+        return callTargets;
+    }
+
+    // Summaries of the call sites of a method that assign the result of a call, where all the methods
+    // that may be called have a summary
+    private static Map<Unit, MethodSummary> callSummaries(Body body, Map<Unit, List<SootMethod>> callTargets,
+            Map<SootMethod, MethodSummary> summaries) {
+        Map<Unit, MethodSummary> callSummaries = new HashMap<>();
+        for (Unit unit : body.getUnits()) {
+            List<SootMethod> targets = callTargets.get(unit);
+            if (targets == null) {
+                continue;
+            }
+            MethodSummary summary = null;
+            for (SootMethod target : targets) {
+                MethodSummary targetSummary = summaries.get(target);
+                if (targetSummary == null) {
+                    summary = null;
+                    break;
+                }
+                summary = summary == null ? targetSummary : summary.join(targetSummary);
+            }
+            if (summary != null) {
+                callSummaries.put(unit, summary);
+            }
+        }
+        return callSummaries;
+    }
+
+    // Result cache in the directory given by --cache=dir, limited to --cache-size=MB megabytes
+    // (256 by default), or null if no cache was requested
+    static ResultCache openCache(Map<String, String> flags) {
+        if (!flags.containsKey("cache")) {
+            return null;
+        }
+        long maxMegabytes = flags.containsKey("cache-size") ? Long.parseLong(flags.get("cache-size")) : 256;
+        return new ResultCache(new java.io.File(flags.get("cache")), maxMegabytes * 1024 * 1024);
+    }
+
+    private static void printCacheStats(ResultCache cache) {
+        if (cache != null) {
+            System.out.println("Result cache: " + cache.hits.get() + " hits, " + cache.misses.get() + " misses");
+        }
+    }
+
+    // Match a name against a glob pattern supporting '*' and '?'
+    private static boolean globMatches(String glob, String name) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(java.util.regex.Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return name.matches(regex.toString());
+    }
+
+    // CFG of a method in DOT format. In lean mode, this is the graph the analysis runs on (which leaves
+    // out exceptional edges); otherwise the exceptional unit graph.
+    private static void drawMethodDependenceGraph(String targetDirectory, SootMethod method, boolean analysisGraph) {
         if (!method.isPhantom() && method.isConcrete()) {
             Body body = method.retrieveActiveBody();
-            ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body);
-
             CFGToDotGraph cfgForMethod = new CFGToDotGraph();
-            cfgForMethod.drawCFG(graph);
-            DotGraph cfgDot = cfgForMethod.drawCFG(graph);
+            DotGraph cfgDot = analysisGraph ? cfgForMethod.drawCFG(new BriefUnitGraph(body), body)
+                    : cfgForMethod.drawCFG(new ExceptionalUnitGraph(body));
             cfgDot.plot(targetDirectory + "/" + method.getName() + "cfg.dot");
         }
     }
@@ -0,0 +1,281 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+import soot.Body;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import pav.AnalysisContext;
+import pav.AnalysisMetrics;
+import pav.FactStore;
+import pav.Printer;
+import pav.ResultCache;
+
+// Server mode: keeps the Soot Scene of a target directory loaded and answers requests from local
+// clients over TCP (bound to the loopback address only). The protocol is line-based:
+//   analyze <Class> <Method> <UpperBound> [--flags]
+//       ok <Class>.<Method>
+//       file <name> <n>     followed by the n lines of each output file
+//       end
+//   reload    ok <k>        (k classes were reloaded)
+//   ping      ok
+//   shutdown  ok
+// Any request may instead get "error <message>". Before every request, class files that changed
+// on disk since they were loaded are loaded again, so the Scene never has to be rebuilt. With
+// --incremental, a method whose body changed is re-analyzed from the facts of its last analysis.
+// With --metrics[=file], the metrics of all requests are published over JMX for as long as the
+// server runs, and the summary file is written again after every analyze request.
+public class AnalysisServer {
+    private final String targetDirectory;
+    private final Map<String, String> flags;
+    private final ResultCache cache;
+    // metrics of all requests (--metrics), or null
+    private final AnalysisMetrics metrics;
+    // facts of the last analysis of every method, for --incremental
+    private final FactStore factStore = new FactStore();
+    // modification time and size of every class file, by class name
+    private Map<String, String> classFiles = new HashMap<>();
+    private ServerSocket serverSocket;
+
+    // Usage: Analysis --server <Dir> [--port=N] [--flags]
+    public static void run(List<String> positional, Map<String, String> flags) throws IOException {
+        if (positional.size() != 1) {
+            System.out.println("Usage: Analysis --server <Dir> [--port=N]");
+            System.exit(1);
+        }
+        int port = flags.containsKey("port") ? Integer.parseInt(flags.get("port")) : 7077;
+        new AnalysisServer(positional.get(0), flags).serve(port);
+    }
+
+    private AnalysisServer(String targetDirectory, Map<String, String> flags) {
+        this.targetDirectory = targetDirectory;
+        this.flags = flags;
+        this.cache = Analysis.openCache(flags);
+        this.metrics = Analysis.openMetrics(flags);
+    }
+
+    private void serve(int port) throws IOException {
+        long startTime = System.nanoTime();
+        loadScene();
+        System.out.println("Scene loaded in " + ((System.nanoTime() - startTime) / 1000000) + " ms");
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        System.out.println("Listening on " + serverSocket.getLocalSocketAddress());
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                break; // closed by shutdown
+            }
+            // one thread per connection; requests themselves are handled one at a time
+            Thread connection = new Thread(new Runnable() {
+                public void run() {
+                    serveConnection(socket);
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8)));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                handle(line.trim(), out);
+                out.flush();
+            }
+            socket.close();
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    // Soot is not thread-safe, so requests are handled one at a time
+    private synchronized void handle(String request, PrintWriter out) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> requestFlags = Analysis.parseFlags(request.split("\\s+"), positional);
+        String command = positional.isEmpty() ? "" : positional.get(0);
+        try {
+            if (command.equals("analyze")) {
+                reloadChangedClasses();
+                analyze(positional, requestFlags, out);
+            } else if (command.equals("reload")) {
+                out.println("ok " + reloadChangedClasses());
+            } else if (command.equals("ping")) {
+                out.println("ok");
+            } else if (command.equals("shutdown")) {
+                out.println("ok");
+                serverSocket.close();
+            } else {
+                out.println("error unknown request: " + request);
+            }
+        } catch (Exception e) {
+            out.println("error " + e);
+        }
+    }
+
+    private void analyze(List<String> positional, Map<String, String> requestFlags, PrintWriter out)
+            throws IOException {
+        if (positional.size() != 4) {
+            out.println("error usage: analyze <Class> <Method> <UpperBound> [--flags]");
+            return;
+        }
+        String tClass = positional.get(1);
+        String tMethod = positional.get(2);
+        float upperBound = Float.parseFloat(positional.get(3));
+        if (!Scene.v().containsClass(tClass) || Scene.v().getSootClass(tClass).isPhantom()) {
+            out.println("error class not found: " + tClass);
+            return;
+        }
+
+        // every concrete method with that name (overloads have output files of their own, as in batch mode)
+        List<Body> bodies = new ArrayList<>();
+        for (SootMethod sm : Scene.v().getSootClass(tClass).getMethods()) {
+            if (sm.getName().equals(tMethod) && sm.isConcrete()) {
+                bodies.add(sm.retrieveActiveBody());
+            }
+        }
+        if (bodies.isEmpty()) {
+            out.println("error method not found: " + tClass + "." + tMethod);
+            return;
+        }
+
+        // flags of the request take precedence over those of the server
+        Map<String, String> options = new HashMap<>(flags);
+        options.putAll(requestFlags);
+        AnalysisContext context = new AnalysisContext(targetDirectory, tClass, tMethod, 0, upperBound, options)
+                .withFactStore(factStore).withMetrics(metrics);
+        if (context.flag("interprocedural")) {
+            // the call graph is built again, since classes may have been reloaded
+            Map<String, List<Body>> jobs = new HashMap<>();
+            for (Body body : bodies) {
+                jobs.put(tClass + "." + Analysis.outputName(body.getMethod()), Collections.singletonList(body));
+            }
+            if (Analysis.runInterprocedural(jobs, context, cache) > 0) {
+                out.println("error analysis failed: " + tClass + "." + tMethod);
+                return;
+            }
+        } else {
+            for (Body body : bodies) {
+                Analysis.analyzeMethod(body, context.forMethod(tClass, Analysis.outputName(body.getMethod())), cache);
+            }
+        }
+
+        out.println("ok " + tClass + "." + tMethod);
+        List<String> files = new ArrayList<>();
+        for (Body body : bodies) {
+            String name = Analysis.outputName(body.getMethod());
+            files.add(Printer.intervalAnalysisFile(targetDirectory, tClass, name));
+            files.add(Printer.pointerAnalysisFile(targetDirectory, tClass, name));
+            files.add(Printer.arraySafetyFile(targetDirectory, tClass, name));
+            if (context.flag("details")) {
+                files.add(Printer.arrayAccessFile(targetDirectory, tClass, name));
+            }
+        }
+        for (String file : files) {
+            List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+            out.println("file " + Paths.get(file).getFileName() + " " + lines.size());
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+        out.println("end");
+        if (metrics != null) {
+            Analysis.writeMetrics(metrics, options);
+        }
+    }
+
+    private void loadScene() {
+        // the server tracks every class file of the directory, so all of them are loaded (no --lazy)
+        Map<String, String> sceneFlags = new HashMap<>(flags);
+        sceneFlags.remove("lazy");
+        sceneFlags.remove("input");
+        long startTime = System.nanoTime();
+        Analysis.setupSoot(targetDirectory, sceneFlags);
+        Scene.v().loadNecessaryClasses();
+        classFiles = scanClassFiles();
+        if (metrics != null) {
+            metrics.time(AnalysisMetrics.SOOT_LOAD, System.nanoTime() - startTime);
+        }
+    }
+
+    // Load the classes whose class files were added, changed or removed since they were loaded;
+    // returns the number of such classes
+    private int reloadChangedClasses() {
+        Map<String, String> current = scanClassFiles();
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String name : current.keySet()) {
+            if (!current.get(name).equals(classFiles.get(name))) {
+                changed.add(name);
+            }
+        }
+        for (String name : classFiles.keySet()) {
+            if (!current.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            for (String name : removed) {
+                if (Scene.v().containsClass(name)) {
+                    Scene.v().removeClass(Scene.v().getSootClass(name));
+                }
+            }
+            for (String name : changed) {
+                if (Scene.v().containsClass(name)) {
+                    Scene.v().removeClass(Scene.v().getSootClass(name));
+                }
+                SootClass sc = Scene.v().forceResolve(name, SootClass.BODIES);
+                sc.setApplicationClass();
+            }
+            classFiles = current;
+        } catch (RuntimeException e) {
+            // fall back to loading the whole Scene again
+            System.out.println("Reloading the Scene (" + e + ")");
+            loadScene();
+        }
+        System.out.println("Reloaded " + (changed.size() + removed.size()) + " classes");
+        return changed.size() + removed.size();
+    }
+
+    // Modification time and size of every class file in the target directory, by class name
+    private Map<String, String> scanClassFiles() {
+        Map<String, String> files = new HashMap<>();
+        scanClassFiles(new File(targetDirectory), "", files);
+        return files;
+    }
+
+    private static void scanClassFiles(File directory, String packagePrefix, Map<String, String> files) {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.isDirectory()) {
+                scanClassFiles(entry, packagePrefix + entry.getName() + ".", files);
+            } else if (entry.getName().endsWith(".class")) {
+                String name = entry.getName().substring(0, entry.getName().length() - ".class".length());
+                files.put(packagePrefix + name, entry.lastModified() + ":" + entry.length());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import pav.ResultFileReader;
+import pav.ResultFormat;
+
+// Queries over a binary result file written with --binary=file, which is read through memory-mapped
+// windows, so the records are never loaded into the heap all at once:
+//   unsafe [Prefix]             potentially unsafe accesses of the classes in a package (or class)
+//   methods [Prefix]            analyzed methods with their numbers of accesses and unsafe accesses
+//   intervals <Class> <Method>  interval results of a method, in the format of its text file
+public class ResultQuery {
+    // Usage: Analysis --query <File> <Command> [Args]
+    public static void run(List<String> positional) {
+        if (positional.size() < 2) {
+            System.out.println("Usage: Analysis --query <File> unsafe|methods [Prefix]");
+            System.out.println("       Analysis --query <File> intervals <Class> <Method>");
+            System.exit(1);
+        }
+        String command = positional.get(1);
+        try {
+            ResultFileReader reader = new ResultFileReader(positional.get(0));
+            try {
+                if (command.equals("unsafe") || command.equals("methods")) {
+                    String prefix = positional.size() > 2 ? positional.get(2) : "";
+                    for (ResultFileReader.Entry entry : reader.entries()) {
+                        if (inPackage(entry.tClass, prefix)) {
+                            List<int[]> verdicts = ResultFormat.readSafety(reader.record(entry));
+                            if (command.equals("unsafe")) {
+                                printUnsafe(entry, verdicts);
+                            } else {
+                                printMethod(entry, verdicts);
+                            }
+                        }
+                    }
+                } else if (command.equals("intervals") && positional.size() == 4) {
+                    boolean found = false;
+                    for (ResultFileReader.Entry entry : reader.entries()) {
+                        if (entry.tClass.equals(positional.get(2)) && entry.tMethod.equals(positional.get(3))) {
+                            ByteBuffer record = reader.record(entry);
+                            ResultFormat.readSafety(record);
+                            new ResultFormat.Intervals(record).print(System.out,
+                                    entry.tClass + "." + entry.tMethod + ": ");
+                            found = true;
+                        }
+                    }
+                    if (!found) {
+                        System.out.println("Method not found: " + positional.get(2) + "." + positional.get(3));
+                        System.exit(1);
+                    }
+                } else {
+                    System.out.println("Unknown query: " + command);
+                    System.exit(1);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot read " + positional.get(0) + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Check whether a class is in the package (or is the class) given by prefix; "" matches all
+    private static boolean inPackage(String tClass, String prefix) {
+        return prefix.isEmpty() || tClass.equals(prefix) || tClass.startsWith(prefix + ".")
+                || tClass.startsWith(prefix + "$");
+    }
+
+    private static void printUnsafe(ResultFileReader.Entry entry, List<int[]> verdicts) {
+        for (int[] verdict : verdicts) {
+            if (verdict[1] == ResultFormat.POTENTIALLY_UNSAFE) {
+                System.out.println(entry.tClass + "." + entry.tMethod + ": " + String.format("%02d", verdict[0])
+                        + ": Potentially Unsafe");
+            }
+        }
+    }
+
+    private static void printMethod(ResultFileReader.Entry entry, List<int[]> verdicts) {
+        int unsafe = 0;
+        for (int[] verdict : verdicts) {
+            if (verdict[1] == ResultFormat.POTENTIALLY_UNSAFE) {
+                unsafe++;
+            }
+        }
+        System.out.println(entry.tClass + "." + entry.tMethod + ": " + verdicts.size() + " accesses, " + unsafe
+                + " potentially unsafe");
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.Body;
+
+import pav.AnalysisContext;
+import pav.LatticeElement;
+import pav.ProgramPoints;
+import pav.PointGraph;
+import pav.Fixpoint;
+import pav.Printer;
+
+// Interval analysis on synthetic bodies: the whole fixpoint, and its join, transfer function and
+// output steps on the facts of every program point
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntervalBenchmark {
+    @Param({ "straight", "loops", "arrays", "branches" })
+    public String shape;
+
+    @Param({ "16", "64", "256" })
+    public int size;
+
+    @Param({ "map", "array", "persistent", "long" })
+    public String interval;
+
+    private ProgramPoints points;
+    private AnalysisContext context;
+    private LatticeElement initialElement;
+    private Map<Integer, LatticeElement> facts;
+    private String outputDirectory;
+
+    @Setup
+    public void setup() throws java.io.IOException {
+        Body body = SyntheticBodies.build(shape, size);
+        outputDirectory = java.nio.file.Files.createTempDirectory("interval-bench").toString();
+        context = new AnalysisContext(outputDirectory, "Synthetic", shape, 0, 10, Collections.<String, String>emptyMap());
+        points = new ProgramPoints(body);
+        initialElement = SyntheticBodies.initialIntervals(body, interval, context);
+        facts = Fixpoint.runKildall(initialElement, points.graph);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticBodies.deleteDirectory(outputDirectory);
+    }
+
+    @Benchmark
+    public Map<Integer, LatticeElement> kildall() {
+        return Fixpoint.runKildall(initialElement, points.graph);
+    }
+
+    // join of the facts at both ends of every edge
+    @Benchmark
+    public void join(Blackhole blackhole) {
+        PointGraph graph = points.graph;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            blackhole.consume(facts.get(graph.sources[e]).join(facts.get(graph.targets[e])));
+        }
+    }
+
+    // transfer function of every edge, applied to the fact at its source
+    @Benchmark
+    public void transfer(Blackhole blackhole) {
+        PointGraph graph = points.graph;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            blackhole.consume(facts.get(graph.sources[e]).tf_assignment(graph.statements[e], graph.trueBranch[e]));
+        }
+    }
+
+    @Benchmark
+    public void print() {
+        Printer.IntervalAnalysis(outputDirectory, context.tClass, context.tMethod, facts);
+    }
+}
@@ -0,0 +1,206 @@
+package bench;
+
+import java.io.File;
+import java.util.*;
+
+import soot.Body;
+import soot.Local;
+import soot.Modifier;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.IntType;
+import soot.ArrayType;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.IntConstant;
+import soot.jimple.NullConstant;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.AssignStmt;
+
+import pav.Pair;
+import pav.AnalysisContext;
+import pav.LatticeElement;
+import pav.LocalIndex;
+import pav.PersistentLocalMap;
+import pav.IntervalElement;
+import pav.IntervalArrayElement;
+import pav.LongIntervalElement;
+import pav.AllocationIndex;
+import pav.IntegerArrayPointer;
+import pav.IntegerArrayBitsetPointer;
+
+// Jimple bodies of a given shape and size, built directly (no class files or Scene needed), and
+// the initial lattice elements that Analysis.doAnalysis would use for them
+public class SyntheticBodies {
+    private static final Jimple j = Jimple.v();
+    private static final ArrayType intArray = ArrayType.v(IntType.v(), 1);
+
+    // Body of the given shape: straight (assignments), loops (nested loops), arrays (allocations,
+    // copies and accesses) or branches (if-else diamonds), with size repetitions of its pattern
+    public static Body build(String shape, int size) {
+        SootClass sootClass = new SootClass("Synthetic", Modifier.PUBLIC);
+        SootMethod method = new SootMethod(shape, Collections.<Type>singletonList(IntType.v()), VoidType.v(),
+                Modifier.PUBLIC | Modifier.STATIC);
+        sootClass.addMethod(method);
+        JimpleBody body = j.newBody(method);
+        method.setActiveBody(body);
+
+        Local n = local(body, "n", IntType.v());
+        body.getUnits().add(j.newIdentityStmt(n, j.newParameterRef(IntType.v(), 0)));
+        if (shape.equals("straight")) {
+            straight(body, n, size);
+        } else if (shape.equals("loops")) {
+            loops(body, size);
+        } else if (shape.equals("arrays")) {
+            arrays(body, n, size);
+        } else if (shape.equals("branches")) {
+            branches(body, n, size);
+        } else {
+            throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        body.getUnits().add(j.newReturnVoidStmt());
+        return body;
+    }
+
+    private static Local local(Body body, String name, Type type) {
+        Local local = j.newLocal(name, type);
+        body.getLocals().add(local);
+        return local;
+    }
+
+    private static void add(Body body, Unit unit) {
+        body.getUnits().add(unit);
+    }
+
+    // x_k = x_(k-1) + k, y_k = x_k * 2
+    private static void straight(Body body, Local n, int size) {
+        Local previous = n;
+        for (int k = 0; k < size; k++) {
+            Local x = local(body, "x" + k, IntType.v());
+            Local y = local(body, "y" + k, IntType.v());
+            add(body, j.newAssignStmt(x, j.newAddExpr(previous, IntConstant.v(k))));
+            add(body, j.newAssignStmt(y, j.newMulExpr(x, IntConstant.v(2))));
+            previous = y;
+        }
+    }
+
+    // for (i = 0; i < 10; i++) for (m = 0; m < i; m++) s = s + m;
+    private static void loops(Body body, int size) {
+        Local s = local(body, "s", IntType.v());
+        add(body, j.newAssignStmt(s, IntConstant.v(0)));
+        for (int k = 0; k < size; k++) {
+            Local i = local(body, "i" + k, IntType.v());
+            Local m = local(body, "m" + k, IntType.v());
+            Unit outerExit = j.newNopStmt();
+            Unit innerExit = j.newNopStmt();
+            Unit outerHead = j.newIfStmt(j.newGeExpr(i, IntConstant.v(10)), outerExit);
+            Unit innerHead = j.newIfStmt(j.newGeExpr(m, i), innerExit);
+            add(body, j.newAssignStmt(i, IntConstant.v(0)));
+            add(body, outerHead);
+            add(body, j.newAssignStmt(m, IntConstant.v(0)));
+            add(body, innerHead);
+            add(body, j.newAssignStmt(s, j.newAddExpr(s, m)));
+            add(body, j.newAssignStmt(m, j.newAddExpr(m, IntConstant.v(1))));
+            add(body, j.newGotoStmt(innerHead));
+            add(body, innerExit);
+            add(body, j.newAssignStmt(i, j.newAddExpr(i, IntConstant.v(1))));
+            add(body, j.newGotoStmt(outerHead));
+            add(body, outerExit);
+        }
+    }
+
+    // a_k = new int[k + 1]; b_k = n < k ? a_k : null (or the previous array); a_k[k] = n
+    private static void arrays(Body body, Local n, int size) {
+        Local previous = null;
+        for (int k = 0; k < size; k++) {
+            Local a = local(body, "a" + k, intArray);
+            Local b = local(body, "b" + k, intArray);
+            Unit join = j.newNopStmt();
+            Unit otherwise = j.newAssignStmt(b, previous == null ? NullConstant.v() : previous);
+            add(body, j.newAssignStmt(a, j.newNewArrayExpr(IntType.v(), IntConstant.v(k + 1))));
+            add(body, j.newIfStmt(j.newGeExpr(n, IntConstant.v(k)), otherwise));
+            add(body, j.newAssignStmt(b, a));
+            add(body, j.newGotoStmt(join));
+            add(body, otherwise);
+            add(body, join);
+            add(body, j.newAssignStmt(j.newArrayRef(a, IntConstant.v(k)), n));
+            previous = b;
+        }
+    }
+
+    // if (n < k) y = y + 1 else y = y - 1
+    private static void branches(Body body, Local n, int size) {
+        Local y = local(body, "y", IntType.v());
+        add(body, j.newAssignStmt(y, IntConstant.v(0)));
+        for (int k = 0; k < size; k++) {
+            Unit join = j.newNopStmt();
+            Unit otherwise = j.newAssignStmt(y, j.newSubExpr(y, IntConstant.v(1)));
+            add(body, j.newIfStmt(j.newGeExpr(n, IntConstant.v(k)), otherwise));
+            add(body, j.newAssignStmt(y, j.newAddExpr(y, IntConstant.v(1))));
+            add(body, j.newGotoStmt(join));
+            add(body, otherwise);
+            add(body, join);
+        }
+    }
+
+    // Initial interval element (every integer local is top) in the given representation
+    public static LatticeElement initialIntervals(Body body, String representation, AnalysisContext context) {
+        Map<Local, Pair<Float, Float>> initialIntervalMap = new HashMap<>();
+        for (Local local : body.getLocals()) {
+            if (local.getType() instanceof IntType) {
+                initialIntervalMap.put(local, new Pair<>(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY));
+            }
+        }
+        LocalIndex localIndex = new LocalIndex(body.getLocals());
+        if (representation.equals("map")) {
+            return new IntervalElement(initialIntervalMap, context);
+        } else if (representation.equals("array")) {
+            return new IntervalArrayElement(initialIntervalMap, localIndex, context);
+        } else if (representation.equals("persistent")) {
+            return new IntervalElement(new PersistentLocalMap<>(localIndex, initialIntervalMap), context);
+        } else if (representation.equals("long")) {
+            return new LongIntervalElement(initialIntervalMap, localIndex, context);
+        }
+        throw new IllegalArgumentException("Unknown interval representation: " + representation);
+    }
+
+    // Initial points-to element (every integer array is {null}) in the given representation
+    public static LatticeElement initialPointers(Body body, String representation) {
+        Map<Local, Set<Unit>> initialPointerMap = new HashMap<>();
+        for (Local local : body.getLocals()) {
+            if (local.getType().equals(intArray)) {
+                initialPointerMap.put(local, new HashSet<>(Collections.singleton((Unit) null)));
+            }
+        }
+        List<Unit> allocationSites = new ArrayList<>();
+        for (Unit unit : body.getUnits()) {
+            if (unit instanceof AssignStmt && ((AssignStmt) unit).getRightOp() instanceof NewArrayExpr) {
+                allocationSites.add(unit);
+            }
+        }
+        LocalIndex localIndex = new LocalIndex(body.getLocals());
+        if (representation.equals("map")) {
+            return new IntegerArrayPointer(initialPointerMap, new HashSet<>(allocationSites));
+        } else if (representation.equals("persistent")) {
+            return new IntegerArrayPointer(new PersistentLocalMap<>(localIndex, initialPointerMap),
+                    new HashSet<>(allocationSites));
+        } else if (representation.equals("bitset")) {
+            return new IntegerArrayBitsetPointer(initialPointerMap, localIndex, new AllocationIndex(allocationSites));
+        }
+        throw new IllegalArgumentException("Unknown pointer representation: " + representation);
+    }
+
+    // Delete an output directory of a benchmark and the files the printer wrote into it
+    public static void deleteDirectory(String directory) {
+        File[] files = new File(directory).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        new File(directory).delete();
+    }
+}
@@ -6,8 +6,43 @@ source environ.sh
 echo === building Analysis.java
 
 javac -g pav/Pair.java
+javac -g pav/MethodSummary.java
+javac -g pav/AnalysisContext.java
+javac -g pav/LocalIndex.java
 javac -g pav/LatticeElement.java
+javac -g pav/FixpointStats.java
+javac -g pav/AnalysisMetricsMXBean.java
+javac -g pav/AnalysisMetrics.java
+javac -g pav/PointGraph.java
+javac -g pav/Worklist.java
+javac -g pav/WeakTopologicalOrder.java
+javac -g pav/SparseGraph.java
+javac -g pav/Liveness.java
+javac -g pav/Fixpoint.java
+javac -g pav/ProgramPoints.java
+javac -g pav/CallGraphOrder.java
+javac -g pav/BottomUpScheduler.java
+javac -g pav/PersistentLocalMap.java
+javac -g pav/IntervalLattice.java
 javac -g pav/IntervalElement.java
+javac -g pav/IntervalArrayElement.java
+javac -g pav/LongIntervalElement.java
+javac -g pav/PointerLattice.java
+javac -g pav/AllocationIndex.java
 javac -g pav/IntegerArrayPointer.java
+javac -g pav/IntegerArrayBitsetPointer.java
+javac -g pav/ProductElement.java
+javac -g pav/VariablePacks.java
+javac -g pav/RelationalElement.java
+javac -g pav/ArrayAccessIndex.java
 javac -g pav/Printer.java
+javac -g pav/ResultFormat.java
+javac -g pav/ResultFileWriter.java
+javac -g pav/ResultFileReader.java
+javac -g pav/ResultCache.java
+javac -g pav/ClassIndex.java
+javac -g pav/FactStore.java
+javac -g pav/IncrementalFixpoint.java
 javac -g Analysis.java
+javac -g AnalysisServer.java
+javac -g ResultQuery.java
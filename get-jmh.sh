@@ -0,0 +1,10 @@
+#!/usr/bin/env bash
+
+set -e
+
+mkdir -p pkgs/
+MAVEN=https://repo1.maven.org/maven2
+curl -L $MAVEN/org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar -o pkgs/jmh-core-1.37.jar
+curl -L $MAVEN/org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar -o pkgs/jmh-generator-annprocess-1.37.jar
+curl -L $MAVEN/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar -o pkgs/jopt-simple-5.0.4.jar
+curl -L $MAVEN/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar -o pkgs/commons-math3-3.6.1.jar
@@ -0,0 +1,51 @@
+package pav;
+
+import java.util.*;
+
+import soot.Unit;
+
+// Dense numbering of the allocation sites of one method, computed once and shared by all lattice
+// elements. Number 0 is reserved for null, so a points-to set fits in a bitset of size() bits.
+public class AllocationIndex {
+    public static final int NULL = 0;
+
+    private final Unit[] units;
+    private final Map<Unit, Integer> indices = new HashMap<>();
+
+    // Sites are numbered in the order of the given units (null is not a valid site)
+    public AllocationIndex(Collection<Unit> givenUnits) {
+        this.units = new Unit[givenUnits.size() + 1];
+        int i = 1;
+        for (Unit unit : givenUnits) {
+            if (unit == null || indices.containsKey(unit)) {
+                throw new IllegalArgumentException("Invalid allocation site: " + unit);
+            }
+            units[i] = unit;
+            indices.put(unit, i++);
+        }
+    }
+
+    // Number of a site (NULL for null), or -1 if it is not one of the indexed sites
+    public int indexOf(Unit unit) {
+        if (unit == null) {
+            return NULL;
+        }
+        Integer index = indices.get(unit);
+        return index == null ? -1 : index;
+    }
+
+    // Site with the given number (null for NULL)
+    public Unit get(int index) {
+        return units[index];
+    }
+
+    // Number of sites, including null
+    public int size() {
+        return units.length;
+    }
+
+    // Number of 64-bit words of a points-to bitset
+    public int words() {
+        return (units.length + 63) >>> 6;
+    }
+}
@@ -0,0 +1,124 @@
+package pav;
+
+import java.util.*;
+
+import soot.Unit;
+
+// Configuration of one analysis run, passed explicitly instead of through static fields
+// so that several methods can be analyzed at the same time
+public class AnalysisContext {
+    // where the output files are written
+    public final String targetDirectory;
+    // class and method whose results are being printed
+    public final String tClass;
+    public final String tMethod;
+
+    // lowerBound and upperBound for the intervals
+    public final float lowerBound;
+    public final float upperBound;
+
+    // command line flags (--name or --name=value)
+    private final Map<String, String> options;
+
+    // summary of the callees of each call site of the target method (interprocedural mode only)
+    private final Map<Unit, MethodSummary> callSummaries;
+
+    // facts of earlier analyses for incremental re-analysis (server mode only, else null)
+    private final FactStore factStore;
+
+    // binary result file that the results are appended to (--binary=file), or null
+    private final ResultFileWriter resultFile;
+
+    // metrics that every analysis adds its phase times and counters to (--metrics), or null
+    private final AnalysisMetrics metrics;
+
+    public AnalysisContext(String targetDirectory, String tClass, String tMethod, float lowerBound, float upperBound,
+            Map<String, String> options) {
+        this(targetDirectory, tClass, tMethod, lowerBound, upperBound, options,
+                Collections.<Unit, MethodSummary>emptyMap(), null, null, null);
+    }
+
+    private AnalysisContext(String targetDirectory, String tClass, String tMethod, float lowerBound, float upperBound,
+            Map<String, String> options, Map<Unit, MethodSummary> callSummaries, FactStore factStore,
+            ResultFileWriter resultFile, AnalysisMetrics metrics) {
+        this.targetDirectory = targetDirectory;
+        this.tClass = tClass;
+        this.tMethod = tMethod;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.options = Collections.unmodifiableMap(new HashMap<>(options));
+        this.callSummaries = callSummaries;
+        this.factStore = factStore;
+        this.resultFile = resultFile;
+        this.metrics = metrics;
+    }
+
+    // Same configuration, but for another target method
+    public AnalysisContext forMethod(String tClass, String tMethod) {
+        return new AnalysisContext(targetDirectory, tClass, tMethod, lowerBound, upperBound, options,
+                Collections.<Unit, MethodSummary>emptyMap(), factStore, resultFile, metrics);
+    }
+
+    // Same configuration, with the given summaries of the callees of the target method
+    public AnalysisContext withCallSummaries(Map<Unit, MethodSummary> callSummaries) {
+        return new AnalysisContext(targetDirectory, tClass, tMethod, lowerBound, upperBound, options,
+                Collections.unmodifiableMap(new HashMap<>(callSummaries)), factStore, resultFile, metrics);
+    }
+
+    // Same configuration, keeping the facts of every analysis in the given store
+    public AnalysisContext withFactStore(FactStore factStore) {
+        return new AnalysisContext(targetDirectory, tClass, tMethod, lowerBound, upperBound, options, callSummaries,
+                factStore, resultFile, metrics);
+    }
+
+    // Same configuration, appending the results to the given binary result file
+    public AnalysisContext withResultFile(ResultFileWriter resultFile) {
+        return new AnalysisContext(targetDirectory, tClass, tMethod, lowerBound, upperBound, options, callSummaries,
+                factStore, resultFile, metrics);
+    }
+
+    // Same configuration, adding the metrics of every analysis to the given ones
+    public AnalysisContext withMetrics(AnalysisMetrics metrics) {
+        return new AnalysisContext(targetDirectory, tClass, tMethod, lowerBound, upperBound, options, callSummaries,
+                factStore, resultFile, metrics);
+    }
+
+    // Summary of the methods that a call site may call, or null if they are unknown
+    public MethodSummary callSummary(Unit callSite) {
+        return callSummaries.get(callSite);
+    }
+
+    // Store of the facts of earlier analyses, or null if there is none
+    public FactStore factStore() {
+        return factStore;
+    }
+
+    // Binary result file, or null if there is none
+    public ResultFileWriter resultFile() {
+        return resultFile;
+    }
+
+    // Metrics of the run, or null if they are not collected
+    public AnalysisMetrics metrics() {
+        return metrics;
+    }
+
+    // Value of the option --name=value, or defaultValue if it was not given
+    public String option(String name, String defaultValue) {
+        return options.containsKey(name) ? options.get(name) : defaultValue;
+    }
+
+    // Check whether the flag --name was given
+    public boolean flag(String name) {
+        return options.containsKey(name);
+    }
+
+    // All options, by name
+    public Map<String, String> options() {
+        return options;
+    }
+
+    public String toString() {
+        return tClass + "." + tMethod + " [" + lowerBound + ", " + upperBound + "] " + options;
+    }
+}
@@ -0,0 +1,205 @@
+package pav;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Metrics of a run (--metrics[=file]): the time spent in each phase, and for every analyzed method
+// its phase times and the counters of its fixpoints (see FixpointStats). They are published over
+// JMX as pav:type=AnalysisMetrics while the run lasts, and written to a tab-separated summary file
+// with one line per method, slowest first, so that pathological methods stand out. Methods are
+// named by their signatures, which tell overloads apart. A method that is analyzed again (by the
+// server) replaces its line, while the run's phase times and counters add up.
+public class AnalysisMetrics implements AnalysisMetricsMXBean {
+    // phases of a run (SOOT_LOAD, BODIES) and of the analysis of a method (the others)
+    public static final String[] PHASES = { "soot_load", "bodies", "cfg", "intervals", "pointers", "product",
+            "relational", "safety", "printing" };
+    public static final int SOOT_LOAD = 0;
+    public static final int BODIES = 1;
+    public static final int CFG = 2;
+    public static final int INTERVALS = 3;
+    public static final int POINTERS = 4;
+    public static final int PRODUCT = 5;
+    public static final int RELATIONAL = 6;
+    public static final int SAFETY = 7;
+    public static final int PRINTING = 8;
+
+    private static final String OBJECT_NAME = "pav:type=AnalysisMetrics";
+    // number of methods listed by getSlowestMethods
+    private static final int SLOWEST = 10;
+
+    // Metrics of the analysis of one method
+    public static class Method {
+        // signature of the method (e.g. <Test: int foo(int[])>)
+        public final String signature;
+        public final long[] phaseNanos = new long[PHASES.length];
+        public final FixpointStats stats = new FixpointStats();
+        public int points = 0;
+
+        public Method(String signature) {
+            this.signature = signature;
+        }
+
+        // Add the time from start until now to a phase; returns now, the start of the next phase
+        public long time(int phase, long start) {
+            long now = System.nanoTime();
+            phaseNanos[phase] += now - start;
+            return now;
+        }
+
+        public long totalNanos() {
+            long total = 0;
+            for (long nanos : phaseNanos) {
+                total += nanos;
+            }
+            return total;
+        }
+    }
+
+    // metrics of the last analysis of every method, by signature
+    private final Map<String, Method> methods = new LinkedHashMap<>();
+    private final long[] phaseNanos = new long[PHASES.length];
+    private final FixpointStats totals = new FixpointStats();
+    private ObjectName objectName;
+
+    // Add the time spent in a phase of the run
+    public synchronized void time(int phase, long nanos) {
+        phaseNanos[phase] += nanos;
+    }
+
+    // Add the metrics of an analyzed method (called from the threads that analyze methods), replacing
+    // those of an earlier analysis of the same method
+    public synchronized void add(Method method) {
+        methods.put(method.signature, method);
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            phaseNanos[phase] += method.phaseNanos[phase];
+        }
+        totals.add(method.stats);
+    }
+
+    // Publish the metrics over JMX; a run goes on without them if that fails
+    public void register() {
+        try {
+            objectName = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            objectName = null;
+            System.out.println("Cannot publish metrics over JMX: " + e);
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already gone
+        }
+        objectName = null;
+    }
+
+    // Write the summary file: the phase times of the run as "# phase<TAB>us" lines, then a header and
+    // one line per method with its points, phase times in microseconds and fixpoint counters
+    public synchronized void write(String fileName) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName),
+                StandardCharsets.UTF_8));
+        try {
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                writer.write("# " + PHASES[phase] + "_us\t" + phaseNanos[phase] / 1000 + "\n");
+            }
+            StringBuilder line = new StringBuilder("signature\tpoints\ttotal_us");
+            for (int phase = CFG; phase < PHASES.length; phase++) {
+                line.append('\t').append(PHASES[phase]).append("_us");
+            }
+            line.append("\titerations\ttransfers\tjoins\tfact_changes\twidenings");
+            for (String kind : FixpointStats.KINDS) {
+                line.append("\ttransfers_").append(kind);
+            }
+            writer.write(line.append('\n').toString());
+            for (Method method : slowestFirst()) {
+                line.setLength(0);
+                line.append(method.signature).append('\t').append(method.points).append('\t')
+                        .append(method.totalNanos() / 1000);
+                for (int phase = CFG; phase < PHASES.length; phase++) {
+                    line.append('\t').append(method.phaseNanos[phase] / 1000);
+                }
+                FixpointStats stats = method.stats;
+                line.append('\t').append(stats.iterations).append('\t').append(stats.transfers).append('\t')
+                        .append(stats.joins).append('\t').append(stats.factChanges).append('\t').append(stats.widenings);
+                for (long transfers : stats.transfersByKind) {
+                    line.append('\t').append(transfers);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<Method> slowestFirst() {
+        List<Method> sorted = new ArrayList<>(methods.values());
+        Collections.sort(sorted, new Comparator<Method>() {
+            public int compare(Method m1, Method m2) {
+                return Long.compare(m2.totalNanos(), m1.totalNanos());
+            }
+        });
+        return sorted;
+    }
+
+    public synchronized int getMethodsAnalyzed() {
+        return methods.size();
+    }
+
+    public synchronized long getWorklistPops() {
+        return totals.iterations;
+    }
+
+    public synchronized long getTransfers() {
+        return totals.transfers;
+    }
+
+    public synchronized long getJoins() {
+        return totals.joins;
+    }
+
+    public synchronized long getFactChanges() {
+        return totals.factChanges;
+    }
+
+    public synchronized long getWidenings() {
+        return totals.widenings;
+    }
+
+    public synchronized Map<String, Long> getTransfersByKind() {
+        Map<String, Long> transfers = new LinkedHashMap<>();
+        for (int kind = 0; kind < FixpointStats.KINDS.length; kind++) {
+            transfers.put(FixpointStats.KINDS[kind], totals.transfersByKind[kind]);
+        }
+        return transfers;
+    }
+
+    public synchronized Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            millis.put(PHASES[phase], phaseNanos[phase] / 1000000);
+        }
+        return millis;
+    }
+
+    public synchronized List<String> getSlowestMethods() {
+        List<String> slowest = new ArrayList<>();
+        for (Method method : slowestFirst()) {
+            if (slowest.size() == SLOWEST) {
+                break;
+            }
+            slowest.add(method.signature + ": " + method.totalNanos() / 1000000 + " ms");
+        }
+        return slowest;
+    }
+}
@@ -0,0 +1,25 @@
+package pav;
+
+import java.util.*;
+
+// Attributes of AnalysisMetrics published over JMX
+public interface AnalysisMetricsMXBean {
+    int getMethodsAnalyzed();
+
+    long getWorklistPops();
+
+    long getTransfers();
+
+    long getJoins();
+
+    long getFactChanges();
+
+    long getWidenings();
+
+    Map<String, Long> getTransfersByKind();
+
+    Map<String, Long> getPhaseMillis();
+
+    // the slowest methods with their analysis times
+    List<String> getSlowestMethods();
+}
@@ -0,0 +1,175 @@
+package pav;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import soot.Body;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.ArrayRef;
+import soot.jimple.Constant;
+import soot.jimple.IntConstant;
+
+// Accesses to integer arrays of a method, indexed once along with its program points: each one
+// with its statement, the point before it, its base, its index and whether it reads or writes.
+// After the fixpoints, check gives the verdict of every access in one pass over the index, in
+// parallel for methods with many accesses.
+public class ArrayAccessIndex {
+    // An access base[index] in the statement at line (its number among the statements of the body)
+    public static class Access {
+        public final int line;
+        public final int point;
+        public final Local base;
+        public final Value index;
+        public final boolean write;
+
+        Access(int line, int point, Local base, Value index, boolean write) {
+            this.line = line;
+            this.point = point;
+            this.base = base;
+            this.index = index;
+            this.write = write;
+        }
+
+        public String toString() {
+            return base.getName() + "[" + index + "] " + (write ? "write" : "read");
+        }
+    }
+
+    // Verdict on one access, with the reason for it
+    public static class Verdict {
+        public final boolean safe;
+        public final String reason;
+
+        Verdict(boolean safe, String reason) {
+            this.safe = safe;
+            this.reason = reason;
+        }
+
+        public String toString() {
+            return (safe ? "Safe" : "Potentially Unsafe") + " (" + reason + ")";
+        }
+    }
+
+    // methods with at least this many accesses are checked in parallel
+    private static final int PARALLEL_THRESHOLD = 4096;
+    // number of accesses checked by one task
+    private static final int CHUNK = 1024;
+
+    // accesses in the order of their statements (uses before definitions within a statement)
+    public final List<Access> accesses = new ArrayList<>();
+
+    public ArrayAccessIndex(Body body, Set<Local> integerArrays, Map<Unit, Integer> pointBeforeUnit) {
+        int line = -1;
+        for (Unit unit : body.getUnits()) {
+            line++;
+            for (ValueBox box : unit.getUseBoxes()) {
+                add(line, pointBeforeUnit.get(unit), box.getValue(), false, integerArrays);
+            }
+            for (ValueBox box : unit.getDefBoxes()) {
+                add(line, pointBeforeUnit.get(unit), box.getValue(), true, integerArrays);
+            }
+        }
+    }
+
+    private void add(int line, int point, Value value, boolean write, Set<Local> integerArrays) {
+        if (value instanceof ArrayRef && integerArrays.contains(((ArrayRef) value).getBase())) {
+            ArrayRef arrayRef = (ArrayRef) value;
+            accesses.add(new Access(line, point, (Local) arrayRef.getBase(), arrayRef.getIndex(), write));
+        }
+    }
+
+    // Verdicts of all accesses (indexed like accesses): an access is safe if its point is unreachable
+    // (a fixpoint is bot there), or its base cannot be null and the upper bound of its index is below
+    // the least length of every array the base may point to, or the relational facts (if not null)
+    // show that the index is below the length of the array held by the base. arraySizes gives the
+    // length of the arrays allocated at each site, and allocationLines the line of each site.
+    public Verdict[] check(final Map<Integer, LatticeElement> intervals, final Map<Integer, LatticeElement> pointers,
+            final Map<Integer, LatticeElement> relations, final Map<Unit, Pair<Float, Float>> arraySizes,
+            final Map<Unit, Integer> allocationLines) {
+        final Verdict[] verdicts = new Verdict[accesses.size()];
+        if (accesses.size() < PARALLEL_THRESHOLD) {
+            check(0, accesses.size(), intervals, pointers, relations, arraySizes, allocationLines, verdicts);
+            return verdicts;
+        }
+        final List<RecursiveAction> tasks = new ArrayList<>();
+        for (int start = 0; start < accesses.size(); start += CHUNK) {
+            final int from = start;
+            final int to = Math.min(start + CHUNK, accesses.size());
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    check(from, to, intervals, pointers, relations, arraySizes, allocationLines, verdicts);
+                }
+            });
+        }
+        // within a pool (batch mode), the tasks are forked into it; otherwise they run on the common pool
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        return verdicts;
+    }
+
+    private void check(int from, int to, Map<Integer, LatticeElement> intervals,
+            Map<Integer, LatticeElement> pointers, Map<Integer, LatticeElement> relations,
+            Map<Unit, Pair<Float, Float>> arraySizes, Map<Unit, Integer> allocationLines, Verdict[] verdicts) {
+        for (int i = from; i < to; i++) {
+            Access access = accesses.get(i);
+            LatticeElement intervalFact = intervals.get(access.point);
+            LatticeElement pointerFact = pointers.get(access.point);
+            RelationalElement relationalFact = relations == null ? null
+                    : (RelationalElement) relations.get(access.point);
+            if (intervalFact.isBot() || pointerFact.isBot() || (relationalFact != null && relationalFact.isBot())) {
+                verdicts[i] = new Verdict(true, "unreachable");
+                continue;
+            }
+
+            Pair<Float, Float> indexInterval;
+            if (access.index instanceof Constant) {
+                int indexValue = ((IntConstant) access.index).value;
+                indexInterval = new Pair<>((float) indexValue, (float) indexValue);
+            } else if (access.index instanceof Local) {
+                indexInterval = ((IntervalLattice) intervalFact).getInterval((Local) access.index);
+            } else {
+                indexInterval = new Pair<>((float) 0, (float) 0);
+            }
+
+            Set<Unit> basePointsTo = ((PointerLattice) pointerFact).getPointsTo(access.base);
+            if (basePointsTo.contains(null)) {
+                verdicts[i] = new Verdict(false, access.base.getName() + " may be null");
+                continue;
+            }
+            Verdict verdict = null;
+            for (Unit site : basePointsTo) {
+                Pair<Float, Float> arraySize = arraySizes.get(site);
+                if (arraySize != null && indexInterval.second >= arraySize.first) {
+                    verdict = new Verdict(false, "index " + format(indexInterval) + " may reach length "
+                            + format(arraySize) + " of the array allocated at line "
+                            + String.format("%02d", allocationLines.get(site)));
+                    break;
+                }
+            }
+            if (verdict != null && relationalFact != null && relationalFact.indexBelowLength(access.index, access.base)) {
+                verdict = new Verdict(true, "index below " + access.base.getName() + ".length (relational)");
+            }
+            verdicts[i] = verdict != null ? verdict
+                    : new Verdict(true, "index " + format(indexInterval) + " below the length of "
+                            + (basePointsTo.size() == 1 ? "its array" : "its " + basePointsTo.size() + " possible arrays"));
+        }
+    }
+
+    private static String format(Pair<Float, Float> interval) {
+        return "[" + (interval.first == Float.NEGATIVE_INFINITY ? "-inf" : String.valueOf(Math.round(interval.first)))
+                + ", " + (interval.second == Float.POSITIVE_INFINITY ? "inf" : String.valueOf(Math.round(interval.second)))
+                + "]";
+    }
+}
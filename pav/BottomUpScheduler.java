@@ -0,0 +1,97 @@
+package pav;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Runs a task for every component of a CallGraphOrder on a thread pool. A component is released as
+// soon as the tasks of all the components it calls have finished, so independent parts of the
+// call graph are processed concurrently while every caller still sees the results of its callees.
+public class BottomUpScheduler<T> {
+    private final List<List<T>> components;
+    // number of callee components of each component that have not finished yet
+    private final AtomicInteger[] pending;
+    // components that call each component
+    private final List<List<Integer>> callers = new ArrayList<>();
+
+    public BottomUpScheduler(CallGraphOrder<T> order, Map<T, ? extends Collection<T>> callees) {
+        this.components = order.components;
+        Map<T, Integer> componentOf = new HashMap<>();
+        for (int c = 0; c < components.size(); c++) {
+            for (T method : components.get(c)) {
+                componentOf.put(method, c);
+            }
+            callers.add(new ArrayList<Integer>());
+        }
+
+        // edges of the condensed graph (a DAG), without duplicates and self loops
+        pending = new AtomicInteger[components.size()];
+        for (int c = 0; c < components.size(); c++) {
+            Set<Integer> calleeComponents = new HashSet<>();
+            for (T method : components.get(c)) {
+                Collection<T> called = callees.get(method);
+                if (called == null) {
+                    continue;
+                }
+                for (T callee : called) {
+                    Integer d = componentOf.get(callee);
+                    if (d != null && d != c) {
+                        calleeComponents.add(d);
+                    }
+                }
+            }
+            pending[c] = new AtomicInteger(calleeComponents.size());
+            for (int d : calleeComponents) {
+                callers.get(d).add(c);
+            }
+        }
+    }
+
+    // Run task on every component with the given number of threads and wait for all of them. An
+    // exception thrown by a task does not hold back its callers; the first one is rethrown at the end.
+    public void run(int threads, Consumer<List<T>> task) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        CountDownLatch done = new CountDownLatch(components.size());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int c = 0; c < components.size(); c++) {
+            if (pending[c].get() == 0) {
+                submit(pool, c, task, done, failure);
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the analysis", e);
+        } finally {
+            pool.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void submit(final ForkJoinPool pool, final int c, final Consumer<List<T>> task,
+            final CountDownLatch done, final AtomicReference<RuntimeException> failure) {
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    task.accept(components.get(c));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    // release the callers whose last pending callee this was
+                    for (int caller : callers.get(c)) {
+                        if (pending[caller].decrementAndGet() == 0) {
+                            submit(pool, caller, task, done, failure);
+                        }
+                    }
+                    done.countDown();
+                }
+            }
+        });
+    }
+}
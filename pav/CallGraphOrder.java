@@ -0,0 +1,85 @@
+package pav;
+
+import java.util.*;
+
+// Strongly connected components of a call graph, listed bottom-up: every component comes after
+// the components of all the methods it calls, so that their summaries are known when it is
+// analyzed. A component with more than one method (or a method that calls itself) is recursive.
+public class CallGraphOrder<T> {
+    public final List<List<T>> components = new ArrayList<>();
+
+    // callees holds the methods called by each method; callees that are not in methods are ignored
+    public CallGraphOrder(Collection<T> methods, Map<T, ? extends Collection<T>> callees) {
+        Set<T> inside = new HashSet<>(methods);
+        Map<T, Integer> index = new HashMap<>();
+        Map<T, Integer> lowLink = new HashMap<>();
+        Set<T> onStack = new HashSet<>();
+        Deque<T> sccStack = new ArrayDeque<>();
+
+        // Tarjan's algorithm (iterative), which finds the components in reverse topological
+        // order, i.e. callees first
+        Deque<T> callStack = new ArrayDeque<>();
+        Deque<Iterator<T>> successors = new ArrayDeque<>();
+        int counter = 0;
+        for (T root : methods) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            index.put(root, counter);
+            lowLink.put(root, counter);
+            counter++;
+            sccStack.push(root);
+            onStack.add(root);
+            callStack.push(root);
+            successors.push(callees(callees, root));
+
+            while (!callStack.isEmpty()) {
+                T v = callStack.peek();
+                Iterator<T> it = successors.peek();
+                if (it.hasNext()) {
+                    T w = it.next();
+                    if (!inside.contains(w)) {
+                        continue;
+                    }
+                    if (!index.containsKey(w)) {
+                        index.put(w, counter);
+                        lowLink.put(w, counter);
+                        counter++;
+                        sccStack.push(w);
+                        onStack.add(w);
+                        callStack.push(w);
+                        successors.push(callees(callees, w));
+                    } else if (onStack.contains(w)) {
+                        lowLink.put(v, Math.min(lowLink.get(v), index.get(w)));
+                    }
+                } else {
+                    callStack.pop();
+                    successors.pop();
+                    if (!callStack.isEmpty()) {
+                        T parent = callStack.peek();
+                        lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(v)));
+                    }
+                    if (lowLink.get(v).equals(index.get(v))) {
+                        List<T> component = new ArrayList<>();
+                        T w;
+                        do {
+                            w = sccStack.pop();
+                            onStack.remove(w);
+                            component.add(w);
+                        } while (w != v);
+                        components.add(component);
+                    }
+                }
+            }
+        }
+    }
+
+    private static <T> Iterator<T> callees(Map<T, ? extends Collection<T>> callees, T method) {
+        Collection<T> called = callees.get(method);
+        return called == null ? Collections.<T>emptyIterator() : called.iterator();
+    }
+
+    public String toString() {
+        return components.toString();
+    }
+}
@@ -0,0 +1,331 @@
+package pav;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import soot.ClassProvider;
+import soot.ClassSource;
+import soot.FoundFile;
+import soot.asm.AsmClassSource;
+
+// Index of the class files in class directories and jars (--lazy): every file is memory-mapped
+// and each class name is mapped to the byte range of its class file (for a jar, found through the
+// central directory). Stored jar entries and class files are handed to Soot without copying;
+// deflated entries are inflated on demand. The classes that the analyzed classes may need are
+// found from the class references in their constant pools, so Soot only ever parses those.
+public class ClassIndex {
+    // Byte range of one class file
+    private static class ClassFile {
+        final String path;
+        final ByteBuffer data;
+        // for a jar entry: offset of its local header (-1 for a class file), and the size of its data
+        final int headerOffset;
+        final boolean deflated;
+        final int size;
+
+        ClassFile(String path, ByteBuffer data, int headerOffset, boolean deflated, int size) {
+            this.path = path;
+            this.data = data;
+            this.headerOffset = headerOffset;
+            this.deflated = deflated;
+            this.size = size;
+        }
+    }
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private final Map<String, ClassFile> classes = new HashMap<>();
+
+    // roots are class directories and jars; a class found in several roots is taken from the first
+    public ClassIndex(List<String> roots) throws IOException {
+        for (String root : roots) {
+            Path path = Paths.get(root);
+            if (Files.isDirectory(path)) {
+                indexDirectory(path);
+            } else {
+                indexJar(path);
+            }
+        }
+    }
+
+    private void indexDirectory(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (name.endsWith(".class")) {
+                    add(name, new ClassFile(file.toString(), map(file), -1, false, (int) attributes.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void indexJar(Path jar) throws IOException {
+        ByteBuffer data = map(jar).order(ByteOrder.LITTLE_ENDIAN);
+        // the end of central directory record is followed by a comment of at most 64 KB
+        int end = -1;
+        for (int i = data.limit() - 22; i >= Math.max(0, data.limit() - 22 - 0xFFFF); i--) {
+            if (data.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Not a jar file: " + jar);
+        }
+        int entries = data.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = data.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entries == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 jars are not supported: " + jar);
+        }
+        int offset = (int) directoryOffset;
+        for (int i = 0; i < entries; i++) {
+            if (data.getInt(offset) != CENTRAL_DIRECTORY_ENTRY) {
+                throw new IOException("Corrupt central directory in " + jar);
+            }
+            int method = data.getShort(offset + 10) & 0xFFFF;
+            int compressedSize = data.getInt(offset + 20);
+            int size = data.getInt(offset + 24);
+            int nameLength = data.getShort(offset + 28) & 0xFFFF;
+            int extraLength = data.getShort(offset + 30) & 0xFFFF;
+            int commentLength = data.getShort(offset + 32) & 0xFFFF;
+            int headerOffset = data.getInt(offset + 42);
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer name = data.duplicate();
+            name.position(offset + 46);
+            name.get(nameBytes);
+            String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+            if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")
+                    && (method == 0 || method == 8)) {
+                add(entryName, new ClassFile(jar + "!" + entryName, data, headerOffset, method == 8,
+                        method == 8 ? compressedSize : size));
+            }
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private void add(String entryName, ClassFile classFile) {
+        String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+        if (!className.equals("module-info") && !classes.containsKey(className)) {
+            classes.put(className, classFile);
+        }
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close(); // the mapping stays valid
+        }
+    }
+
+    public Set<String> classNames() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    public boolean contains(String className) {
+        return classes.containsKey(className);
+    }
+
+    // Contents of the class file of a class (a view of the mapped file unless it must be inflated)
+    public ByteBuffer bytes(String className) throws IOException {
+        ClassFile classFile = classes.get(className);
+        if (classFile.headerOffset < 0) {
+            return classFile.data.duplicate();
+        }
+        ByteBuffer jar = classFile.data;
+        int nameLength = jar.getShort(classFile.headerOffset + 26) & 0xFFFF;
+        int extraLength = jar.getShort(classFile.headerOffset + 28) & 0xFFFF;
+        if (jar.getInt(classFile.headerOffset) != LOCAL_HEADER) {
+            throw new IOException("Corrupt entry " + classFile.path);
+        }
+        ByteBuffer entry = jar.duplicate();
+        entry.position(classFile.headerOffset + 30 + nameLength + extraLength);
+        entry.limit(entry.position() + classFile.size);
+        entry = entry.slice();
+        if (!classFile.deflated) {
+            return entry;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] input = new byte[entry.remaining()];
+            entry.get(input);
+            inflater.setInput(input);
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry " + classFile.path);
+                }
+                inflated.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(inflated.toByteArray());
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + classFile.path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Indexed classes reachable from the given classes over the class references of their constant
+    // pools (superclasses, interfaces, and the classes of fields, methods and descriptors)
+    public Set<String> reachable(Collection<String> roots) throws IOException {
+        Set<String> reachable = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        for (String root : roots) {
+            if (contains(root) && reachable.add(root)) {
+                queue.add(root);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (String referenced : referencedClasses(bytes(queue.poll()))) {
+                if (contains(referenced) && reachable.add(referenced)) {
+                    queue.add(referenced);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    // Names of the classes referenced from the constant pool of a class file
+    static Set<String> referencedClasses(ByteBuffer classFile) throws IOException {
+        ByteBuffer in = classFile.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (in.getInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.getInt(); // minor and major version
+        int count = in.getShort() & 0xFFFF;
+        String[] utf8 = new String[count];
+        List<Integer> classNames = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            int tag = in.get();
+            switch (tag) {
+            case 1: // Utf8
+                byte[] bytes = new byte[in.getShort() & 0xFFFF];
+                in.get(bytes);
+                utf8[i] = new String(bytes, StandardCharsets.UTF_8); // modified UTF-8, but class names are ASCII
+                break;
+            case 7: // Class
+                classNames.add(in.getShort() & 0xFFFF);
+                break;
+            case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+                in.position(in.position() + 2);
+                break;
+            case 15: // MethodHandle
+                in.position(in.position() + 3);
+                break;
+            case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                in.position(in.position() + 4);
+                break;
+            case 5: case 6: // Long and Double take two entries
+                in.position(in.position() + 8);
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (int index : classNames) {
+            String name = utf8[index];
+            if (name != null && !name.startsWith("[")) {
+                referenced.add(name.replace('/', '.'));
+            }
+        }
+        // descriptors and signatures (array classes, field and method types)
+        for (String value : utf8) {
+            if (value == null || value.isEmpty() || "([L<".indexOf(value.charAt(0)) < 0) {
+                continue;
+            }
+            int start = value.indexOf('L');
+            while (start >= 0) {
+                int end = start + 1;
+                while (end < value.length() && ";<".indexOf(value.charAt(end)) < 0) {
+                    end++;
+                }
+                if (end < value.length() && end > start + 1) {
+                    referenced.add(value.substring(start + 1, end).replace('/', '.'));
+                }
+                start = value.indexOf('L', end);
+            }
+        }
+        return referenced;
+    }
+
+    // Class provider that gives Soot the indexed classes from their mapped bytes; other classes
+    // (the JDK) are left to the next provider
+    public ClassProvider classProvider() {
+        return new ClassProvider() {
+            public ClassSource find(final String className) {
+                if (!contains(className)) {
+                    return null;
+                }
+                return new AsmClassSource(className, new MappedFoundFile(className)) {
+                };
+            }
+        };
+    }
+
+    // A class file as Soot's class sources expect it, read from the index
+    private class MappedFoundFile extends FoundFile {
+        private final String className;
+
+        MappedFoundFile(String className) {
+            super(Paths.get(classes.get(className).path.replaceFirst("!.*$", "")));
+            this.className = className;
+        }
+
+        public String getFilePath() {
+            return classes.get(className).path;
+        }
+
+        public InputStream inputStream() {
+            try {
+                return new ByteBufferInputStream(bytes(className));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void close() {
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package pav;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.Body;
+import soot.Unit;
+
+// Fixpoint facts of the last analysis of every method, kept in memory by the server so that a
+// method can be re-analyzed incrementally after its body changed (see IncrementalFixpoint).
+// Entries are keyed by the method signature and every setting that can change the results.
+public class FactStore {
+    // What is needed to compare the program-point graph of a new body with the old one, and to
+    // translate the old facts to the new body
+    public static class Entry {
+        // text of the statement at every program point
+        final List<String> statements;
+        // labelled outgoing edges of every point of the graph that was solved
+        final Map<Integer, Map<Integer, String>> edges;
+        // program point of every statement of the old body
+        final Map<Unit, Integer> pointBeforeUnit;
+        // type of every local, by name
+        final Map<String, String> localTypes;
+        // names of the locals live at every point with --liveness (whose facts hold only those), or null
+        final Map<Integer, Set<String>> liveLocals;
+        // facts of every fixpoint of the method (intervals, pointers or product)
+        final Map<String, Map<Integer, LatticeElement>> facts = new HashMap<>();
+
+        Entry(List<String> statements, Map<Integer, Map<Integer, String>> edges, Map<Unit, Integer> pointBeforeUnit,
+                Map<String, String> localTypes, Map<Integer, Set<String>> liveLocals) {
+            this.statements = statements;
+            this.edges = edges;
+            this.pointBeforeUnit = pointBeforeUnit;
+            this.localTypes = localTypes;
+            this.liveLocals = liveLocals;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Key of the facts of a method body under the given configuration
+    public static String key(Body body, AnalysisContext context) {
+        return body.getMethod().getSignature() + "\n" + ResultCache.configuration(context);
+    }
+
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    // Number of methods with stored facts
+    public int size() {
+        return entries.size();
+    }
+}
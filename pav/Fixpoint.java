@@ -0,0 +1,227 @@
+package pav;
+
+import java.util.*;
+
+import soot.jimple.Stmt;
+
+// Fixpoint engines over the program points of a method. Facts are kept in an array indexed by
+// point while the fixpoint is computed, and edges are walked by index (see PointGraph), so the
+// inner loops allocate nothing besides the facts themselves. Given a Liveness, the engines keep in
+// every fact only the locals live at its point.
+public class Fixpoint {
+    // Compute the fixpoint with the engine selected by the "engine" option (kildall or wto)
+    public static Map<Integer, LatticeElement> solve(LatticeElement initialElement, PointGraph graph,
+            AnalysisContext context, FixpointStats stats) {
+        return solve(initialElement, graph, null, context, stats);
+    }
+
+    // Same, with the facts restricted to the live locals if liveness is not null
+    public static Map<Integer, LatticeElement> solve(LatticeElement initialElement, PointGraph graph,
+            Liveness liveness, AnalysisContext context, FixpointStats stats) {
+        String engine = context.option("engine", "kildall");
+        if (engine.equals("kildall")) {
+            return runKildall(initialElement, graph, liveness,
+                    Worklist.create(context.option("worklist", "fifo"), graph), stats);
+        } else if (engine.equals("wto")) {
+            return runBourdoncle(initialElement, graph, liveness, Integer.parseInt(context.option("narrowing", "2")),
+                    stats);
+        }
+        throw new IllegalArgumentException("Unknown fixpoint engine: " + engine);
+    }
+
+    // Running Kildall's algorithm
+    public static Map<Integer, LatticeElement> runKildall(LatticeElement initialElement, PointGraph graph) {
+        return runKildall(initialElement, graph, Worklist.create("fifo", graph), new FixpointStats());
+    }
+
+    // Running Kildall's algorithm with the given worklist scheduling
+    public static Map<Integer, LatticeElement> runKildall(LatticeElement initialElement, PointGraph graph,
+            Worklist worklist, FixpointStats stats) {
+        return runKildall(initialElement, graph, null, worklist, stats);
+    }
+
+    public static Map<Integer, LatticeElement> runKildall(LatticeElement initialElement, PointGraph graph,
+            Liveness liveness, Worklist worklist, FixpointStats stats) {
+        // Initialize facts with initial lattice elements
+        LatticeElement[] facts = initialFacts(initialElement, graph);
+        facts[0] = liveness == null ? initialElement : liveness.atPoint(initialElement, 0, initialElement);
+
+        // Initialize worklist with all nodes of the graph
+        for (int point : graph.points()) {
+            worklist.add(point);
+        }
+
+        iterate(facts, graph, liveness, initialElement, worklist, stats);
+
+        // Return the final facts map
+        return graph.toMap(facts);
+    }
+
+    // Kildall's algorithm started from the facts of a previous analysis of the method: keptFacts holds
+    // the facts of the points that no changed statement can reach, which the change cannot affect, and
+    // all other points start at bot. Only the kept points that flow into the other points are put on
+    // the worklist. Kildall's algorithm computes the least fixpoint in any order, so the result is the
+    // same as that of runKildall (with the same liveness, which may be null).
+    public static Map<Integer, LatticeElement> resumeKildall(LatticeElement initialElement, PointGraph graph,
+            Liveness liveness, Map<Integer, LatticeElement> keptFacts, Worklist worklist, FixpointStats stats) {
+        LatticeElement[] facts = initialFacts(initialElement, graph);
+        facts[0] = liveness == null ? initialElement : liveness.atPoint(initialElement, 0, initialElement);
+        for (Map.Entry<Integer, LatticeElement> kept : keptFacts.entrySet()) {
+            facts[kept.getKey()] = kept.getValue();
+        }
+
+        if (!keptFacts.containsKey(0)) {
+            worklist.add(0);
+        }
+        for (Integer point : keptFacts.keySet()) {
+            for (int e = graph.offsets[point]; e < graph.offsets[point + 1]; e++) {
+                if (!keptFacts.containsKey(graph.targets[e])) {
+                    worklist.add(point);
+                    break;
+                }
+            }
+        }
+
+        iterate(facts, graph, liveness, initialElement, worklist, stats);
+        return graph.toMap(facts);
+    }
+
+    // Bot at every point of the graph (other points stay null)
+    private static LatticeElement[] initialFacts(LatticeElement initialElement, PointGraph graph) {
+        LatticeElement[] facts = new LatticeElement[graph.size];
+        LatticeElement bot = initialElement.getBot();
+        for (int point : graph.points()) {
+            facts[point] = bot;
+        }
+        return facts;
+    }
+
+    // Propagate facts along the edges until the worklist is empty
+    private static void iterate(LatticeElement[] facts, PointGraph graph, Liveness liveness,
+            LatticeElement initialElement, Worklist worklist, FixpointStats stats) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        Stmt[] statements = graph.statements;
+        boolean[] trueBranch = graph.trueBranch;
+        // Process the worklist
+        while (!worklist.isEmpty()) {
+            int current = worklist.poll();
+            LatticeElement oldFact = facts[current];
+            stats.iterations++;
+
+            // Compute the current fact to all successors
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int succ = targets[e];
+                LatticeElement newFact = liveness == null ? oldFact.tf_assignment(statements[e], trueBranch[e])
+                        : liveness.transfer(oldFact, current, statements[e], trueBranch[e], succ, initialElement);
+                stats.transfer(statements[e]);
+                LatticeElement oldSuccFact = facts[succ];
+                LatticeElement newSuccFact = oldSuccFact.join(newFact);
+                stats.joins++;
+                facts[succ] = newSuccFact;
+                if (!newSuccFact.equals(oldSuccFact)) {
+                    stats.factChanges++;
+                    worklist.add(succ);
+                }
+            }
+        }
+    }
+
+    // Bourdoncle's recursive iteration strategy over a weak topological order: widening is applied
+    // only at component heads, followed by a bounded number of narrowing passes
+    public static Map<Integer, LatticeElement> runBourdoncle(LatticeElement initialElement, PointGraph graph,
+            int narrowingPasses, FixpointStats stats) {
+        return runBourdoncle(initialElement, graph, null, narrowingPasses, stats);
+    }
+
+    public static Map<Integer, LatticeElement> runBourdoncle(LatticeElement initialElement, PointGraph graph,
+            Liveness liveness, int narrowingPasses, FixpointStats stats) {
+        LatticeElement[] facts = initialFacts(initialElement, graph);
+
+        WeakTopologicalOrder wto = new WeakTopologicalOrder(graph);
+
+        // ascending phase with widening
+        stabilize(wto.elements, initialElement, graph, liveness, facts, stats);
+
+        // descending phase with narrowing
+        for (int pass = 0; pass < narrowingPasses; pass++) {
+            if (!narrowPass(wto.elements, initialElement, graph, liveness, facts, stats)) {
+                break;
+            }
+        }
+
+        return graph.toMap(facts);
+    }
+
+    // Join of the transferred facts of all predecessors of a point (and the initial element at the entry)
+    private static LatticeElement incomingFact(int point, LatticeElement initialElement, PointGraph graph,
+            Liveness liveness, LatticeElement[] facts, FixpointStats stats) {
+        LatticeElement result = point != 0 ? initialElement.getBot()
+                : liveness == null ? initialElement : liveness.atPoint(initialElement, 0, initialElement);
+        for (int i = graph.predecessorOffsets[point]; i < graph.predecessorOffsets[point + 1]; i++) {
+            int e = graph.predecessorEdges[i];
+            int source = graph.sources[e];
+            LatticeElement newFact = liveness == null
+                    ? facts[source].tf_assignment(graph.statements[e], graph.trueBranch[e])
+                    : liveness.transfer(facts[source], source, graph.statements[e], graph.trueBranch[e], point,
+                            initialElement);
+            stats.transfer(graph.statements[e]);
+            result = result.join(newFact);
+            stats.joins++;
+        }
+        return result;
+    }
+
+    private static void stabilize(List<WeakTopologicalOrder.Element> elements, LatticeElement initialElement,
+            PointGraph graph, Liveness liveness, LatticeElement[] facts, FixpointStats stats) {
+        for (WeakTopologicalOrder.Element element : elements) {
+            int head = element.point;
+            stats.iterations++;
+            facts[head] = incomingFact(head, initialElement, graph, liveness, facts, stats);
+            stats.factChanges++;
+            if (!element.isComponent()) {
+                continue;
+            }
+            // iterate the component until its head is stable
+            while (true) {
+                stabilize(element.body, initialElement, graph, liveness, facts, stats);
+                stats.iterations++;
+                LatticeElement oldHeadFact = facts[head];
+                LatticeElement newHeadFact = oldHeadFact.join(
+                        incomingFact(head, initialElement, graph, liveness, facts, stats));
+                stats.joins++;
+                if (newHeadFact.equals(oldHeadFact)) {
+                    break;
+                }
+                facts[head] = oldHeadFact.widen(newHeadFact);
+                stats.widenings++;
+                stats.factChanges++;
+            }
+        }
+    }
+
+    // One decreasing pass in weak topological order; returns whether any fact changed
+    private static boolean narrowPass(List<WeakTopologicalOrder.Element> elements, LatticeElement initialElement,
+            PointGraph graph, Liveness liveness, LatticeElement[] facts, FixpointStats stats) {
+        boolean changed = false;
+        for (WeakTopologicalOrder.Element element : elements) {
+            int point = element.point;
+            stats.iterations++;
+            LatticeElement oldFact = facts[point];
+            LatticeElement newFact = incomingFact(point, initialElement, graph, liveness, facts, stats);
+            if (element.isComponent()) {
+                newFact = oldFact.narrow(newFact);
+            }
+            if (!newFact.equals(oldFact)) {
+                facts[point] = newFact;
+                stats.factChanges++;
+                changed = true;
+            }
+            if (element.isComponent()) {
+                changed |= narrowPass(element.body, initialElement, graph, liveness, facts, stats);
+            }
+        }
+        return changed;
+    }
+
+}
@@ -0,0 +1,68 @@
+package pav;
+
+import soot.jimple.AssignStmt;
+import soot.jimple.GotoStmt;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.InvokeStmt;
+import soot.jimple.ReturnStmt;
+import soot.jimple.ReturnVoidStmt;
+import soot.jimple.Stmt;
+
+// Counters collected while running a fixpoint computation
+public class FixpointStats {
+    // statement kinds that transfers are counted by
+    public static final String[] KINDS = { "assign", "identity", "if", "goto", "invoke", "return", "other" };
+
+    // points taken from the worklist
+    public long iterations = 0;
+    // tf_assignment invocations
+    public long transfers = 0;
+    // tf_assignment invocations by statement kind (indexed like KINDS)
+    public final long[] transfersByKind = new long[KINDS.length];
+    // join invocations
+    public long joins = 0;
+    // facts of points that were replaced by a different fact (after a join, widening or narrowing)
+    public long factChanges = 0;
+    // widening applications at loop heads
+    public long widenings = 0;
+
+    // Count one invocation of the transfer function of a statement
+    public void transfer(Stmt stmt) {
+        transfers++;
+        transfersByKind[kind(stmt)]++;
+    }
+
+    private static int kind(Stmt stmt) {
+        if (stmt instanceof AssignStmt) {
+            return 0;
+        } else if (stmt instanceof IdentityStmt) {
+            return 1;
+        } else if (stmt instanceof IfStmt) {
+            return 2;
+        } else if (stmt instanceof GotoStmt) {
+            return 3;
+        } else if (stmt instanceof InvokeStmt) {
+            return 4;
+        } else if (stmt instanceof ReturnStmt || stmt instanceof ReturnVoidStmt) {
+            return 5;
+        }
+        return 6;
+    }
+
+    // Add the counters of another computation to these
+    public void add(FixpointStats other) {
+        iterations += other.iterations;
+        transfers += other.transfers;
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            transfersByKind[kind] += other.transfersByKind[kind];
+        }
+        joins += other.joins;
+        factChanges += other.factChanges;
+        widenings += other.widenings;
+    }
+
+    public String toString() {
+        return iterations + " iterations, " + transfers + " transfers, " + widenings + " widenings";
+    }
+}
@@ -0,0 +1,249 @@
+package pav;
+
+import java.util.*;
+import java.util.function.Function;
+
+import soot.Body;
+import soot.Local;
+import soot.Unit;
+
+// Incremental fixpoint computation of one method against the facts of its last analysis in a
+// FactStore. The statements of the old and new bodies are aligned by their longest common prefix
+// and suffix. A point of the new graph has changed if it has no counterpart in the old one, or
+// if its outgoing edges differ (in target, statement, branch or callee summary). The facts of all
+// points that no changed point can reach are kept, and Kildall's algorithm is resumed from there.
+// Only used with the Kildall engine, whose least fixpoint does not depend on where it starts from;
+// the widening of the WTO engine depends on the iteration order. With --liveness, an old fact holds
+// only the locals live at its point, so it is kept only if no more locals are live there now.
+public class IncrementalFixpoint {
+    private final FactStore store;
+    private final String key;
+    private final AnalysisContext context;
+    private final PointGraph graph;
+    // live locals of the new body (null without --liveness)
+    private final Liveness liveness;
+
+    // facts of the last analysis (null if there is none, or the locals changed their types)
+    private FactStore.Entry previous;
+    // entry for this analysis, stored by finish
+    private final FactStore.Entry entry;
+
+    // aligned points of the new and the old body
+    private final Map<Integer, Integer> oldPoint = new HashMap<>();
+    private final Map<Integer, Integer> newPoint = new HashMap<>();
+    // points whose outgoing edges changed
+    private final Set<Integer> changed = new HashSet<>();
+
+    private final Map<Integer, Unit> unitAtPoint = new HashMap<>();
+    private final Map<String, Local> localsByName = new HashMap<>();
+
+    // number of points whose facts were kept, and of all points, over all fixpoints of the method
+    private int keptPoints = 0;
+    private int totalPoints = 0;
+
+    public IncrementalFixpoint(FactStore store, Body body, Map<Unit, Integer> pointBeforeUnit, PointGraph graph,
+            Liveness liveness, AnalysisContext context) {
+        this.store = store;
+        this.key = FactStore.key(body, context);
+        this.context = context;
+        this.graph = graph;
+        this.liveness = liveness;
+
+        String[] statements = new String[pointBeforeUnit.size()];
+        for (Map.Entry<Unit, Integer> point : pointBeforeUnit.entrySet()) {
+            statements[point.getValue()] = point.getKey().toString();
+            unitAtPoint.put(point.getValue(), point.getKey());
+        }
+        Map<Integer, Map<Integer, String>> edges = new HashMap<>();
+        for (int point : graph.points()) {
+            edges.put(point, outgoingEdges(point));
+        }
+        Map<String, String> localTypes = new HashMap<>();
+        for (Local local : body.getLocals()) {
+            localsByName.put(local.getName(), local);
+            localTypes.put(local.getName(), local.getType().toString());
+        }
+        Map<Integer, Set<String>> liveLocals = null;
+        if (liveness != null) {
+            liveLocals = new HashMap<>();
+            for (int point : graph.points()) {
+                liveLocals.put(point, liveness.liveNames(point));
+            }
+        }
+        this.entry = new FactStore.Entry(Arrays.asList(statements), edges, new HashMap<>(pointBeforeUnit),
+                localTypes, liveLocals);
+
+        this.previous = store.get(key);
+        if (previous != null) {
+            for (String name : localTypes.keySet()) {
+                if (previous.localTypes.containsKey(name)
+                        && !previous.localTypes.get(name).equals(localTypes.get(name))) {
+                    previous = null; // the facts of a local cannot be carried over to another type
+                    break;
+                }
+            }
+        }
+        if (previous != null) {
+            align();
+        }
+    }
+
+    // Edges leaving a point, labelled with everything their transfer function depends on
+    private Map<Integer, String> outgoingEdges(int point) {
+        Map<Integer, String> edges = new HashMap<>();
+        for (int e = graph.offsets[point]; e < graph.offsets[point + 1]; e++) {
+            Unit unit = graph.statements[e];
+            MethodSummary summary = context.callSummary(unit);
+            edges.put(graph.targets[e], unit + (graph.trueBranch[e] ? " [true]" : "")
+                    + (summary == null ? "" : " [" + summary.toString().replace('\n', ';') + "]"));
+        }
+        return edges;
+    }
+
+    // Align the points of the old and the new body, and find the points whose edges changed
+    private void align() {
+        List<String> oldStatements = previous.statements;
+        List<String> newStatements = entry.statements;
+        int common = Math.min(oldStatements.size(), newStatements.size());
+        int prefix = 0;
+        while (prefix < common && oldStatements.get(prefix).equals(newStatements.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix && oldStatements.get(oldStatements.size() - 1 - suffix)
+                .equals(newStatements.get(newStatements.size() - 1 - suffix))) {
+            suffix++;
+        }
+        for (int i = 0; i < prefix; i++) {
+            oldPoint.put(i, i);
+        }
+        for (int i = 0; i < suffix; i++) {
+            oldPoint.put(newStatements.size() - 1 - i, oldStatements.size() - 1 - i);
+        }
+        for (Map.Entry<Integer, Integer> aligned : oldPoint.entrySet()) {
+            newPoint.put(aligned.getValue(), aligned.getKey());
+        }
+
+        for (int point : graph.points()) {
+            Integer old = oldPoint.get(point);
+            Map<Integer, String> oldEdges = old == null ? null : previous.edges.get(old);
+            if (oldEdges == null) {
+                changed.add(point);
+                continue;
+            }
+            // the new edges, with their targets replaced by the aligned old points
+            Map<Integer, String> edges = new HashMap<>();
+            for (Map.Entry<Integer, String> edge : entry.edges.get(point).entrySet()) {
+                Integer oldSucc = oldPoint.get(edge.getKey());
+                if (oldSucc == null) {
+                    break;
+                }
+                edges.put(oldSucc, edge.getValue());
+            }
+            if (!edges.equals(oldEdges)) {
+                changed.add(point);
+            }
+        }
+    }
+
+    // Fixpoint of one analysis of the method (intervals, pointers or product), reusing the facts of
+    // its last analysis where possible. translate converts an old fact to the new body, or returns
+    // null if it cannot.
+    public Map<Integer, LatticeElement> solve(String analysis, LatticeElement initialElement,
+            Function<LatticeElement, LatticeElement> translate, FixpointStats stats) {
+        Worklist worklist = Worklist.create(context.option("worklist", "fifo"), graph);
+        Map<Integer, LatticeElement> previousFacts = previous == null ? null : previous.facts.get(analysis);
+        Map<Integer, LatticeElement> facts;
+        if (previousFacts == null) {
+            facts = Fixpoint.runKildall(initialElement, graph, liveness, worklist, stats);
+        } else {
+            // translate the old facts of unchanged points; a point whose fact cannot be translated
+            // is handled as changed
+            Set<Integer> sources = new HashSet<>(changed);
+            Map<Integer, LatticeElement> keptFacts = new HashMap<>();
+            for (int point : graph.points()) {
+                if (changed.contains(point)) {
+                    continue;
+                }
+                LatticeElement oldFact = previousFacts.get(oldPoint.get(point));
+                LatticeElement fact = oldFact == null ? null : translate.apply(oldFact);
+                if (fact == null || (liveness != null
+                        && !previous.liveLocals.get(oldPoint.get(point)).containsAll(liveness.liveNames(point)))) {
+                    sources.add(point);
+                } else {
+                    keptFacts.put(point, liveness == null ? fact : liveness.atPoint(fact, point, initialElement));
+                }
+            }
+            // points reachable from a changed point must be recomputed
+            Deque<Integer> queue = new ArrayDeque<>(sources);
+            Set<Integer> affected = new HashSet<>(sources);
+            while (!queue.isEmpty()) {
+                int point = queue.poll();
+                for (int e = graph.offsets[point]; e < graph.offsets[point + 1]; e++) {
+                    if (affected.add(graph.targets[e])) {
+                        queue.add(graph.targets[e]);
+                    }
+                }
+            }
+            keptFacts.keySet().removeAll(affected);
+            keptPoints += keptFacts.size();
+            facts = Fixpoint.resumeKildall(initialElement, graph, liveness, keptFacts, worklist, stats);
+        }
+        totalPoints += graph.pointCount();
+        entry.facts.put(analysis, facts);
+        return facts;
+    }
+
+    // Intervals of a non-bot fact of the last analysis over the locals of the new body: locals with
+    // the name of an old local take its interval, the others keep their interval in base. Kept points
+    // are only reached over unchanged statements, so a name means the same variable on those paths.
+    public Map<Local, Pair<Float, Float>> intervals(IntervalLattice oldFact, Map<Local, Pair<Float, Float>> base) {
+        Map<Local, Pair<Float, Float>> intervals = new HashMap<>(base);
+        for (Local local : oldFact.getLocals()) {
+            Local newLocal = localsByName.get(local.getName());
+            if (newLocal != null) {
+                intervals.put(newLocal, oldFact.getInterval(local));
+            }
+        }
+        return intervals;
+    }
+
+    // Points-to sets of a non-bot fact of the last analysis over the locals of the new body (as for
+    // intervals), with the old allocation sites replaced by the aligned statements; null if an
+    // old site has no counterpart among the allocation sites of the new body
+    public Map<Local, Set<Unit>> pointsTo(PointerLattice oldFact, Map<Local, Set<Unit>> base, Set<Unit> sites) {
+        Map<Local, Set<Unit>> pointsTo = new HashMap<>();
+        for (Local local : base.keySet()) {
+            pointsTo.put(local, new HashSet<>(base.get(local)));
+        }
+        for (Local local : oldFact.getLocals()) {
+            Local newLocal = localsByName.get(local.getName());
+            if (newLocal == null) {
+                continue;
+            }
+            Set<Unit> newSites = new HashSet<>();
+            for (Unit site : oldFact.getPointsTo(local)) {
+                Unit newSite = null;
+                if (site != null) {
+                    Integer point = newPoint.get(previous.pointBeforeUnit.get(site));
+                    newSite = point == null ? null : unitAtPoint.get(point);
+                    if (newSite == null || !sites.contains(newSite)) {
+                        return null;
+                    }
+                }
+                newSites.add(newSite);
+            }
+            pointsTo.put(newLocal, newSites);
+        }
+        return pointsTo;
+    }
+
+    // Store the facts of this analysis for the next one
+    public void finish() {
+        store.put(key, entry);
+    }
+
+    public String toString() {
+        return keptPoints + " of " + totalPoints + " points kept";
+    }
+}
@@ -0,0 +1,346 @@
+package pav;
+
+import java.util.*;
+
+import soot.Unit;
+import soot.Value;
+import soot.jimple.Stmt;
+import soot.Local;
+import soot.jimple.IfStmt;
+import soot.jimple.AssignStmt;
+import soot.jimple.ConditionExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.NullConstant;
+
+// Same abstraction as IntegerArrayPointer, but allocation sites are numbered by an
+// AllocationIndex and every points-to set is a bitset (bit 0 is null). Joins are word-wise ORs
+// and equality is a word compare. Elements and their bitsets are never modified after
+// construction, so unchanged sets are shared between states.
+public class IntegerArrayBitsetPointer implements PointerLattice {
+    public static final IntegerArrayBitsetPointer bot = new IntegerArrayBitsetPointer();
+
+    private final LocalIndex index;
+    private final AllocationIndex sites;
+    // points-to set of each local slot, or null if the local is not an integer array
+    private final long[][] sets;
+
+    public LatticeElement getBot() {
+        return bot;
+    }
+
+    public IntegerArrayBitsetPointer(Map<Local, Set<Unit>> givenPointerMap, LocalIndex index, AllocationIndex sites) {
+        // givenPointerMap should not be null
+        if (givenPointerMap == null) {
+            throw new IllegalArgumentException("Invalid pointer map.");
+        }
+        long[][] newSets = new long[index.size()][];
+        for (Local local : givenPointerMap.keySet()) {
+            int i = index.indexOf(local);
+            Set<Unit> units = givenPointerMap.get(local);
+            // units should not be empty or null
+            if (i < 0 || units == null || units.isEmpty()) {
+                throw new IllegalArgumentException("Invalid pointer map.");
+            }
+            long[] set = new long[sites.words()];
+            // each unit should be null or one of the allocation sites
+            for (Unit unit : units) {
+                int site = sites.indexOf(unit);
+                if (site < 0) {
+                    throw new IllegalArgumentException("Invalid pointer map.");
+                }
+                set[site >>> 6] |= 1L << site;
+            }
+            newSets[i] = set;
+        }
+        this.index = index;
+        this.sites = sites;
+        this.sets = newSets;
+    }
+
+    // Constructor for sets derived from a valid element
+    private IntegerArrayBitsetPointer(LocalIndex index, AllocationIndex sites, long[][] sets) {
+        this.index = index;
+        this.sites = sites;
+        this.sets = sets;
+    }
+
+    // Private constructor for bot
+    private IntegerArrayBitsetPointer() {
+        this(null, null, (long[][]) null);
+    }
+
+    // check if the IntegerArrayBitsetPointer is bot
+    public boolean isBot() {
+        return this.sets == null;
+    }
+
+    public Collection<Local> getLocals() {
+        List<Local> locals = new ArrayList<>();
+        for (int i = 0; i < sets.length; i++) {
+            if (sets[i] != null) {
+                locals.add(index.get(i));
+            }
+        }
+        return locals;
+    }
+
+    public Set<Unit> getPointsTo(Local local) {
+        int i = slot(local);
+        if (i < 0) {
+            return null;
+        }
+        Set<Unit> units = new HashSet<>();
+        long[] set = sets[i];
+        for (int w = 0; w < set.length; w++) {
+            for (long word = set[w]; word != 0; word &= word - 1) {
+                units.add(sites.get((w << 6) + Long.numberOfTrailingZeros(word)));
+            }
+        }
+        return units;
+    }
+
+    // Slot of a tracked local, or -1
+    private int slot(Value value) {
+        int i = index.indexOf(value);
+        return i >= 0 && sets[i] != null ? i : -1;
+    }
+
+    private static boolean containsNull(long[] set) {
+        return (set[0] & 1L) != 0;
+    }
+
+    // check if the set is exactly {null}
+    private static boolean isNullOnly(long[] set) {
+        if (set[0] != 1L) {
+            return false;
+        }
+        for (int w = 1; w < set.length; w++) {
+            if (set[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(long[] set) {
+        for (long word : set) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long[] singleton(int site) {
+        long[] set = new long[sites.words()];
+        set[site >>> 6] = 1L << site;
+        return set;
+    }
+
+    private static long[] withoutNull(long[] set) {
+        long[] newSet = set.clone();
+        newSet[0] &= ~1L;
+        return newSet;
+    }
+
+    // Copy of this element where the given slots point to the given sets
+    private IntegerArrayBitsetPointer with(int i, long[] set, int j, long[] otherSet) {
+        long[][] newSets = sets.clone();
+        newSets[i] = set;
+        newSets[j] = otherSet;
+        return new IntegerArrayBitsetPointer(index, sites, newSets);
+    }
+
+    private IntegerArrayBitsetPointer with(int i, long[] set) {
+        return with(i, set, i, set);
+    }
+
+    // Join operation with another LatticeElement
+    public LatticeElement join(LatticeElement other) {
+        if (!(other instanceof IntegerArrayBitsetPointer)) {
+            throw new IllegalArgumentException("Incompatible types for join");
+        }
+        IntegerArrayBitsetPointer otherPointer = (IntegerArrayBitsetPointer) other;
+        if (this.isBot()) {
+            return otherPointer;
+        }
+        if (otherPointer.isBot()) {
+            return this;
+        }
+        if (this.index != otherPointer.index || this.sites != otherPointer.sites) {
+            throw new IllegalArgumentException("Incompatible pointer elements for join.");
+        }
+
+        long[][] newSets = null;
+        for (int i = 0; i < sets.length; i++) {
+            long[] thisSet = sets[i];
+            long[] otherSet = otherPointer.sets[i];
+            if (thisSet == otherSet) {
+                continue;
+            }
+            if (thisSet == null || otherSet == null) {
+                throw new IllegalArgumentException("Incompatible pointer elements for join.");
+            }
+            long[] joinedSet = null;
+            for (int w = 0; w < thisSet.length; w++) {
+                long word = thisSet[w] | otherSet[w];
+                if (word != thisSet[w]) {
+                    if (joinedSet == null) {
+                        joinedSet = thisSet.clone();
+                    }
+                    joinedSet[w] = word;
+                }
+            }
+            if (joinedSet != null) {
+                if (newSets == null) {
+                    newSets = sets.clone();
+                }
+                newSets[i] = joinedSet;
+            }
+        }
+        if (newSets == null) {
+            return this; // other is already included in this
+        }
+        return new IntegerArrayBitsetPointer(index, sites, newSets);
+    }
+
+    // isTrueBranch is False if an alternate branch is taken (like the false branch
+    // of an if statement)
+    public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
+        if (this.isBot()) {
+            return bot; // bot is always transformed to bot
+        }
+        if (stmt instanceof AssignStmt) {
+            // Handle assignment statements
+            AssignStmt assignStmt = (AssignStmt) stmt;
+            int left = slot(assignStmt.getLeftOp());
+
+            if (left >= 0) {
+                int right = slot(assignStmt.getRightOp());
+                if (right >= 0) {
+                    // x = y
+                    return with(left, sets[right]);
+                }
+                if (assignStmt.getRightOp() instanceof NullConstant) {
+                    // x = null
+                    return with(left, singleton(AllocationIndex.NULL));
+                }
+                int site = sites.indexOf(assignStmt);
+                if (site > 0) {
+                    // x = new int[...]
+                    return with(left, singleton(site));
+                }
+            }
+        } else if (stmt instanceof IfStmt) {
+            IfStmt ifStmt = (IfStmt) stmt;
+            ConditionExpr condition = (ConditionExpr) ifStmt.getCondition();
+            int left = slot(condition.getOp1());
+            int right = slot(condition.getOp2());
+            boolean leftNull = condition.getOp1() instanceof NullConstant;
+            boolean rightNull = condition.getOp2() instanceof NullConstant;
+
+            // check that both operands are either tracked locals or null
+            if ((left >= 0 || leftNull) && (right >= 0 || rightNull)) {
+                boolean equal;
+                if (condition instanceof EqExpr) {
+                    equal = isTrueBranch;
+                } else if (condition instanceof NeExpr) {
+                    equal = !isTrueBranch;
+                } else {
+                    return this;
+                }
+
+                if (leftNull && rightNull) {
+                    return equal ? this : bot; // null == null always holds
+                }
+
+                if (equal) {
+                    // x == y, T or x != y, F
+                    if (leftNull || rightNull) {
+                        // x == null: x can only be null
+                        int var = leftNull ? right : left;
+                        return containsNull(sets[var]) ? with(var, singleton(AllocationIndex.NULL)) : bot;
+                    }
+
+                    // both operands are locals: they point to their common sites
+                    long[] commonSet = sets[left].clone();
+                    for (int w = 0; w < commonSet.length; w++) {
+                        commonSet[w] &= sets[right][w];
+                    }
+                    if (isEmpty(commonSet)) {
+                        return bot;
+                    }
+                    return with(left, commonSet, right, commonSet);
+                }
+
+                // x == y, F or x != y, T
+                if (leftNull || rightNull) {
+                    // x != null: x cannot be null
+                    int var = leftNull ? right : left;
+                    if (!containsNull(sets[var])) {
+                        return this;
+                    }
+                    if (isNullOnly(sets[var])) {
+                        return bot; // var can only be null
+                    }
+                    return with(var, withoutNull(sets[var]));
+                }
+
+                // both operands are locals
+                boolean leftNullOnly = isNullOnly(sets[left]);
+                boolean rightNullOnly = isNullOnly(sets[right]);
+                if (leftNullOnly && rightNullOnly) {
+                    return bot;
+                }
+                if (leftNullOnly) {
+                    return containsNull(sets[right]) ? with(right, withoutNull(sets[right])) : this;
+                }
+                if (rightNullOnly) {
+                    return containsNull(sets[left]) ? with(left, withoutNull(sets[left])) : this;
+                }
+                return this; // imprecise, as in IntegerArrayPointer
+            }
+        }
+
+        return this; // unhandled statements
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt) {
+        return tf_assignment(stmt, true);
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof IntegerArrayBitsetPointer) {
+            IntegerArrayBitsetPointer other = (IntegerArrayBitsetPointer) o;
+            if (this.isBot() || other.isBot()) {
+                return this.isBot() && other.isBot();
+            }
+            if (this.index != other.index || this.sites != other.sites) {
+                return false;
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i] != other.sets[i] && !Arrays.equals(sets[i], other.sets[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public int hashCode() {
+        return isBot() ? 0 : Arrays.deepHashCode(sets);
+    }
+
+    public String toString() {
+        if (isBot()) {
+            return "bot";
+        }
+        Map<Local, Set<Unit>> pointerMap = new LinkedHashMap<>();
+        for (Local local : getLocals()) {
+            pointerMap.put(local, getPointsTo(local));
+        }
+        return pointerMap.toString();
+    }
+}
@@ -12,7 +12,7 @@ import soot.jimple.EqExpr;
 import soot.jimple.NeExpr;
 import soot.jimple.NullConstant;
 
-public class IntegerArrayPointer implements LatticeElement{
+public class IntegerArrayPointer implements PointerLattice {
     public Map<Local, Set<Unit>> pointerMap;
     public final Set<Unit> allocUnits;
     public static final IntegerArrayPointer bot = new IntegerArrayPointer();
@@ -44,6 +44,13 @@ public class IntegerArrayPointer implements LatticeElement{
         this.allocUnits = givenAllocUnits;
     }
 
+    // Constructor for maps derived from a valid element (only the sets of changed locals are new,
+    // and those are built from allocUnits and null), so nothing has to be checked again
+    private IntegerArrayPointer(Map<Local, Set<Unit>> givenPointerMap, Set<Unit> givenAllocUnits, boolean valid) {
+        this.pointerMap = givenPointerMap;
+        this.allocUnits = givenAllocUnits;
+    }
+
     // Private constructor for bot
     private IntegerArrayPointer() {
         this.pointerMap = null;
@@ -55,6 +62,14 @@ public class IntegerArrayPointer implements LatticeElement{
         return this.pointerMap == null;
     }
 
+    public Collection<Local> getLocals() {
+        return pointerMap.keySet();
+    }
+
+    public Set<Unit> getPointsTo(Local local) {
+        return pointerMap.get(local);
+    }
+
     // Join operation with another LatticeElement
     public LatticeElement join(LatticeElement other) {
         if (!(other instanceof IntegerArrayPointer)) {
@@ -76,6 +91,23 @@ public class IntegerArrayPointer implements LatticeElement{
             throw new IllegalArgumentException("Incompatible pointer elements for join.");
         }
 
+        if (this.pointerMap instanceof PersistentLocalMap && otherIntgerArrayPointer.pointerMap instanceof PersistentLocalMap) {
+            // only the subtrees that differ are visited
+            PersistentLocalMap<Set<Unit>> newPointerMap = ((PersistentLocalMap<Set<Unit>>) this.pointerMap)
+                    .merge((PersistentLocalMap<Set<Unit>>) otherIntgerArrayPointer.pointerMap, (thisUnits, otherUnits) -> {
+                        if (thisUnits.containsAll(otherUnits)) {
+                            return thisUnits;
+                        }
+                        Set<Unit> newUnits = new HashSet<>(thisUnits);
+                        newUnits.addAll(otherUnits);
+                        return newUnits;
+                    });
+            if (newPointerMap == this.pointerMap) {
+                return this;
+            }
+            return new IntegerArrayPointer(newPointerMap, this.allocUnits, true);
+        }
+
         Map<Local, Set<Unit>> newPointerMap = new HashMap<>();
         for (Local local : this.pointerMap.keySet()) {
             Set<Unit> thisUnits = this.pointerMap.get(local);
@@ -89,6 +121,36 @@ public class IntegerArrayPointer implements LatticeElement{
         return new IntegerArrayPointer(newPointerMap, this.allocUnits);
     }
 
+    // Only the live integer arrays are kept (see LatticeElement.retain)
+    public LatticeElement retain(LocalIndex localIndex, BitSet liveLocals, LatticeElement initialElement) {
+        if (isBot()) {
+            return this;
+        }
+        Map<Local, Set<Unit>> initialPointerMap = ((IntegerArrayPointer) initialElement).pointerMap;
+        Map<Local, Set<Unit>> newPointerMap = null;
+        for (Local local : pointerMap.keySet()) {
+            if (!liveLocals.get(localIndex.indexOf(local))) {
+                if (newPointerMap == null) {
+                    newPointerMap = PersistentLocalMap.copyOf(pointerMap);
+                }
+                newPointerMap.remove(local);
+            }
+        }
+        for (int i = liveLocals.nextSetBit(0); i >= 0; i = liveLocals.nextSetBit(i + 1)) {
+            Local local = localIndex.get(i);
+            if (!pointerMap.containsKey(local) && initialPointerMap.containsKey(local)) {
+                if (newPointerMap == null) {
+                    newPointerMap = PersistentLocalMap.copyOf(pointerMap);
+                }
+                newPointerMap.put(local, initialPointerMap.get(local));
+            }
+        }
+        if (newPointerMap == null) {
+            return this;
+        }
+        return new IntegerArrayPointer(newPointerMap, allocUnits, true);
+    }
+
     // isTrueBranch is False if an alternate branch is taken (like the false branch
     // of an if statement)
     public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
@@ -108,28 +170,28 @@ public class IntegerArrayPointer implements LatticeElement{
                     Local rightVar = (Local) assignStmt.getRightOp();
                     
                     // x = y
-                    Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                    Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                     newPointerMap.put(leftVar, new HashSet<>(pointerMap.get(rightVar)));
-                    return new IntegerArrayPointer(newPointerMap, allocUnits);
+                    return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                 }
 
                 // check if the right side of the assignment is 'null'
                 if (assignStmt.getRightOp() instanceof NullConstant) {
                     // x = null
-                    Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                    Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                     newPointerMap.put(leftVar, new HashSet<>());
                     newPointerMap.get(leftVar).add(null);
-                    return new IntegerArrayPointer(newPointerMap, allocUnits);
+                    return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                 }
                 
                 // check if the assignment is an allocation in allocUnits
                 if (allocUnits.contains(assignStmt)) {
                     // x = new int[...]
-                    Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                    Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                     Set<Unit> newUnits = new HashSet<>();
                     newUnits.add(assignStmt);
                     newPointerMap.put(leftVar, newUnits);
-                    return new IntegerArrayPointer(newPointerMap, allocUnits);
+                    return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                 }
             }
         } else if (stmt instanceof IfStmt) {
@@ -149,10 +211,10 @@ public class IntegerArrayPointer implements LatticeElement{
 
                         // check if rightVar can be null
                         if (pointerMap.get(rightVar).contains(null)) {
-                            Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                            Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                             newPointerMap.put(rightVar, new HashSet<>());
                             newPointerMap.get(rightVar).add(null);
-                            return new IntegerArrayPointer(newPointerMap, allocUnits);
+                            return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                         } else {
                             return getBot();
                         }
@@ -164,10 +226,10 @@ public class IntegerArrayPointer implements LatticeElement{
 
                         // check if leftVar can be null
                         if (pointerMap.get(leftVar).contains(null)) {
-                            Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                            Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                             newPointerMap.put(leftVar, new HashSet<>());
                             newPointerMap.get(leftVar).add(null);
-                            return new IntegerArrayPointer(newPointerMap, allocUnits);
+                            return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                         } else {
                             return getBot();
                         }
@@ -187,10 +249,10 @@ public class IntegerArrayPointer implements LatticeElement{
                     if (commonUnits.isEmpty()) {
                         return getBot();
                     } else {
-                        Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                        Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                         newPointerMap.put(leftVar, new HashSet<>(commonUnits));
                         newPointerMap.put(rightVar, new HashSet<>(commonUnits));
-                        return new IntegerArrayPointer(newPointerMap, allocUnits);
+                        return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                     }
                 }
                 if ((condition instanceof EqExpr && !isTrueBranch) || (condition instanceof NeExpr && isTrueBranch)) {
@@ -202,12 +264,12 @@ public class IntegerArrayPointer implements LatticeElement{
 
                         // check if rightVar can be null
                         if (pointerMap.get(rightVar).contains(null) && pointerMap.get(rightVar).size() > 1) {
-                            Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                            Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                             newPointerMap.put(rightVar, new HashSet<>(pointerMap.get(rightVar)));
                             newPointerMap.get(rightVar).remove(null);
-                            return new IntegerArrayPointer(newPointerMap, allocUnits);
+                            return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                         } else if (!pointerMap.get(rightVar).contains(null)) {
-                            return this.clone();
+                            return this;
                         } else {
                             return getBot(); // rightVar can only be null
                         }
@@ -219,12 +281,12 @@ public class IntegerArrayPointer implements LatticeElement{
 
                         // check if leftVar can be null
                         if (pointerMap.get(leftVar).contains(null) && pointerMap.get(leftVar).size() > 1) {
-                            Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                            Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
                             newPointerMap.put(leftVar, new HashSet<>(pointerMap.get(leftVar)));
                             newPointerMap.get(leftVar).remove(null);
-                            return new IntegerArrayPointer(newPointerMap, allocUnits);
+                            return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                         } else if (!pointerMap.get(leftVar).contains(null)) {
-                            return this.clone();
+                            return this;
                         } else {
                             return getBot(); // leftVar can only be null
                         }
@@ -237,18 +299,21 @@ public class IntegerArrayPointer implements LatticeElement{
                     Set<Unit> leftUnits = pointerMap.get(leftVar);
                     Set<Unit> rightUnits = pointerMap.get(rightVar);
 
-                    Map<Local, Set<Unit>> newPointerMap = new HashMap<>(pointerMap);
+                    Map<Local, Set<Unit>> newPointerMap = PersistentLocalMap.copyOf(pointerMap);
 
                     // if leftVar is {null} and rightVar - {null} is not empty
+                    // (sets are shared between states, so they are copied instead of modified)
                     if ((leftUnits.contains(null) && leftUnits.size() == 1) && (!rightUnits.contains(null) || rightUnits.size() > 1)) {
+                        newPointerMap.put(rightVar, new HashSet<>(rightUnits));
                         newPointerMap.get(rightVar).remove(null);
-                        return new IntegerArrayPointer(newPointerMap, allocUnits);
+                        return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                     }
 
                     // if rightVar is {null} and leftVar - {null} is not empty
                     if ((rightUnits.contains(null) && rightUnits.size() == 1) && (!leftUnits.contains(null) || leftUnits.size() > 1)) {
+                        newPointerMap.put(leftVar, new HashSet<>(leftUnits));
                         newPointerMap.get(leftVar).remove(null);
-                        return new IntegerArrayPointer(newPointerMap, allocUnits);
+                        return new IntegerArrayPointer(newPointerMap, allocUnits, true);
                     }
 
                     // if leftVar is {null} and rightVar is {null}
@@ -256,12 +321,12 @@ public class IntegerArrayPointer implements LatticeElement{
                         return this.getBot();
                     }
 
-                    return this.clone(); // imprecise... but this is what we discussed in class.
+                    return this; // imprecise... but this is what we discussed in class.
                 }
             }
         }
 
-        return this.clone(); // unhandled statements
+        return this; // unhandled statements (the state is shared, elements are never modified)
     }
 
     public LatticeElement tf_assignment(Stmt stmt) {
@@ -290,6 +355,6 @@ public class IntegerArrayPointer implements LatticeElement{
         if (isBot()) {
             return new IntegerArrayPointer();
         }
-        return new IntegerArrayPointer(new HashMap<>(pointerMap), new HashSet<>(allocUnits));
+        return new IntegerArrayPointer(PersistentLocalMap.copyOf(pointerMap), new HashSet<>(allocUnits), true);
     }
 }
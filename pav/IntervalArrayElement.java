@@ -0,0 +1,509 @@
+package pav;
+
+import java.util.*;
+
+import soot.jimple.Stmt;
+import soot.Local;
+import soot.jimple.IfStmt;
+import soot.jimple.AssignStmt;
+import soot.jimple.IdentityStmt;
+import soot.Value;
+import soot.jimple.IntConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.ConditionExpr;
+import soot.jimple.BinopExpr;
+import soot.jimple.NegExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.LeExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.Constant;
+import soot.jimple.InvokeExpr;
+
+// Same abstraction as IntervalElement, but every local has a dense index (shared through a
+// LocalIndex) and the bounds are kept in primitive arrays. Elements are never modified after
+// construction, so unchanged states are shared instead of copied.
+public class IntervalArrayElement implements IntervalLattice {
+    public static final IntervalArrayElement bot = new IntervalArrayElement();
+
+    private final LocalIndex index;
+    // which locals have an interval (identity statements may add locals)
+    private final boolean[] tracked;
+    private final float[] lower;
+    private final float[] upper;
+    public final AnalysisContext context;
+
+    public LatticeElement getBot() {
+        return bot;
+    }
+
+    public IntervalArrayElement(Map<Local, Pair<Float, Float>> givenIntervalMap, LocalIndex index,
+            AnalysisContext context) {
+        this.index = index;
+        this.context = context;
+        boolean[] newTracked = new boolean[index.size()];
+        float[] newLower = new float[index.size()];
+        float[] newUpper = new float[index.size()];
+        // sanity check
+        boolean empty = context.lowerBound > context.upperBound;
+        for (Local local : givenIntervalMap.keySet()) {
+            int i = index.indexOf(local);
+            if (i < 0) {
+                throw new IllegalArgumentException("Local not indexed: " + local);
+            }
+            newTracked[i] = true;
+            newLower[i] = givenIntervalMap.get(local).first;
+            newUpper[i] = givenIntervalMap.get(local).second;
+            if (!normalize(newLower, newUpper, i, context)) {
+                empty = true;
+            }
+        }
+        this.tracked = empty ? null : newTracked;
+        this.lower = empty ? null : newLower;
+        this.upper = empty ? null : newUpper;
+    }
+
+    // Constructor for already normalized arrays
+    private IntervalArrayElement(LocalIndex index, boolean[] tracked, float[] lower, float[] upper,
+            AnalysisContext context) {
+        this.index = index;
+        this.tracked = tracked;
+        this.lower = lower;
+        this.upper = upper;
+        this.context = context;
+    }
+
+    // Private constructor for bot
+    private IntervalArrayElement() {
+        this(null, null, null, null, null);
+    }
+
+    // Contract the interval at slot i to integers and apply lowerBound and upperBound, exactly as
+    // the IntervalElement constructor does; returns false if the interval (or the element) is empty
+    private static boolean normalize(float[] lower, float[] upper, int i, AnalysisContext context) {
+        if (lower[i] > upper[i]) {
+            return false;
+        }
+        float newLower = lower[i] == Float.NEGATIVE_INFINITY ? Float.NEGATIVE_INFINITY
+                : (float) Math.ceil(lower[i]);
+        float newUpper = upper[i] == Float.POSITIVE_INFINITY ? Float.POSITIVE_INFINITY
+                : (float) Math.floor(upper[i]);
+        if (newLower > newUpper) {
+            return false;
+        }
+        if (context.lowerBound > context.upperBound) {
+            return false;
+        }
+        lower[i] = newLower >= context.lowerBound ? newLower : Float.NEGATIVE_INFINITY;
+        upper[i] = newUpper <= context.upperBound ? newUpper : Float.POSITIVE_INFINITY;
+        return true;
+    }
+
+    // check if the IntervalArrayElement is bot
+    public boolean isBot() {
+        return this.lower == null;
+    }
+
+    public Collection<Local> getLocals() {
+        List<Local> locals = new ArrayList<>();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i]) {
+                locals.add(index.get(i));
+            }
+        }
+        return locals;
+    }
+
+    public Pair<Float, Float> getInterval(Local local) {
+        int i = slot(local);
+        return i < 0 ? null : new Pair<>(lower[i], upper[i]);
+    }
+
+    public long[] getBounds(Local local) {
+        return IntervalElement.bounds(getInterval(local));
+    }
+
+    public LatticeElement restrict(Local local, float lower, float upper) {
+        int i = isBot() ? -1 : slot(local);
+        if (i < 0 || (this.lower[i] >= lower && this.upper[i] <= upper)) {
+            return this;
+        }
+        return update(i, Math.max(this.lower[i], lower), Math.min(this.upper[i], upper), -1, 0, 0);
+    }
+
+    // Slot of a tracked local, or -1
+    private int slot(Value value) {
+        int i = index.indexOf(value);
+        return i >= 0 && tracked[i] ? i : -1;
+    }
+
+    // Join operation with another LatticeElement
+    public LatticeElement join(LatticeElement other) {
+        if (!(other instanceof IntervalArrayElement)) {
+            throw new IllegalArgumentException("Incompatible types for join");
+        }
+        IntervalArrayElement otherElement = (IntervalArrayElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        float[] newLower = null;
+        float[] newUpper = null;
+        for (int i = 0; i < tracked.length; i++) {
+            if (!tracked[i] || !otherElement.tracked[i]) {
+                continue;
+            }
+            float joinedLower = Math.min(lower[i], otherElement.lower[i]);
+            float joinedUpper = Math.max(upper[i], otherElement.upper[i]);
+            if (Float.compare(joinedLower, lower[i]) != 0 || Float.compare(joinedUpper, upper[i]) != 0) {
+                if (newLower == null) {
+                    newLower = lower.clone();
+                    newUpper = upper.clone();
+                }
+                newLower[i] = joinedLower;
+                newUpper[i] = joinedUpper;
+            }
+        }
+        if (newLower == null) {
+            return this; // other is already included in this
+        }
+        return new IntervalArrayElement(index, tracked, newLower, newUpper, context);
+    }
+
+    // Widening: bounds that are still moving jump to -inf or +inf
+    public LatticeElement widen(LatticeElement other) {
+        if (!(other instanceof IntervalArrayElement)) {
+            throw new IllegalArgumentException("Incompatible types for widening");
+        }
+        IntervalArrayElement otherElement = (IntervalArrayElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        float[] newLower = lower.clone();
+        float[] newUpper = upper.clone();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i] && otherElement.tracked[i]) {
+                if (otherElement.lower[i] < lower[i]) {
+                    newLower[i] = Float.NEGATIVE_INFINITY;
+                }
+                if (otherElement.upper[i] > upper[i]) {
+                    newUpper[i] = Float.POSITIVE_INFINITY;
+                }
+            }
+        }
+        return new IntervalArrayElement(index, tracked, newLower, newUpper, context);
+    }
+
+    // Narrowing: only infinite bounds are refined
+    public LatticeElement narrow(LatticeElement other) {
+        if (!(other instanceof IntervalArrayElement)) {
+            throw new IllegalArgumentException("Incompatible types for narrowing");
+        }
+        IntervalArrayElement otherElement = (IntervalArrayElement) other;
+        if (this.isBot() || otherElement.isBot()) {
+            return otherElement;
+        }
+        float[] newLower = lower.clone();
+        float[] newUpper = upper.clone();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i] && otherElement.tracked[i]) {
+                if (lower[i] == Float.NEGATIVE_INFINITY) {
+                    newLower[i] = otherElement.lower[i];
+                }
+                if (upper[i] == Float.POSITIVE_INFINITY) {
+                    newUpper[i] = otherElement.upper[i];
+                }
+            }
+        }
+        return new IntervalArrayElement(index, tracked, newLower, newUpper, context);
+    }
+
+    // Copy of this element with new bounds for up to two slots (-1 for none); returns bot if an
+    // interval becomes empty
+    private LatticeElement update(int slot1, float lower1, float upper1, int slot2, float lower2, float upper2) {
+        float[] newLower = lower.clone();
+        float[] newUpper = upper.clone();
+        if (slot1 >= 0) {
+            newLower[slot1] = lower1;
+            newUpper[slot1] = upper1;
+        }
+        if (slot2 >= 0) {
+            newLower[slot2] = lower2;
+            newUpper[slot2] = upper2;
+        }
+        if ((slot1 >= 0 && !normalize(newLower, newUpper, slot1, context))
+                || (slot2 >= 0 && !normalize(newLower, newUpper, slot2, context))) {
+            return getBot();
+        }
+        return new IntervalArrayElement(index, tracked, newLower, newUpper, context);
+    }
+
+    // isTrueBranch is False if an alternate branch is taken (like the false branch
+    // of an if statement)
+    public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
+        if (this.isBot()) {
+            return bot; // bot is always transformed to bot
+        }
+        if (stmt instanceof AssignStmt) {
+            // Handle assignment statements
+            AssignStmt assignStmt = (AssignStmt) stmt;
+
+            if (!(assignStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
+            int left = slot(assignStmt.getLeftOp());
+            Value rightOp = assignStmt.getRightOp();
+
+            if (left >= 0) {
+                // right-hand sides that are not handled keep the old interval
+                float newLower = lower[left];
+                float newUpper = upper[left];
+
+                if (rightOp instanceof IntConstant || rightOp instanceof FloatConstant) {
+                    // var = constant
+                    float value = IntervalElement.getValueFromConstant(rightOp);
+                    newLower = value;
+                    newUpper = value;
+                } else if (rightOp instanceof Local) {
+                    // var = var2
+                    int right = slot(rightOp);
+                    newLower = right >= 0 ? lower[right] : Float.NEGATIVE_INFINITY;
+                    newUpper = right >= 0 ? upper[right] : Float.POSITIVE_INFINITY;
+                } else if (rightOp instanceof NegExpr) {
+                    // var = -var2
+                    NegExpr negExpr = (NegExpr) rightOp;
+                    if (negExpr.getOp() instanceof Local) {
+                        int var = slot(negExpr.getOp());
+                        newLower = var >= 0 ? -upper[var] : Float.NEGATIVE_INFINITY;
+                        newUpper = var >= 0 ? -lower[var] : Float.POSITIVE_INFINITY;
+                    }
+                } else if (rightOp instanceof BinopExpr) {
+                    BinopExpr binopExpr = (BinopExpr) rightOp;
+                    String opSymbol = binopExpr.getSymbol().trim();
+                    Value op1 = binopExpr.getOp1();
+                    Value op2 = binopExpr.getOp2();
+
+                    // operand intervals (null if the operand is an untracked local)
+                    Pair<Float, Float> interval1 = null;
+                    Pair<Float, Float> interval2 = null;
+                    boolean handled = true;
+                    if (op1 instanceof Local && op2 instanceof Local) {
+                        // var = var2 op var3
+                        interval1 = getInterval((Local) op1);
+                        interval2 = interval1 == null ? null : getInterval((Local) op2);
+                    } else if (op1 instanceof Local && op2 instanceof Constant) {
+                        // var = var2 op constant
+                        float constant = IntervalElement.getValueFromConstant(op2);
+                        interval1 = getInterval((Local) op1);
+                        interval2 = new Pair<>(constant, constant);
+                    } else if (op1 instanceof Constant && op2 instanceof Local) {
+                        // var = constant op var2
+                        float constant = IntervalElement.getValueFromConstant(op1);
+                        interval1 = new Pair<>(constant, constant);
+                        interval2 = getInterval((Local) op2);
+                    } else {
+                        handled = false;
+                    }
+
+                    if (handled) {
+                        newLower = Float.NEGATIVE_INFINITY;
+                        newUpper = Float.POSITIVE_INFINITY;
+                        if (interval1 != null && interval2 != null) {
+                            try {
+                                Pair<Float, Float> newInterval = IntervalElement.getIntervalFromBinOp(opSymbol,
+                                        interval1, interval2);
+                                newLower = newInterval.first;
+                                newUpper = newInterval.second;
+                            } catch (ArithmeticException e) {
+                                return getBot();
+                            } catch (IllegalArgumentException e) {
+                                // unhandled operator
+                            }
+                        }
+                    }
+                } else if (rightOp instanceof InvokeExpr) {
+                    // var = call, whose result is known if the callees have a summary
+                    MethodSummary summary = context.callSummary(assignStmt);
+                    if (summary != null && summary.returnInterval != null) {
+                        newLower = summary.returnInterval.first;
+                        newUpper = summary.returnInterval.second;
+                    }
+                }
+                // do a sanity check and see if newLower > newUpper
+                if (newLower > newUpper) {
+                    return getBot();
+                }
+                return update(left, newLower, newUpper, -1, 0, 0);
+            }
+        } else if (stmt instanceof IfStmt) {
+            IfStmt ifStmt = (IfStmt) stmt;
+            ConditionExpr condition = (ConditionExpr) ifStmt.getCondition();
+
+            Value op1 = condition.getOp1();
+            Value op2 = condition.getOp2();
+            String opSymbol = null;
+
+            if (condition instanceof LtExpr) {
+                opSymbol = isTrueBranch ? "<" : ">=";
+            } else if (condition instanceof GtExpr) {
+                opSymbol = isTrueBranch ? ">" : "<=";
+            } else if (condition instanceof LeExpr) {
+                opSymbol = isTrueBranch ? "<=" : ">";
+            } else if (condition instanceof GeExpr) {
+                opSymbol = isTrueBranch ? ">=" : "<";
+            } else if (condition instanceof EqExpr) {
+                opSymbol = isTrueBranch ? "==" : "!=";
+            } else if (condition instanceof NeExpr) {
+                opSymbol = isTrueBranch ? "!=" : "==";
+            }
+
+            if (opSymbol != null) {
+                if (op1 instanceof Local && op2 instanceof Constant) {
+                    float constant = IntervalElement.getValueFromConstant(op2);
+                    int var = slot(op1);
+                    if (var >= 0) {
+                        Pair<Float, Float> interval2;
+                        if (opSymbol.equals("<") || opSymbol.equals("<=")) {
+                            interval2 = new Pair<>(Float.NEGATIVE_INFINITY, constant);
+                        } else if (opSymbol.equals(">") || opSymbol.equals(">=")) {
+                            interval2 = new Pair<>(constant, Float.POSITIVE_INFINITY);
+                        } else {
+                            interval2 = new Pair<>(constant, constant);
+                        }
+                        try {
+                            Pair<Pair<Float, Float>, Pair<Float, Float>> newIntervals = IntervalElement
+                                    .getIntervalsAfterComparison(opSymbol, new Pair<>(lower[var], upper[var]), interval2);
+                            return refine(var, newIntervals.first);
+                        } catch (ArithmeticException e) {
+                            return getBot();
+                        } catch (IllegalArgumentException e) {
+                            return this; // unhandled operator
+                        }
+                    }
+                } else if (op1 instanceof Constant && op2 instanceof Local) {
+                    float constant = IntervalElement.getValueFromConstant(op1);
+                    int var = slot(op2);
+                    if (var >= 0) {
+                        Pair<Float, Float> interval1;
+                        if (opSymbol.equals("<") || opSymbol.equals("<=")) {
+                            interval1 = new Pair<>(constant, Float.POSITIVE_INFINITY);
+                        } else if (opSymbol.equals(">") || opSymbol.equals(">=")) {
+                            interval1 = new Pair<>(Float.NEGATIVE_INFINITY, constant);
+                        } else {
+                            interval1 = new Pair<>(constant, constant);
+                        }
+                        try {
+                            Pair<Pair<Float, Float>, Pair<Float, Float>> newIntervals = IntervalElement
+                                    .getIntervalsAfterComparison(opSymbol, interval1, new Pair<>(lower[var], upper[var]));
+                            return refine(var, newIntervals.second);
+                        } catch (ArithmeticException e) {
+                            return getBot();
+                        } catch (IllegalArgumentException e) {
+                            return this; // unhandled operator
+                        }
+                    }
+                } else if (op1 instanceof Local && op2 instanceof Local) {
+                    int var1 = slot(op1);
+                    int var2 = slot(op2);
+                    if (var1 >= 0 && var2 >= 0) {
+                        try {
+                            Pair<Pair<Float, Float>, Pair<Float, Float>> newIntervals = IntervalElement
+                                    .getIntervalsAfterComparison(opSymbol, new Pair<>(lower[var1], upper[var1]),
+                                            new Pair<>(lower[var2], upper[var2]));
+                            if (var1 == var2) {
+                                // the same local on both sides: the second interval wins, as in IntervalElement
+                                return refine(var2, newIntervals.second);
+                            }
+                            Pair<Float, Float> interval1 = newIntervals.first;
+                            Pair<Float, Float> interval2 = newIntervals.second;
+                            // sanity check
+                            if (interval1.first > interval1.second || interval2.first > interval2.second) {
+                                return getBot();
+                            }
+                            return update(var1, interval1.first, interval1.second, var2, interval2.first,
+                                    interval2.second);
+                        } catch (ArithmeticException e) {
+                            return getBot();
+                        } catch (IllegalArgumentException e) {
+                            return this; // unhandled operator
+                        }
+                    }
+                }
+            }
+            return this;
+        } else if (stmt instanceof IdentityStmt) {
+            IdentityStmt identityStmt = (IdentityStmt) stmt;
+            if (!(identityStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
+            int left = index.indexOf(identityStmt.getLeftOp());
+            if (left < 0) {
+                return this;
+            }
+
+            // always send leftVar to topInterval (this starts tracking it if it was not tracked yet)
+            boolean[] newTracked = tracked[left] ? tracked : tracked.clone();
+            newTracked[left] = true;
+            float[] newLower = lower.clone();
+            float[] newUpper = upper.clone();
+            newLower[left] = Float.NEGATIVE_INFINITY;
+            newUpper[left] = Float.POSITIVE_INFINITY;
+            return new IntervalArrayElement(index, newTracked, newLower, newUpper, context);
+        }
+
+        return this; // unhandled statements
+    }
+
+    // Result of a comparison that refines one slot
+    private LatticeElement refine(int var, Pair<Float, Float> interval) {
+        // sanity check
+        if (interval.first > interval.second) {
+            return getBot();
+        }
+        return update(var, interval.first, interval.second, -1, 0, 0);
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt) {
+        return tf_assignment(stmt, true);
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof IntervalArrayElement) {
+            IntervalArrayElement other = (IntervalArrayElement) o;
+            if (this.isBot() && other.isBot()) {
+                return true;
+            }
+            if (this.isBot() || other.isBot()) {
+                return false;
+            }
+            if (this == other) {
+                return true;
+            }
+            if (!Arrays.equals(this.tracked, other.tracked)) {
+                return false;
+            }
+            for (int i = 0; i < tracked.length; i++) {
+                if (tracked[i] && (Float.compare(lower[i], other.lower[i]) != 0
+                        || Float.compare(upper[i], other.upper[i]) != 0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        if (isBot()) {
+            return "bot";
+        }
+        Map<Local, Pair<Float, Float>> intervalMap = new LinkedHashMap<>();
+        for (Local local : getLocals()) {
+            intervalMap.put(local, getInterval(local));
+        }
+        return intervalMap.toString();
+    }
+}
@@ -20,23 +20,34 @@ import soot.jimple.LeExpr;
 import soot.jimple.EqExpr;
 import soot.jimple.NeExpr;
 import soot.jimple.Constant;
+import soot.jimple.InvokeExpr;
 
-public class IntervalElement implements LatticeElement{
+public class IntervalElement implements IntervalLattice{
     public Map<Local, Pair<Float, Float>> intervalMap;
     public static final IntervalElement bot = new IntervalElement();
     public static final Pair<Float, Float> topPair = new Pair<>(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
 
-    // lowerBound and upperBound for the intervals
-    public static float lowerBound = Float.NEGATIVE_INFINITY;
-    public static float upperBound = Float.POSITIVE_INFINITY;
+    // per-run configuration (holds lowerBound and upperBound for the intervals)
+    public final AnalysisContext context;
 
     public LatticeElement getBot() {
         return bot.clone();
     }
 
-    public IntervalElement(Map<Local, Pair<Float, Float>> givenIntervalMap) {
+    public IntervalElement(Map<Local, Pair<Float, Float>> givenIntervalMap, AnalysisContext context) {
+        this(givenIntervalMap, context, givenIntervalMap.keySet());
+    }
+
+    // Only the intervals of changedLocals are checked and normalized, the others must already be.
+    // This keeps single-variable updates cheap when the map is a PersistentLocalMap.
+    private IntervalElement(Map<Local, Pair<Float, Float>> givenIntervalMap, AnalysisContext context,
+            Collection<Local> changedLocals) {
+        this.context = context;
+        float lowerBound = context.lowerBound;
+        float upperBound = context.upperBound;
+
         // check that all intervals are valid
-        for (Local local : givenIntervalMap.keySet()) {
+        for (Local local : changedLocals) {
             Pair<Float, Float> interval = givenIntervalMap.get(local);
             if (interval.first > interval.second) {
                 this.intervalMap = null; // make this element bot
@@ -48,7 +59,7 @@ public class IntervalElement implements LatticeElement{
         // contract intervals to integers
         // round-up lower limits and round-down upper limits (unless they are -inf or
         // +inf)
-        for (Local local : intervalMap.keySet()) {
+        for (Local local : changedLocals) {
             Pair<Float, Float> interval = intervalMap.get(local);
             float newLower = interval.first == Float.NEGATIVE_INFINITY ? Float.NEGATIVE_INFINITY
                     : (float) Math.ceil(interval.first);
@@ -58,7 +69,9 @@ public class IntervalElement implements LatticeElement{
                 this.intervalMap = null; // make this element bot
                 return;
             }
-            intervalMap.put(local, new Pair<>(newLower, newUpper));
+            if (!sameBounds(interval, newLower, newUpper)) {
+                intervalMap.put(local, new Pair<>(newLower, newUpper));
+            }
         }
 
         // sanity check
@@ -70,17 +83,25 @@ public class IntervalElement implements LatticeElement{
         // check all intervals and replace lower limit by -inf if it is less than
         // lowerBound
         // and upper limit by +inf if it is greater than upperBound
-        for (Local local : intervalMap.keySet()) {
+        for (Local local : changedLocals) {
             Pair<Float, Float> interval = intervalMap.get(local);
             float newLower = interval.first >= lowerBound ? interval.first : Float.NEGATIVE_INFINITY;
             float newUpper = interval.second <= upperBound ? interval.second : Float.POSITIVE_INFINITY;
-            intervalMap.put(local, new Pair<>(newLower, newUpper));
+            if (!sameBounds(interval, newLower, newUpper)) {
+                intervalMap.put(local, new Pair<>(newLower, newUpper));
+            }
         }
     }
 
+    // Check whether an interval has exactly the given bounds (as Float.equals would)
+    private static boolean sameBounds(Pair<Float, Float> interval, float lower, float upper) {
+        return Float.compare(interval.first, lower) == 0 && Float.compare(interval.second, upper) == 0;
+    }
+
     // Private constructor for bot
     private IntervalElement() {
         this.intervalMap = null;
+        this.context = null;
     }
 
     // check if the IntervalElement is bot
@@ -88,6 +109,73 @@ public class IntervalElement implements LatticeElement{
         return this.intervalMap == null;
     }
 
+    public Collection<Local> getLocals() {
+        return intervalMap.keySet();
+    }
+
+    public Pair<Float, Float> getInterval(Local local) {
+        return intervalMap.get(local);
+    }
+
+    public long[] getBounds(Local local) {
+        return bounds(intervalMap.get(local));
+    }
+
+    // Bounds of a float interval as longs (see IntervalLattice.getBounds), rounded as they are printed
+    static long[] bounds(Pair<Float, Float> interval) {
+        if (interval == null) {
+            return null;
+        }
+        return new long[] { interval.first == Float.NEGATIVE_INFINITY ? Long.MIN_VALUE : Math.round(interval.first),
+                interval.second == Float.POSITIVE_INFINITY ? Long.MAX_VALUE : Math.round(interval.second) };
+    }
+
+    public LatticeElement restrict(Local local, float lower, float upper) {
+        Pair<Float, Float> interval = isBot() ? null : intervalMap.get(local);
+        if (interval == null) {
+            return this;
+        }
+        float newLower = Math.max(interval.first, lower);
+        float newUpper = Math.min(interval.second, upper);
+        if (sameBounds(interval, newLower, newUpper)) {
+            return this;
+        }
+        Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(intervalMap);
+        newIntervalMap.put(local, new Pair<>(newLower, newUpper));
+        return new IntervalElement(newIntervalMap, context, Collections.singletonList(local));
+    }
+
+    // Only the live locals are kept (see LatticeElement.retain); locals that are not integers, such
+    // as the ones set by identity statements, are left alone
+    public LatticeElement retain(LocalIndex localIndex, BitSet liveLocals, LatticeElement initialElement) {
+        if (isBot()) {
+            return this;
+        }
+        Map<Local, Pair<Float, Float>> initialIntervalMap = ((IntervalElement) initialElement).intervalMap;
+        Map<Local, Pair<Float, Float>> newIntervalMap = null;
+        for (Local local : intervalMap.keySet()) {
+            if (initialIntervalMap.containsKey(local) && !liveLocals.get(localIndex.indexOf(local))) {
+                if (newIntervalMap == null) {
+                    newIntervalMap = PersistentLocalMap.copyOf(intervalMap);
+                }
+                newIntervalMap.remove(local);
+            }
+        }
+        for (int i = liveLocals.nextSetBit(0); i >= 0; i = liveLocals.nextSetBit(i + 1)) {
+            Local local = localIndex.get(i);
+            if (!intervalMap.containsKey(local) && initialIntervalMap.containsKey(local)) {
+                if (newIntervalMap == null) {
+                    newIntervalMap = PersistentLocalMap.copyOf(intervalMap);
+                }
+                newIntervalMap.put(local, initialIntervalMap.get(local));
+            }
+        }
+        if (newIntervalMap == null) {
+            return this;
+        }
+        return new IntervalElement(newIntervalMap, context, Collections.<Local>emptyList());
+    }
+
     // Join operation with another LatticeElement
     public LatticeElement join(LatticeElement other) {
         if (!(other instanceof IntervalElement)) {
@@ -100,18 +188,84 @@ public class IntervalElement implements LatticeElement{
         if (otherIntervalElement.equals(bot)) {
             return this;
         }
-        Map<Local, Pair<Float, Float>> newIntervalMap = new HashMap<>();
+        if (this.intervalMap instanceof PersistentLocalMap && otherIntervalElement.intervalMap instanceof PersistentLocalMap) {
+            // only the subtrees that differ are visited
+            PersistentLocalMap<Pair<Float, Float>> newIntervalMap = ((PersistentLocalMap<Pair<Float, Float>>) this.intervalMap)
+                    .merge((PersistentLocalMap<Pair<Float, Float>>) otherIntervalElement.intervalMap,
+                            (thisInterval, otherInterval) -> new Pair<>(Math.min(thisInterval.first, otherInterval.first),
+                                    Math.max(thisInterval.second, otherInterval.second)));
+            if (newIntervalMap == this.intervalMap) {
+                return this;
+            }
+            return new IntervalElement(newIntervalMap, context, Collections.<Local>emptyList());
+        }
+        Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
+        List<Local> changedLocals = new ArrayList<>();
         for (Local local : this.intervalMap.keySet()) {
             Pair<Float, Float> thisInterval = this.intervalMap.get(local);
             Pair<Float, Float> otherInterval = otherIntervalElement.intervalMap.get(local);
             float newLower = Math.min(thisInterval.first, otherInterval.first);
             float newUpper = Math.max(thisInterval.second, otherInterval.second);
-            newIntervalMap.put(local, new Pair<>(newLower, newUpper));
+            if (!sameBounds(thisInterval, newLower, newUpper)) {
+                newIntervalMap.put(local, new Pair<>(newLower, newUpper));
+                changedLocals.add(local);
+            }
+        }
+        return new IntervalElement(newIntervalMap, context, changedLocals);
+    }
+
+    // Widening: bounds that are still moving jump to -inf or +inf
+    public LatticeElement widen(LatticeElement other) {
+        if (!(other instanceof IntervalElement)) {
+            throw new IllegalArgumentException("Incompatible types for widening");
+        }
+        IntervalElement otherIntervalElement = (IntervalElement) other;
+        if (this.isBot()) {
+            return otherIntervalElement;
+        }
+        if (otherIntervalElement.isBot()) {
+            return this;
+        }
+        Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
+        List<Local> changedLocals = new ArrayList<>();
+        for (Local local : this.intervalMap.keySet()) {
+            Pair<Float, Float> thisInterval = this.intervalMap.get(local);
+            Pair<Float, Float> otherInterval = otherIntervalElement.intervalMap.get(local);
+            float newLower = otherInterval.first < thisInterval.first ? Float.NEGATIVE_INFINITY : thisInterval.first;
+            float newUpper = otherInterval.second > thisInterval.second ? Float.POSITIVE_INFINITY : thisInterval.second;
+            if (!sameBounds(thisInterval, newLower, newUpper)) {
+                newIntervalMap.put(local, new Pair<>(newLower, newUpper));
+                changedLocals.add(local);
+            }
         }
-        return new IntervalElement(newIntervalMap);
+        return new IntervalElement(newIntervalMap, context, changedLocals);
     }
 
-    private Pair<Float, Float> getIntervalFromBinOp(String opSymbol, Pair<Float, Float> interval1,
+    // Narrowing: only infinite bounds are refined
+    public LatticeElement narrow(LatticeElement other) {
+        if (!(other instanceof IntervalElement)) {
+            throw new IllegalArgumentException("Incompatible types for narrowing");
+        }
+        IntervalElement otherIntervalElement = (IntervalElement) other;
+        if (this.isBot() || otherIntervalElement.isBot()) {
+            return otherIntervalElement;
+        }
+        Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
+        List<Local> changedLocals = new ArrayList<>();
+        for (Local local : this.intervalMap.keySet()) {
+            Pair<Float, Float> thisInterval = this.intervalMap.get(local);
+            Pair<Float, Float> otherInterval = otherIntervalElement.intervalMap.get(local);
+            float newLower = thisInterval.first == Float.NEGATIVE_INFINITY ? otherInterval.first : thisInterval.first;
+            float newUpper = thisInterval.second == Float.POSITIVE_INFINITY ? otherInterval.second : thisInterval.second;
+            if (!sameBounds(thisInterval, newLower, newUpper)) {
+                newIntervalMap.put(local, new Pair<>(newLower, newUpper));
+                changedLocals.add(local);
+            }
+        }
+        return new IntervalElement(newIntervalMap, context, changedLocals);
+    }
+
+    static Pair<Float, Float> getIntervalFromBinOp(String opSymbol, Pair<Float, Float> interval1,
             Pair<Float, Float> interval2) {
         float newLower, newUpper;
         float p1, p2, p3, p4, p5, p6, p7, p8;
@@ -183,7 +337,7 @@ public class IntervalElement implements LatticeElement{
         return new Pair<>(newLower, newUpper);
     }
 
-    private Pair<Pair<Float, Float>, Pair<Float, Float>> getIntervalsAfterComparison(String opSymbol,
+    static Pair<Pair<Float, Float>, Pair<Float, Float>> getIntervalsAfterComparison(String opSymbol,
             Pair<Float, Float> interval1, Pair<Float, Float> interval2) {
         Float lower1, upper1, lower2, upper2;
         Pair<Pair<Float, Float>, Pair<Float, Float>> result;
@@ -248,7 +402,7 @@ public class IntervalElement implements LatticeElement{
         }
     }
 
-    private float getValueFromConstant(Value value) {
+    static float getValueFromConstant(Value value) {
         if (value instanceof IntConstant) {
             return (float) ((IntConstant) value).value;
         } else if (value instanceof FloatConstant) {
@@ -267,12 +421,12 @@ public class IntervalElement implements LatticeElement{
             // Handle assignment statements
             AssignStmt assignStmt = (AssignStmt) stmt;
 
-            if (!(assignStmt.getLeftOp() instanceof Local)) return this.clone(); // cannot handle references
+            if (!(assignStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
             Local leftVar = (Local) assignStmt.getLeftOp();
             Value rightOp = assignStmt.getRightOp();
 
             if (this.intervalMap.containsKey(leftVar)) {
-                Map<Local, Pair<Float, Float>> newIntervalMap = new HashMap<>(this.intervalMap);
+                Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
 
                 if (rightOp instanceof IntConstant || rightOp instanceof FloatConstant) {
                     // var = constant
@@ -360,18 +514,25 @@ public class IntervalElement implements LatticeElement{
                             newIntervalMap.put(leftVar, topPair);
                         }
                     }
+                } else if (rightOp instanceof InvokeExpr) {
+                    // var = call, whose result is known if the callees have a summary
+                    MethodSummary summary = context.callSummary(assignStmt);
+                    if (summary != null && summary.returnInterval != null) {
+                        newIntervalMap.put(leftVar, summary.returnInterval);
+                    }
                 }
                 // do a sanity check and see if newLower > newUpper
                 if (newIntervalMap.get(leftVar).first > newIntervalMap.get(leftVar).second) {
                     return getBot();
                 }
-                return new IntervalElement(newIntervalMap);
+                return new IntervalElement(newIntervalMap, context, Collections.singletonList(leftVar));
             }
         } else if (stmt instanceof IfStmt) {
             IfStmt ifStmt = (IfStmt) stmt;
             ConditionExpr condition = (ConditionExpr) ifStmt.getCondition();
 
-            Map<Local, Pair<Float, Float>> newIntervalMap = new HashMap<>(this.intervalMap);
+            Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
+            List<Local> changedLocals = new ArrayList<>();
 
             Value op1 = condition.getOp1();
             Value op2 = condition.getOp2();
@@ -409,10 +570,11 @@ public class IntervalElement implements LatticeElement{
                             Pair<Pair<Float, Float>, Pair<Float, Float>> newIntervals = getIntervalsAfterComparison(
                                     opSymbol, interval1, interval2);
                             newIntervalMap.put(var, newIntervals.first);
+                            changedLocals.add(var);
                         } catch (ArithmeticException e) {
                             return getBot();
                         } catch (IllegalArgumentException e) {
-                            return this.clone(); // unhandled operator
+                            return this; // unhandled operator
                         }
                     }
                 } else if (op1 instanceof Constant && op2 instanceof Local) {
@@ -432,10 +594,11 @@ public class IntervalElement implements LatticeElement{
                             Pair<Pair<Float, Float>, Pair<Float, Float>> newIntervals = getIntervalsAfterComparison(
                                     opSymbol, interval1, interval2);
                             newIntervalMap.put(var, newIntervals.second);
+                            changedLocals.add(var);
                         } catch (ArithmeticException e) {
                             return getBot();
                         } catch (IllegalArgumentException e) {
-                            return this.clone(); // unhandled operator
+                            return this; // unhandled operator
                         }
                     }
                 } else if (op1 instanceof Local && op2 instanceof Local) {
@@ -449,35 +612,37 @@ public class IntervalElement implements LatticeElement{
                                     opSymbol, interval1, interval2);
                             newIntervalMap.put(var1, newIntervals.first);
                             newIntervalMap.put(var2, newIntervals.second);
+                            changedLocals.add(var1);
+                            changedLocals.add(var2);
                         } catch (ArithmeticException e) {
                             return getBot();
                         } catch (IllegalArgumentException e) {
-                            return this.clone(); // unhandled operator
+                            return this; // unhandled operator
                         }
                     }
                 }
             }
 
-            // sanity check (easy way out is to just check for every variable)
-            for (Local local : newIntervalMap.keySet()) {
+            // sanity check (only the refined variables can have changed)
+            for (Local local : changedLocals) {
                 if (newIntervalMap.get(local).first > newIntervalMap.get(local).second) {
                     return getBot();
                 }
             }
-            return new IntervalElement(newIntervalMap);
+            return new IntervalElement(newIntervalMap, context, changedLocals);
         } else if (stmt instanceof IdentityStmt) {
             IdentityStmt identityStmt = (IdentityStmt) stmt;
-            if (!(identityStmt.getLeftOp() instanceof Local)) return this.clone(); // cannot handle references
+            if (!(identityStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
             Local leftVar = (Local) identityStmt.getLeftOp();
 
             // always send leftVar to topInterval
-            Map<Local, Pair<Float, Float>> newIntervalMap = new HashMap<>(this.intervalMap);
+            Map<Local, Pair<Float, Float>> newIntervalMap = PersistentLocalMap.copyOf(this.intervalMap);
             newIntervalMap.put(leftVar, topPair);
-            return new IntervalElement(newIntervalMap);
+            return new IntervalElement(newIntervalMap, context, Collections.singletonList(leftVar));
         }
         // check for identity statements (like @p)
 
-        return this.clone(); // unhandled statements
+        return this; // unhandled statements (the state is shared, elements are never modified)
     }
 
     public LatticeElement tf_assignment(Stmt stmt) {
@@ -506,6 +671,6 @@ public class IntervalElement implements LatticeElement{
         if (isBot()) {
             return new IntervalElement();
         }
-        return new IntervalElement(new HashMap<>(intervalMap));
+        return new IntervalElement(PersistentLocalMap.copyOf(intervalMap), context, Collections.<Local>emptyList());
     }
 }
\ No newline at end of file
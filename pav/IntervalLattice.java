@@ -0,0 +1,21 @@
+package pav;
+
+import java.util.*;
+
+import soot.Local;
+
+// Interval analysis results, independent of how the intervals are stored
+public interface IntervalLattice extends LatticeElement {
+    // Locals that have an interval (only valid if the element is not bot)
+    Collection<Local> getLocals();
+
+    // Interval of a local, or null if the local is not tracked
+    Pair<Float, Float> getInterval(Local local);
+
+    // Bounds of the interval of a local as {lower, upper}, with Long.MIN_VALUE for -inf and
+    // Long.MAX_VALUE for inf, or null if the local is not tracked
+    long[] getBounds(Local local);
+
+    // Meet of the interval of a tracked local with [lower, upper] (bot if it becomes empty)
+    LatticeElement restrict(Local local, float lower, float upper);
+}
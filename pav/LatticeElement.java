@@ -1,5 +1,7 @@
 package pav;
 
+import java.util.BitSet;
+
 import soot.jimple.Stmt;
 
 public interface LatticeElement {
@@ -14,5 +16,23 @@ public interface LatticeElement {
     
     LatticeElement getBot();
 
+    // Widening of this element by a larger one, applied at loop heads
+    // (joining is enough for lattices of finite height)
+    default LatticeElement widen(LatticeElement other) {
+        return join(other);
+    }
+
+    // Narrowing of this element by a smaller one, applied at loop heads after widening
+    default LatticeElement narrow(LatticeElement other) {
+        return other;
+    }
+
+    // Element that holds, of the locals that initialElement tracks, only those in liveLocals (bits
+    // of localIndex): the others are dropped, and the ones it does not hold take their value in
+    // initialElement (see Liveness). Elements that cannot drop locals keep all of them.
+    default LatticeElement retain(LocalIndex localIndex, BitSet liveLocals, LatticeElement initialElement) {
+        return this;
+    }
+
     public boolean isBot();
 }
\ No newline at end of file
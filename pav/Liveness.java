@@ -0,0 +1,121 @@
+package pav;
+
+import java.util.*;
+
+import soot.Local;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.Stmt;
+
+// Locals live before every program point of a method, computed once by a backward pass over the
+// point graph of ProgramPoints (the BriefUnitGraph of the body). With --liveness, the fixpoint
+// engines keep in the fact of a point only the tracked locals live there, so that the size of the
+// facts follows the live ranges instead of the number of locals. Live sets are bit sets over the
+// dense numbering of a LocalIndex.
+public class Liveness {
+    private final LocalIndex localIndex;
+    // live locals before every point (empty for points outside the graph)
+    private final BitSet[] liveBefore;
+    private final int pointCount;
+
+    public Liveness(PointGraph graph, Map<Unit, Integer> pointBeforeUnit, LocalIndex localIndex) {
+        this.localIndex = localIndex;
+        this.pointCount = graph.pointCount();
+        // locals used and defined by the unit of every point
+        BitSet[] uses = new BitSet[graph.size];
+        BitSet[] defs = new BitSet[graph.size];
+        for (Map.Entry<Unit, Integer> entry : pointBeforeUnit.entrySet()) {
+            uses[entry.getValue()] = locals(entry.getKey().getUseBoxes());
+            defs[entry.getValue()] = locals(entry.getKey().getDefBoxes());
+        }
+        liveBefore = new BitSet[graph.size];
+        for (int point = 0; point < graph.size; point++) {
+            liveBefore[point] = new BitSet();
+        }
+
+        // live before a point: the locals its unit uses, and those live before a successor that the
+        // unit does not define; points are visited from the last one so that straight-line code
+        // settles in one pass
+        Deque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[graph.size];
+        int[] points = graph.points();
+        for (int i = points.length - 1; i >= 0; i--) {
+            worklist.add(points[i]);
+            queued[points[i]] = true;
+        }
+        BitSet live = new BitSet();
+        while (!worklist.isEmpty()) {
+            int point = worklist.poll();
+            queued[point] = false;
+            live.clear();
+            for (int e = graph.offsets[point]; e < graph.offsets[point + 1]; e++) {
+                live.or(liveBefore[graph.targets[e]]);
+            }
+            if (defs[point] != null) {
+                live.andNot(defs[point]);
+                live.or(uses[point]);
+            }
+            if (!live.equals(liveBefore[point])) {
+                liveBefore[point] = (BitSet) live.clone();
+                for (int i = graph.predecessorOffsets[point]; i < graph.predecessorOffsets[point + 1]; i++) {
+                    int source = graph.sources[graph.predecessorEdges[i]];
+                    if (!queued[source]) {
+                        worklist.add(source);
+                        queued[source] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private BitSet locals(List<ValueBox> boxes) {
+        BitSet locals = new BitSet();
+        for (ValueBox box : boxes) {
+            int index = box.getValue() instanceof Local ? localIndex.indexOf(box.getValue()) : -1;
+            if (index >= 0) {
+                locals.set(index);
+            }
+        }
+        return locals;
+    }
+
+    // Names of the locals live at a point
+    public Set<String> liveNames(int point) {
+        Set<String> names = new HashSet<>();
+        for (int i = liveBefore[point].nextSetBit(0); i >= 0; i = liveBefore[point].nextSetBit(i + 1)) {
+            names.add(localIndex.get(i).getName());
+        }
+        return names;
+    }
+
+    // The fact of a point with only the locals live there (see LatticeElement.retain)
+    public LatticeElement atPoint(LatticeElement fact, int point, LatticeElement initialElement) {
+        return fact.retain(localIndex, liveBefore[point], initialElement);
+    }
+
+    // Transfer of the fact of a point across the statement on one of its edges, kept to the locals
+    // live at the target. The transfer functions only update the locals a fact holds, so a local
+    // that the statement defines but that is dead before it is first given its initial value.
+    public LatticeElement transfer(LatticeElement fact, int point, Stmt stmt, boolean isTrueBranch, int target,
+            LatticeElement initialElement) {
+        for (ValueBox box : stmt.getDefBoxes()) {
+            int index = box.getValue() instanceof Local ? localIndex.indexOf(box.getValue()) : -1;
+            if (index >= 0 && !liveBefore[point].get(index)) {
+                BitSet defined = (BitSet) liveBefore[point].clone();
+                defined.set(index);
+                fact = fact.retain(localIndex, defined, initialElement);
+            }
+        }
+        return fact.tf_assignment(stmt, isTrueBranch).retain(localIndex, liveBefore[target], initialElement);
+    }
+
+    // Average number of live locals per point
+    public String toString() {
+        long live = 0;
+        for (BitSet locals : liveBefore) {
+            live += locals.cardinality();
+        }
+        double average = pointCount == 0 ? 0 : Math.round(10.0 * live / pointCount) / 10.0;
+        return average + " of " + localIndex.size() + " locals live per point";
+    }
+}
@@ -0,0 +1,32 @@
+package pav;
+
+import java.util.*;
+
+import soot.Local;
+
+// Dense numbering of the locals of one method, computed once and shared by all lattice elements
+public class LocalIndex {
+    private final Local[] locals;
+    private final Map<Local, Integer> indices = new HashMap<>();
+
+    public LocalIndex(Collection<Local> givenLocals) {
+        this.locals = givenLocals.toArray(new Local[0]);
+        for (int i = 0; i < locals.length; i++) {
+            indices.put(locals[i], i);
+        }
+    }
+
+    // Index of a value, or -1 if it is not one of the indexed locals
+    public int indexOf(Object value) {
+        Integer index = indices.get(value);
+        return index == null ? -1 : index;
+    }
+
+    public Local get(int index) {
+        return locals[index];
+    }
+
+    public int size() {
+        return locals.length;
+    }
+}
@@ -0,0 +1,740 @@
+package pav;
+
+import java.util.*;
+
+import soot.ByteType;
+import soot.IntType;
+import soot.Local;
+import soot.ShortType;
+import soot.Type;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.CastExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.LeExpr;
+import soot.jimple.LongConstant;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.NegExpr;
+import soot.jimple.Stmt;
+
+// Intervals with exact 64-bit bounds (--interval=long). Laid out like IntervalArrayElement, but the
+// bounds are longs, with Long.MIN_VALUE and Long.MAX_VALUE standing for -inf and inf, so they need
+// no rounding and stay exact above 2^24. Arithmetic never overflows silently: a result outside the
+// range of the type of the assigned local (byte, short, int or long) wraps around as in Java, or
+// becomes the whole range of the type if the wrapped values are not contiguous. For byte, short and
+// int locals, an infinite bound is the extreme of the type, so arithmetic on it can wrap too; bounds
+// beyond lowerBound or upperBound only keep whether they reach that extreme (-inf or inf) or stop one
+// short of it, which keeps i + 1 within the type under i < n. Long bounds beyond the limits are
+// infinite and absorb arithmetic. Since negative literals are exact here, an upper bound below
+// lowerBound is raised to lowerBound - 1 (and a lower bound above upperBound lowered to
+// upperBound + 1), so that such bounds cannot climb one step per loop iteration either. Bounds
+// beyond the limits are reported as infinite. Right-hand sides that are not handled give any value
+// of the type, instead of keeping the old interval.
+public class LongIntervalElement implements IntervalLattice {
+    public static final LongIntervalElement bot = new LongIntervalElement();
+
+    static final long NEG_INF = Long.MIN_VALUE;
+    static final long POS_INF = Long.MAX_VALUE;
+
+    private final LocalIndex index;
+    // bit width of the type of every local (8, 16, 32 or 64), shared by all elements of a method
+    private final byte[] widths;
+    // lowerBound and upperBound as integers
+    private final long lowerLimit;
+    private final long upperLimit;
+    // which locals have an interval (identity statements may add locals)
+    private final boolean[] tracked;
+    private final long[] lower;
+    private final long[] upper;
+    public final AnalysisContext context;
+
+    public LatticeElement getBot() {
+        return bot;
+    }
+
+    public LongIntervalElement(Map<Local, Pair<Float, Float>> givenIntervalMap, LocalIndex index,
+            AnalysisContext context) {
+        this.index = index;
+        this.context = context;
+        this.widths = new byte[index.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = width(index.get(i).getType());
+        }
+        this.lowerLimit = fromLower(context.lowerBound);
+        this.upperLimit = fromUpper(context.upperBound);
+        boolean[] newTracked = new boolean[index.size()];
+        long[] newLower = new long[index.size()];
+        long[] newUpper = new long[index.size()];
+        // sanity check
+        boolean empty = context.lowerBound > context.upperBound;
+        for (Local local : givenIntervalMap.keySet()) {
+            int i = index.indexOf(local);
+            if (i < 0) {
+                throw new IllegalArgumentException("Local not indexed: " + local);
+            }
+            newTracked[i] = true;
+            newLower[i] = fromLower(givenIntervalMap.get(local).first);
+            newUpper[i] = fromUpper(givenIntervalMap.get(local).second);
+            if (!normalize(newLower, newUpper, i)) {
+                empty = true;
+            }
+        }
+        this.tracked = empty ? null : newTracked;
+        this.lower = empty ? null : newLower;
+        this.upper = empty ? null : newUpper;
+    }
+
+    // Constructor for already normalized arrays, sharing the rest with shape
+    private LongIntervalElement(LongIntervalElement shape, boolean[] tracked, long[] lower, long[] upper) {
+        this.index = shape.index;
+        this.widths = shape.widths;
+        this.lowerLimit = shape.lowerLimit;
+        this.upperLimit = shape.upperLimit;
+        this.context = shape.context;
+        this.tracked = tracked;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    // Private constructor for bot
+    private LongIntervalElement() {
+        this.index = null;
+        this.widths = null;
+        this.lowerLimit = 0;
+        this.upperLimit = 0;
+        this.context = null;
+        this.tracked = null;
+        this.lower = null;
+        this.upper = null;
+    }
+
+    // Bit width of an integer type (64 for long and any other type)
+    static byte width(Type type) {
+        if (type instanceof ByteType) {
+            return 8;
+        } else if (type instanceof ShortType) {
+            return 16;
+        } else if (type instanceof IntType) {
+            return 32;
+        }
+        return 64;
+    }
+
+    private static long minOf(int width) {
+        return width == 64 ? NEG_INF : -(1L << (width - 1));
+    }
+
+    private static long maxOf(int width) {
+        return width == 64 ? POS_INF : (1L << (width - 1)) - 1;
+    }
+
+    // A float lower bound as a long (rounded up), and an upper bound (rounded down)
+    private static long fromLower(float bound) {
+        return bound == Float.NEGATIVE_INFINITY ? NEG_INF : (long) Math.ceil(bound);
+    }
+
+    private static long fromUpper(float bound) {
+        return bound == Float.POSITIVE_INFINITY ? POS_INF : (long) Math.floor(bound);
+    }
+
+    // A long lower bound as the largest float below it, and an upper bound as the least float above
+    // it, so that the float interval contains the long one
+    private static float toLower(long bound) {
+        if (bound == NEG_INF) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        float value = bound;
+        return (long) value > bound ? Math.nextDown(value) : value;
+    }
+
+    private static float toUpper(long bound) {
+        if (bound == POS_INF) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float value = bound;
+        return (long) value < bound ? Math.nextUp(value) : value;
+    }
+
+    // Apply lowerBound and upperBound to the interval at slot i, as the IntervalElement constructor
+    // does; returns false if the interval is empty. Every bound then takes one of finitely many
+    // values, which keeps the ascending chains finite for Kildall's algorithm.
+    private boolean normalize(long[] lower, long[] upper, int i) {
+        if (lower[i] > upper[i]) {
+            return false;
+        }
+        // the extremes of byte, short and int are -inf and inf, and other bounds beyond a limit stop
+        // one short of them
+        long min = minOf(widths[i]);
+        long max = maxOf(widths[i]);
+        if (lower[i] < lowerLimit) {
+            lower[i] = lower[i] <= min || widths[i] == 64 ? NEG_INF : min + 1;
+        }
+        if (upper[i] > upperLimit) {
+            upper[i] = upper[i] >= max || widths[i] == 64 ? POS_INF : max - 1;
+        }
+        // bounds entirely beyond a limit only keep which side of it they are on
+        if (upper[i] < lowerLimit) {
+            upper[i] = lowerLimit - 1;
+        }
+        if (lower[i] > upperLimit) {
+            lower[i] = upperLimit + 1;
+        }
+        return true;
+    }
+
+    // check if the LongIntervalElement is bot
+    public boolean isBot() {
+        return this.lower == null;
+    }
+
+    public Collection<Local> getLocals() {
+        List<Local> locals = new ArrayList<>();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i]) {
+                locals.add(index.get(i));
+            }
+        }
+        return locals;
+    }
+
+    public Pair<Float, Float> getInterval(Local local) {
+        int i = slot(local);
+        return i < 0 ? null : new Pair<>(toLower(reportedLower(i)), toUpper(reportedUpper(i)));
+    }
+
+    public long[] getBounds(Local local) {
+        int i = slot(local);
+        return i < 0 ? null : new long[] { reportedLower(i), reportedUpper(i) };
+    }
+
+    // Bounds of slot i as they are reported, infinite beyond lowerBound and upperBound
+    private long reportedLower(int i) {
+        return lower[i] < lowerLimit ? NEG_INF : lower[i];
+    }
+
+    private long reportedUpper(int i) {
+        return upper[i] > upperLimit ? POS_INF : upper[i];
+    }
+
+    public LatticeElement restrict(Local local, float lower, float upper) {
+        int i = isBot() ? -1 : slot(local);
+        if (i < 0) {
+            return this;
+        }
+        long newLower = Math.max(this.lower[i], fromLower(lower));
+        long newUpper = Math.min(this.upper[i], fromUpper(upper));
+        if (newLower == this.lower[i] && newUpper == this.upper[i]) {
+            return this;
+        }
+        return update(i, newLower, newUpper, -1, 0, 0);
+    }
+
+    // Slot of a tracked local, or -1
+    private int slot(Value value) {
+        int i = index.indexOf(value);
+        return i >= 0 && tracked[i] ? i : -1;
+    }
+
+    // Join operation with another LatticeElement
+    public LatticeElement join(LatticeElement other) {
+        if (!(other instanceof LongIntervalElement)) {
+            throw new IllegalArgumentException("Incompatible types for join");
+        }
+        LongIntervalElement otherElement = (LongIntervalElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        long[] newLower = null;
+        long[] newUpper = null;
+        for (int i = 0; i < tracked.length; i++) {
+            if (!tracked[i] || !otherElement.tracked[i]) {
+                continue;
+            }
+            long joinedLower = Math.min(lower[i], otherElement.lower[i]);
+            long joinedUpper = Math.max(upper[i], otherElement.upper[i]);
+            if (joinedLower != lower[i] || joinedUpper != upper[i]) {
+                if (newLower == null) {
+                    newLower = lower.clone();
+                    newUpper = upper.clone();
+                }
+                newLower[i] = joinedLower;
+                newUpper[i] = joinedUpper;
+            }
+        }
+        if (newLower == null) {
+            return this; // other is already included in this
+        }
+        return new LongIntervalElement(this, tracked, newLower, newUpper);
+    }
+
+    // Widening: bounds that are still moving jump to -inf or +inf
+    public LatticeElement widen(LatticeElement other) {
+        if (!(other instanceof LongIntervalElement)) {
+            throw new IllegalArgumentException("Incompatible types for widening");
+        }
+        LongIntervalElement otherElement = (LongIntervalElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        long[] newLower = lower.clone();
+        long[] newUpper = upper.clone();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i] && otherElement.tracked[i]) {
+                if (otherElement.lower[i] < lower[i]) {
+                    newLower[i] = NEG_INF;
+                }
+                if (otherElement.upper[i] > upper[i]) {
+                    newUpper[i] = POS_INF;
+                }
+            }
+        }
+        return new LongIntervalElement(this, tracked, newLower, newUpper);
+    }
+
+    // Narrowing: only infinite bounds are refined
+    public LatticeElement narrow(LatticeElement other) {
+        if (!(other instanceof LongIntervalElement)) {
+            throw new IllegalArgumentException("Incompatible types for narrowing");
+        }
+        LongIntervalElement otherElement = (LongIntervalElement) other;
+        if (this.isBot() || otherElement.isBot()) {
+            return otherElement;
+        }
+        long[] newLower = lower.clone();
+        long[] newUpper = upper.clone();
+        for (int i = 0; i < tracked.length; i++) {
+            if (tracked[i] && otherElement.tracked[i]) {
+                if (lower[i] == NEG_INF) {
+                    newLower[i] = otherElement.lower[i];
+                }
+                if (upper[i] == POS_INF) {
+                    newUpper[i] = otherElement.upper[i];
+                }
+            }
+        }
+        return new LongIntervalElement(this, tracked, newLower, newUpper);
+    }
+
+    // Copy of this element with new bounds for up to two slots (-1 for none); returns bot if an
+    // interval becomes empty
+    private LatticeElement update(int slot1, long lower1, long upper1, int slot2, long lower2, long upper2) {
+        long[] newLower = lower.clone();
+        long[] newUpper = upper.clone();
+        if (slot1 >= 0) {
+            newLower[slot1] = lower1;
+            newUpper[slot1] = upper1;
+        }
+        if (slot2 >= 0) {
+            newLower[slot2] = lower2;
+            newUpper[slot2] = upper2;
+        }
+        if ((slot1 >= 0 && !normalize(newLower, newUpper, slot1))
+                || (slot2 >= 0 && !normalize(newLower, newUpper, slot2))) {
+            return getBot();
+        }
+        return new LongIntervalElement(this, tracked, newLower, newUpper);
+    }
+
+    // Value of a result [lower, upper] of the given width in Java: bounds outside the range of the
+    // type wrap around. An infinite bound is a long that may lie anywhere beyond, so it gives the
+    // whole range of the type.
+    static long[] wrap(long lower, long upper, int width) {
+        if (width == 64) {
+            return new long[] { lower, upper };
+        }
+        long min = minOf(width);
+        long max = maxOf(width);
+        if (lower < min || lower > max || upper < min || upper > max) {
+            boolean finite = lower != NEG_INF && lower != POS_INF && upper != NEG_INF && upper != POS_INF;
+            // upper - lower is exact as an unsigned value
+            if (finite && Long.compareUnsigned(upper - lower, 1L << width) < 0) {
+                int shift = 64 - width;
+                long wrappedLower = (lower << shift) >> shift;
+                long wrappedUpper = (upper << shift) >> shift;
+                if (wrappedLower <= wrappedUpper) {
+                    return new long[] { wrappedLower, wrappedUpper };
+                }
+            }
+            return new long[] { min, max };
+        }
+        return new long[] { lower, upper };
+    }
+
+    private static long negate(long bound) {
+        return bound == NEG_INF ? POS_INF : bound == POS_INF ? NEG_INF : -bound;
+    }
+
+    private static long increment(long bound) {
+        return bound == NEG_INF || bound == POS_INF ? bound : bound + 1;
+    }
+
+    private static long decrement(long bound) {
+        return bound == NEG_INF || bound == POS_INF ? bound : bound - 1;
+    }
+
+    // Sum of two bounds of the same side; throws ArithmeticException if finite bounds overflow
+    private static long add(long bound1, long bound2) {
+        if (bound1 == NEG_INF || bound1 == POS_INF) {
+            return bound1;
+        }
+        if (bound2 == NEG_INF || bound2 == POS_INF) {
+            return bound2;
+        }
+        return Math.addExact(bound1, bound2);
+    }
+
+    private static long multiply(long bound1, long bound2) {
+        if (bound1 == 0 || bound2 == 0) {
+            return 0;
+        }
+        if (bound1 == NEG_INF || bound1 == POS_INF || bound2 == NEG_INF || bound2 == POS_INF) {
+            return (bound1 < 0) == (bound2 < 0) ? POS_INF : NEG_INF;
+        }
+        return Math.multiplyExact(bound1, bound2);
+    }
+
+    // Quotient of two bounds (bound2 is not 0), truncated as in Java; an infinite divisor gives 0,
+    // which lies between the quotients of the finite divisors it stands for
+    private static long divide(long bound1, long bound2) {
+        if (bound2 == NEG_INF || bound2 == POS_INF) {
+            return 0;
+        }
+        if (bound1 == NEG_INF || bound1 == POS_INF) {
+            return (bound1 < 0) == (bound2 < 0) ? POS_INF : NEG_INF;
+        }
+        return bound1 / bound2;
+    }
+
+    private static long[] hull(long p1, long p2, long p3, long p4) {
+        return new long[] { Math.min(Math.min(p1, p2), Math.min(p3, p4)),
+                Math.max(Math.max(p1, p2), Math.max(p3, p4)) };
+    }
+
+    // Interval of [lower1, upper1] op [lower2, upper2] over the integers, for + - * /. A result that
+    // overflows 64 bits may be any long; Java's wraparound for narrower types is applied by wrap.
+    static long[] getIntervalFromBinOp(String opSymbol, long lower1, long upper1, long lower2, long upper2) {
+        if (opSymbol.equals("/") && lower2 == 0 && upper2 == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        try {
+            switch (opSymbol) {
+                case "+":
+                    return new long[] { add(lower1, lower2), add(upper1, upper2) };
+                case "-":
+                    return new long[] { add(lower1, negate(upper2)), add(upper1, negate(lower2)) };
+                case "*":
+                    return hull(multiply(lower1, lower2), multiply(lower1, upper2), multiply(upper1, lower2),
+                            multiply(upper1, upper2));
+                case "/":
+                    // the divisor without 0, as up to two intervals [lower2, -1] and [1, upper2]
+                    long[] result = null;
+                    if (lower2 <= -1) {
+                        long divisor = Math.min(upper2, -1);
+                        result = hull(divide(lower1, lower2), divide(lower1, divisor), divide(upper1, lower2),
+                                divide(upper1, divisor));
+                    }
+                    if (upper2 >= 1) {
+                        long divisor = Math.max(lower2, 1);
+                        long[] positive = hull(divide(lower1, divisor), divide(lower1, upper2),
+                                divide(upper1, divisor), divide(upper1, upper2));
+                        result = result == null ? positive
+                                : new long[] { Math.min(result[0], positive[0]), Math.max(result[1], positive[1]) };
+                    }
+                    return result;
+                default:
+                    throw new IllegalArgumentException("Invalid operator: " + opSymbol);
+            }
+        } catch (ArithmeticException e) {
+            // finite bounds overflow 64 bits
+            return new long[] { NEG_INF, POS_INF };
+        }
+    }
+
+    // Intervals of both operands when the comparison holds, as {lower1, upper1, lower2, upper2};
+    // throws ArithmeticException if it cannot hold
+    static long[] getIntervalsAfterComparison(String opSymbol, long lower1, long upper1, long lower2, long upper2) {
+        long[] result;
+        switch (opSymbol) {
+            case "<":
+                if (lower1 >= upper2) {
+                    throw new ArithmeticException("Unreachable code");
+                }
+                return new long[] { lower1, Math.min(upper1, decrement(upper2)), Math.max(increment(lower1), lower2),
+                        upper2 };
+            case ">":
+                result = getIntervalsAfterComparison("<", lower2, upper2, lower1, upper1);
+                return new long[] { result[2], result[3], result[0], result[1] };
+            case "<=":
+                if (lower1 > upper2) {
+                    throw new ArithmeticException("Unreachable code");
+                }
+                return new long[] { lower1, Math.min(upper1, upper2), Math.max(lower1, lower2), upper2 };
+            case ">=":
+                result = getIntervalsAfterComparison("<=", lower2, upper2, lower1, upper1);
+                return new long[] { result[2], result[3], result[0], result[1] };
+            case "==":
+                if (lower1 > upper2 || upper1 < lower2) {
+                    throw new ArithmeticException("Unreachable code");
+                }
+                long lower = Math.max(lower1, lower2);
+                long upper = Math.min(upper1, upper2);
+                return new long[] { lower, upper, lower, upper };
+            case "!=":
+                if (lower1 == lower2 && upper1 == upper2 && lower1 == upper1) {
+                    throw new ArithmeticException("Unreachable code");
+                }
+                result = new long[] { lower1, upper1, lower2, upper2 };
+                if (lower1 == upper1 && lower1 == lower2) {
+                    result[2] = increment(lower2);
+                } else if (lower1 == upper1 && lower1 == upper2) {
+                    result[3] = decrement(upper2);
+                } else if (lower2 == upper2 && lower2 == lower1) {
+                    result[0] = increment(lower1);
+                } else if (lower2 == upper2 && lower2 == upper1) {
+                    result[1] = decrement(upper1);
+                }
+                return result;
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + opSymbol);
+        }
+    }
+
+    static long getValueFromConstant(Value value) {
+        if (value instanceof IntConstant) {
+            return ((IntConstant) value).value;
+        } else if (value instanceof LongConstant) {
+            return ((LongConstant) value).value;
+        }
+        throw new IllegalArgumentException("Invalid constant type: " + value);
+    }
+
+    // Bounds of an operand (an integer constant or a tracked local) into bounds[at] and
+    // bounds[at + 1], with the infinite bounds of byte, short and int locals as the extremes of their
+    // type; returns false for any other operand
+    private boolean operandBounds(Value value, long[] bounds, int at) {
+        if (value instanceof IntConstant || value instanceof LongConstant) {
+            bounds[at] = getValueFromConstant(value);
+            bounds[at + 1] = bounds[at];
+            return true;
+        }
+        int i = slot(value);
+        if (i < 0) {
+            return false;
+        }
+        bounds[at] = lower[i] == NEG_INF ? minOf(widths[i]) : lower[i];
+        bounds[at + 1] = upper[i] == POS_INF ? maxOf(widths[i]) : upper[i];
+        return true;
+    }
+
+    // isTrueBranch is False if an alternate branch is taken (like the false branch
+    // of an if statement)
+    public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
+        if (this.isBot()) {
+            return bot; // bot is always transformed to bot
+        }
+        if (stmt instanceof AssignStmt) {
+            // Handle assignment statements
+            AssignStmt assignStmt = (AssignStmt) stmt;
+
+            if (!(assignStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
+            int left = slot(assignStmt.getLeftOp());
+            if (left < 0) {
+                return this;
+            }
+            Value rightOp = assignStmt.getRightOp();
+            long[] bounds = new long[4];
+            // right-hand sides that are not handled may give any value of the type
+            long newLower = NEG_INF;
+            long newUpper = POS_INF;
+
+            if (rightOp instanceof IntConstant || rightOp instanceof LongConstant || rightOp instanceof Local) {
+                // var = constant, var = var2
+                if (operandBounds(rightOp, bounds, 0)) {
+                    newLower = bounds[0];
+                    newUpper = bounds[1];
+                }
+            } else if (rightOp instanceof NegExpr) {
+                // var = -var2
+                if (operandBounds(((NegExpr) rightOp).getOp(), bounds, 0)) {
+                    newLower = negate(bounds[1]);
+                    newUpper = negate(bounds[0]);
+                }
+            } else if (rightOp instanceof CastExpr) {
+                // var = (type) var2, wrapped to the type of var below
+                if (operandBounds(((CastExpr) rightOp).getOp(), bounds, 0)) {
+                    newLower = bounds[0];
+                    newUpper = bounds[1];
+                }
+            } else if (rightOp instanceof BinopExpr) {
+                BinopExpr binopExpr = (BinopExpr) rightOp;
+                if (operandBounds(binopExpr.getOp1(), bounds, 0) && operandBounds(binopExpr.getOp2(), bounds, 2)) {
+                    try {
+                        long[] newInterval = getIntervalFromBinOp(binopExpr.getSymbol().trim(), bounds[0], bounds[1],
+                                bounds[2], bounds[3]);
+                        newLower = newInterval[0];
+                        newUpper = newInterval[1];
+                    } catch (ArithmeticException e) {
+                        return getBot();
+                    } catch (IllegalArgumentException e) {
+                        // unhandled operator
+                    }
+                }
+            } else if (rightOp instanceof InvokeExpr) {
+                // var = call, whose result is known if the callees have a summary
+                MethodSummary summary = context.callSummary(assignStmt);
+                if (summary != null && summary.returnInterval != null) {
+                    // the returned value has the type of var, whose extremes the infinite bounds stand for
+                    newLower = fromLower(summary.returnInterval.first);
+                    newUpper = fromUpper(summary.returnInterval.second);
+                    newLower = newLower == NEG_INF ? minOf(widths[left]) : newLower;
+                    newUpper = newUpper == POS_INF ? maxOf(widths[left]) : newUpper;
+                }
+            }
+            long[] wrapped = wrap(newLower, newUpper, widths[left]);
+            // do a sanity check and see if newLower > newUpper
+            if (wrapped[0] > wrapped[1]) {
+                return getBot();
+            }
+            return update(left, wrapped[0], wrapped[1], -1, 0, 0);
+        } else if (stmt instanceof IfStmt) {
+            IfStmt ifStmt = (IfStmt) stmt;
+            ConditionExpr condition = (ConditionExpr) ifStmt.getCondition();
+
+            Value op1 = condition.getOp1();
+            Value op2 = condition.getOp2();
+            String opSymbol = null;
+
+            if (condition instanceof LtExpr) {
+                opSymbol = isTrueBranch ? "<" : ">=";
+            } else if (condition instanceof GtExpr) {
+                opSymbol = isTrueBranch ? ">" : "<=";
+            } else if (condition instanceof LeExpr) {
+                opSymbol = isTrueBranch ? "<=" : ">";
+            } else if (condition instanceof GeExpr) {
+                opSymbol = isTrueBranch ? ">=" : "<";
+            } else if (condition instanceof EqExpr) {
+                opSymbol = isTrueBranch ? "==" : "!=";
+            } else if (condition instanceof NeExpr) {
+                opSymbol = isTrueBranch ? "!=" : "==";
+            }
+
+            int var1 = slot(op1);
+            int var2 = slot(op2);
+            long[] bounds = new long[4];
+            if (opSymbol == null || (var1 < 0 && var2 < 0) || !operandBounds(op1, bounds, 0)
+                    || !operandBounds(op2, bounds, 2)) {
+                return this;
+            }
+            // a constant operand compares with the whole range beyond it, as in IntervalElement
+            if (var1 < 0 && !opSymbol.equals("==") && !opSymbol.equals("!=")) {
+                if (opSymbol.startsWith("<")) {
+                    bounds[1] = POS_INF;
+                } else {
+                    bounds[0] = NEG_INF;
+                }
+            } else if (var2 < 0 && !opSymbol.equals("==") && !opSymbol.equals("!=")) {
+                if (opSymbol.startsWith("<")) {
+                    bounds[2] = NEG_INF;
+                } else {
+                    bounds[3] = POS_INF;
+                }
+            }
+            try {
+                long[] newIntervals = getIntervalsAfterComparison(opSymbol, bounds[0], bounds[1], bounds[2],
+                        bounds[3]);
+                // sanity check
+                if (newIntervals[0] > newIntervals[1] || newIntervals[2] > newIntervals[3]) {
+                    return getBot();
+                }
+                if (var1 == var2 || var1 < 0) {
+                    // the same local on both sides: the second interval wins, as in IntervalElement
+                    return update(var2, newIntervals[2], newIntervals[3], -1, 0, 0);
+                }
+                if (var2 < 0) {
+                    return update(var1, newIntervals[0], newIntervals[1], -1, 0, 0);
+                }
+                return update(var1, newIntervals[0], newIntervals[1], var2, newIntervals[2], newIntervals[3]);
+            } catch (ArithmeticException e) {
+                return getBot();
+            } catch (IllegalArgumentException e) {
+                return this; // unhandled operator
+            }
+        } else if (stmt instanceof IdentityStmt) {
+            IdentityStmt identityStmt = (IdentityStmt) stmt;
+            if (!(identityStmt.getLeftOp() instanceof Local)) return this; // cannot handle references
+            int left = index.indexOf(identityStmt.getLeftOp());
+            if (left < 0) {
+                return this;
+            }
+
+            // always send leftVar to the range of its type (this starts tracking it if it was not tracked yet)
+            boolean[] newTracked = tracked[left] ? tracked : tracked.clone();
+            newTracked[left] = true;
+            long[] newLower = lower.clone();
+            long[] newUpper = upper.clone();
+            newLower[left] = minOf(widths[left]);
+            newUpper[left] = maxOf(widths[left]);
+            normalize(newLower, newUpper, left);
+            return new LongIntervalElement(this, newTracked, newLower, newUpper);
+        }
+
+        return this; // unhandled statements
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt) {
+        return tf_assignment(stmt, true);
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof LongIntervalElement) {
+            LongIntervalElement other = (LongIntervalElement) o;
+            if (this.isBot() && other.isBot()) {
+                return true;
+            }
+            if (this.isBot() || other.isBot()) {
+                return false;
+            }
+            if (this == other) {
+                return true;
+            }
+            if (!Arrays.equals(this.tracked, other.tracked)) {
+                return false;
+            }
+            for (int i = 0; i < tracked.length; i++) {
+                if (tracked[i] && (lower[i] != other.lower[i] || upper[i] != other.upper[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        if (isBot()) {
+            return "bot";
+        }
+        Map<Local, String> intervalMap = new LinkedHashMap<>();
+        for (Local local : getLocals()) {
+            int i = slot(local);
+            intervalMap.put(local, "[" + (reportedLower(i) == NEG_INF ? "-inf" : String.valueOf(lower[i])) + ", "
+                    + (reportedUpper(i) == POS_INF ? "inf" : String.valueOf(upper[i])) + "]");
+        }
+        return intervalMap.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package pav;
+
+import java.util.*;
+
+// What the callers of a method need to know about it in interprocedural mode: the interval of
+// its integer return value and, if it returns an integer array, the possible lengths of the
+// returned arrays and whether it may return null. A component is null if it is unknown.
+public class MethodSummary {
+    public final Pair<Float, Float> returnInterval;
+    public final Pair<Float, Float> returnLength;
+    public final boolean returnsNull;
+
+    public MethodSummary(Pair<Float, Float> returnInterval, Pair<Float, Float> returnLength, boolean returnsNull) {
+        this.returnInterval = returnInterval;
+        this.returnLength = returnLength;
+        this.returnsNull = returnsNull;
+    }
+
+    // Summary of a call that may go to either method (a virtual call with several targets)
+    public MethodSummary join(MethodSummary other) {
+        return new MethodSummary(join(returnInterval, other.returnInterval), join(returnLength, other.returnLength),
+                returnsNull || other.returnsNull);
+    }
+
+    // Hull of two intervals (null if either is unknown)
+    public static Pair<Float, Float> join(Pair<Float, Float> interval1, Pair<Float, Float> interval2) {
+        if (interval1 == null || interval2 == null) {
+            return null;
+        }
+        return new Pair<>(Math.min(interval1.first, interval2.first), Math.max(interval1.second, interval2.second));
+    }
+
+    // One line per known component, as read back by parse
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (returnInterval != null) {
+            text.append("return ").append(returnInterval.first).append(' ').append(returnInterval.second).append('\n');
+        }
+        if (returnLength != null) {
+            text.append("length ").append(returnLength.first).append(' ').append(returnLength.second).append('\n');
+        }
+        if (returnsNull) {
+            text.append("null\n");
+        }
+        return text.toString();
+    }
+
+    public static MethodSummary parse(List<String> lines) {
+        Pair<Float, Float> returnInterval = null;
+        Pair<Float, Float> returnLength = null;
+        boolean returnsNull = false;
+        for (String line : lines) {
+            String[] fields = line.trim().split(" ");
+            if (fields[0].equals("return")) {
+                returnInterval = new Pair<>(Float.parseFloat(fields[1]), Float.parseFloat(fields[2]));
+            } else if (fields[0].equals("length")) {
+                returnLength = new Pair<>(Float.parseFloat(fields[1]), Float.parseFloat(fields[2]));
+            } else if (fields[0].equals("null")) {
+                returnsNull = true;
+            }
+        }
+        return new MethodSummary(returnInterval, returnLength, returnsNull);
+    }
+}
@@ -18,7 +18,8 @@ public class Pair<A, B> {
     }
 
     public int hashCode() {
-        return first.hashCode() + second.hashCode();
+        // not first + second, under which (a, b) and (b, a) collide
+        return 31 * first.hashCode() + second.hashCode();
     }
 
     public String toString() {
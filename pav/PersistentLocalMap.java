@@ -0,0 +1,268 @@
+package pav;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+
+import soot.Local;
+
+// Map from the locals of one method to values, stored as a 32-way trie over the dense local
+// indices of a LocalIndex. Trie nodes are never modified: put() copies the path to the changed
+// slot (O(log n)) and copy() shares the whole trie (O(1)), so states that differ in a few
+// variables share almost all of their memory. Null values are not allowed.
+public class PersistentLocalMap<V> extends AbstractMap<Local, V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private final LocalIndex index;
+    // number of trie levels below the root
+    private final int shift;
+    private Object[] root;
+    private int size;
+
+    public PersistentLocalMap(LocalIndex index) {
+        this.index = index;
+        int levels = 0;
+        while ((1 << (BITS * (levels + 1))) < index.size()) {
+            levels++;
+        }
+        this.shift = BITS * levels;
+        this.root = new Object[WIDTH];
+        this.size = 0;
+    }
+
+    public PersistentLocalMap(LocalIndex index, Map<Local, V> givenMap) {
+        this(index);
+        putAll(givenMap);
+    }
+
+    private PersistentLocalMap(PersistentLocalMap<V> other, Object[] root, int size) {
+        this.index = other.index;
+        this.shift = other.shift;
+        this.root = root;
+        this.size = size;
+    }
+
+    // Copy of a map: O(1) for persistent maps, a HashMap copy otherwise
+    public static <V> Map<Local, V> copyOf(Map<Local, V> map) {
+        if (map instanceof PersistentLocalMap) {
+            return ((PersistentLocalMap<V>) map).copy();
+        }
+        return new HashMap<>(map);
+    }
+
+    // Copy that shares all nodes with this map
+    public PersistentLocalMap<V> copy() {
+        return new PersistentLocalMap<>(this, root, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = index.indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (V) node[i & MASK];
+    }
+
+    public V put(Local key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+        int i = index.indexOf(key);
+        if (i < 0) {
+            throw new IllegalArgumentException("Local not indexed: " + key);
+        }
+        V old = get(key);
+        if (old != value) {
+            root = setSlot(root, shift, i, value);
+            if (old == null) {
+                size++;
+            }
+        }
+        return old;
+    }
+
+    public V remove(Object key) {
+        V old = get(key);
+        if (old != null) {
+            root = setSlot(root, shift, index.indexOf(key), null);
+            size--;
+        }
+        return old;
+    }
+
+    // Copy of the path from node to slot i, with the new value stored at the end
+    private static Object[] setSlot(Object[] node, int level, int i, Object value) {
+        Object[] newNode = node == null ? new Object[WIDTH] : node.clone();
+        if (level == 0) {
+            newNode[i & MASK] = value;
+        } else {
+            int child = (i >>> level) & MASK;
+            newNode[child] = setSlot((Object[]) newNode[child], level - BITS, i, value);
+        }
+        return newNode;
+    }
+
+    // Union of two maps over the same LocalIndex, combining the values of common keys with fn.
+    // Subtrees that are shared by both maps are not visited, and the nodes of this map are reused
+    // wherever the result does not differ from it.
+    public PersistentLocalMap<V> merge(PersistentLocalMap<V> other, BinaryOperator<V> fn) {
+        if (other.index != this.index) {
+            throw new IllegalArgumentException("Maps over different locals");
+        }
+        // number of keys that are only in the other map
+        int[] added = { 0 };
+        Object[] newRoot = mergeNodes(root, other.root, shift, fn, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentLocalMap<>(this, newRoot, size + added[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Object[] mergeNodes(Object[] a, Object[] b, int level, BinaryOperator<V> fn, int[] added) {
+        if (a == b || b == null) {
+            return a;
+        }
+        if (a == null) {
+            added[0] += countSlots(b, level);
+            return b;
+        }
+        Object[] result = a;
+        for (int j = 0; j < WIDTH; j++) {
+            Object merged;
+            if (level == 0) {
+                V x = (V) a[j];
+                V y = (V) b[j];
+                if (x == null) {
+                    merged = y;
+                    if (y != null) {
+                        added[0]++;
+                    }
+                } else if (y == null || x == y) {
+                    merged = x;
+                } else {
+                    V combined = fn.apply(x, y);
+                    merged = combined.equals(x) ? x : combined;
+                }
+            } else {
+                merged = mergeNodes((Object[]) a[j], (Object[]) b[j], level - BITS, fn, added);
+            }
+            if (merged != a[j]) {
+                if (result == a) {
+                    result = a.clone();
+                }
+                result[j] = merged;
+            }
+        }
+        return result;
+    }
+
+    private static int countSlots(Object[] node, int level) {
+        int count = 0;
+        for (Object child : node) {
+            if (child != null) {
+                count += level == 0 ? 1 : countSlots((Object[]) child, level - BITS);
+            }
+        }
+        return count;
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof PersistentLocalMap && ((PersistentLocalMap<?>) o).index == this.index) {
+            PersistentLocalMap<?> other = (PersistentLocalMap<?>) o;
+            return size == other.size && equalNodes(root, other.root, shift);
+        }
+        return super.equals(o);
+    }
+
+    // Structural equality that skips shared subtrees
+    private static boolean equalNodes(Object[] a, Object[] b, int level) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            // a missing subtree equals one whose slots have all been removed
+            return countSlots(a == null ? b : a, level) == 0;
+        }
+        for (int j = 0; j < WIDTH; j++) {
+            if (level == 0) {
+                if (a[j] != b[j] && (a[j] == null || !a[j].equals(b[j]))) {
+                    return false;
+                }
+            } else if (!equalNodes((Object[]) a[j], (Object[]) b[j], level - BITS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    // Entries in local index order; iteration works on the trie as it was when iteration started
+    public Set<Map.Entry<Local, V>> entrySet() {
+        final Object[] snapshot = root;
+        final int snapshotSize = size;
+        return new AbstractSet<Map.Entry<Local, V>>() {
+            public int size() {
+                return snapshotSize;
+            }
+
+            public Iterator<Map.Entry<Local, V>> iterator() {
+                return new Iterator<Map.Entry<Local, V>>() {
+                    private int next = advance(0);
+
+                    // first occupied slot at or after i, or index.size() if there is none
+                    private int advance(int i) {
+                        while (i < index.size() && valueAt(snapshot, i) == null) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    public boolean hasNext() {
+                        return next < index.size();
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<Local, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next;
+                        next = advance(i + 1);
+                        return new AbstractMap.SimpleImmutableEntry<>(index.get(i), (V) valueAt(snapshot, i));
+                    }
+                };
+            }
+        };
+    }
+
+    private Object valueAt(Object[] node, int i) {
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return node[i & MASK];
+    }
+}
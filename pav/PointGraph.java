@@ -0,0 +1,166 @@
+package pav;
+
+import java.util.*;
+
+import soot.Unit;
+import soot.jimple.Stmt;
+
+// Program-point graph in compressed sparse row form: the edges leaving point p are the indices
+// offsets[p] to offsets[p + 1] - 1 of the parallel arrays targets (the successor), statements (the
+// statement on the edge) and trueBranch (whether the edge is the true branch of an if). Points are
+// numbered from 0 to size - 1; a graph may leave some of them out (see SparseGraph), and those
+// have no edges. The fixpoint engines walk the edges by index, with no allocation or hashing.
+public class PointGraph {
+    public final int size;
+    public final int[] offsets;
+    public final int[] targets;
+    public final Stmt[] statements;
+    public final boolean[] trueBranch;
+    private final boolean[] present;
+    private final int pointCount;
+
+    // predecessors in the same form: the edges entering point p are predecessorEdges[predecessorOffsets[p]]
+    // to predecessorEdges[predecessorOffsets[p + 1] - 1] (as edge indices), and sources gives the
+    // source point of every edge
+    public final int[] predecessorOffsets;
+    public final int[] predecessorEdges;
+    public final int[] sources;
+
+    private PointGraph(int size, boolean[] present, int pointCount, int[] offsets, int[] targets,
+            Stmt[] statements, boolean[] trueBranch) {
+        this.size = size;
+        this.present = present;
+        this.pointCount = pointCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.statements = statements;
+        this.trueBranch = trueBranch;
+
+        sources = new int[targets.length];
+        predecessorOffsets = new int[size + 1];
+        for (int point = 0; point < size; point++) {
+            for (int e = offsets[point]; e < offsets[point + 1]; e++) {
+                sources[e] = point;
+                predecessorOffsets[targets[e] + 1]++;
+            }
+        }
+        for (int point = 0; point < size; point++) {
+            predecessorOffsets[point + 1] += predecessorOffsets[point];
+        }
+        int[] next = Arrays.copyOf(predecessorOffsets, size);
+        predecessorEdges = new int[targets.length];
+        for (int e = 0; e < targets.length; e++) {
+            predecessorEdges[next[targets[e]]++] = e;
+        }
+    }
+
+    // Builds a graph from its points and edges, given in any order; the edges of a point keep the
+    // order in which they were added
+    public static class Builder {
+        private final boolean[] present;
+        private int pointCount = 0;
+        private int edgeCount = 0;
+        private int[] edgeSources = new int[16];
+        private int[] edgeTargets = new int[16];
+        private Stmt[] edgeStatements = new Stmt[16];
+        private boolean[] edgeTrueBranch = new boolean[16];
+
+        public Builder(int size) {
+            present = new boolean[size];
+        }
+
+        public Builder addPoint(int point) {
+            if (!present[point]) {
+                present[point] = true;
+                pointCount++;
+            }
+            return this;
+        }
+
+        public Builder addEdge(int source, int target, Unit unit, boolean isTrueBranch) {
+            if (edgeCount == edgeSources.length) {
+                int capacity = edgeCount * 2;
+                edgeSources = Arrays.copyOf(edgeSources, capacity);
+                edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+                edgeStatements = Arrays.copyOf(edgeStatements, capacity);
+                edgeTrueBranch = Arrays.copyOf(edgeTrueBranch, capacity);
+            }
+            edgeSources[edgeCount] = source;
+            edgeTargets[edgeCount] = target;
+            edgeStatements[edgeCount] = (Stmt) unit;
+            edgeTrueBranch[edgeCount] = isTrueBranch;
+            edgeCount++;
+            return this;
+        }
+
+        public PointGraph build() {
+            int size = present.length;
+            // counting sort of the edges by source, stable within a source
+            int[] offsets = new int[size + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                offsets[edgeSources[e] + 1]++;
+            }
+            for (int point = 0; point < size; point++) {
+                offsets[point + 1] += offsets[point];
+            }
+            int[] next = Arrays.copyOf(offsets, size);
+            int[] targets = new int[edgeCount];
+            Stmt[] statements = new Stmt[edgeCount];
+            boolean[] trueBranch = new boolean[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                int slot = next[edgeSources[e]]++;
+                targets[slot] = edgeTargets[e];
+                statements[slot] = edgeStatements[e];
+                trueBranch[slot] = edgeTrueBranch[e];
+            }
+            return new PointGraph(size, present.clone(), pointCount, offsets, targets, statements, trueBranch);
+        }
+    }
+
+    // Check whether a point belongs to the graph
+    public boolean contains(int point) {
+        return point >= 0 && point < size && present[point];
+    }
+
+    // Number of points of the graph
+    public int pointCount() {
+        return pointCount;
+    }
+
+    // Points of the graph in increasing order
+    public int[] points() {
+        int[] points = new int[pointCount];
+        int n = 0;
+        for (int point = 0; point < size; point++) {
+            if (present[point]) {
+                points[n++] = point;
+            }
+        }
+        return points;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    // Index of the edge from source to target, or -1 if there is none
+    public int edge(int source, int target) {
+        for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+            if (targets[e] == target) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    // Facts of a fixpoint as a map from point to fact, for the points of the graph
+    public Map<Integer, LatticeElement> toMap(LatticeElement[] facts) {
+        Map<Integer, LatticeElement> map = new HashMap<>(pointCount * 2);
+        for (int point = 0; point < size; point++) {
+            if (present[point]) {
+                map.put(point, facts[point]);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,16 @@
+package pav;
+
+import java.util.*;
+
+import soot.Local;
+import soot.Unit;
+
+// Points-to analysis results, independent of how the points-to sets are stored
+public interface PointerLattice extends LatticeElement {
+    // Integer array locals that have a points-to set (only valid if the element is not bot)
+    Collection<Local> getLocals();
+
+    // Allocation sites a local may point to, with null standing for the null pointer,
+    // or null if the local is not tracked
+    Set<Unit> getPointsTo(Local local);
+}
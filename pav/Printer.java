@@ -1,5 +1,7 @@
 package pav;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import soot.Local;
 import soot.SootMethod;
@@ -10,86 +12,181 @@ import soot.UnitPrinter;
 import soot.NormalUnitPrinter;
 
 public class Printer{
+    // Names of the output files of a method
+    public static String arraySafetyFile(String targetDirectory, String tClass, String tMethod) {
+        return targetDirectory + "/Output_" + tClass + "_" + tMethod + ".txt";
+    }
+
+    public static String pointerAnalysisFile(String targetDirectory, String tClass, String tMethod) {
+        return targetDirectory + "/Output_" + tClass + "_points_to_analysis_" + tMethod + ".txt";
+    }
+
+    public static String intervalAnalysisFile(String targetDirectory, String tClass, String tMethod) {
+        return targetDirectory + "/Output_" + tClass + "_interval_analysis_" + tMethod + ".txt";
+    }
+
+    public static String arrayAccessFile(String targetDirectory, String tClass, String tMethod) {
+        return targetDirectory + "/Output_" + tClass + "_array_accesses_" + tMethod + ".txt";
+    }
+
+    // Output files are written line by line through one buffered writer each, so no file is ever
+    // held in memory, and program points are written in increasing order
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static Writer open(String fileName) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    // Append a number padded to at least two digits, as String.format("%02d") would
+    private static StringBuilder appendPadded(StringBuilder line, int number) {
+        if (number >= 0 && number < 10) {
+            line.append('0');
+        }
+        return line.append(number);
+    }
+
+    private static List<Integer> sortedPoints(Set<Integer> points) {
+        List<Integer> sorted = new ArrayList<>(points);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    // All locals of the given elements, sorted by name once for the whole method (elements that
+    // are bot have no locals)
+    private static List<Local> sortedLocals(Collection<LatticeElement> elements) {
+        Set<Local> locals = new HashSet<>();
+        for (LatticeElement element : elements) {
+            if (element instanceof IntervalLattice && !element.isBot()) {
+                locals.addAll(((IntervalLattice) element).getLocals());
+            } else if (element instanceof PointerLattice && !element.isBot()) {
+                locals.addAll(((PointerLattice) element).getLocals());
+            }
+        }
+        List<Local> sorted = new ArrayList<>(locals);
+        Collections.sort(sorted, new Comparator<Local>() {
+            public int compare(Local l1, Local l2) {
+                return l1.getName().compareTo(l2.getName());
+            }
+        });
+        return sorted;
+    }
+
     // Generate Array safety output as mentioned in the requirements
     public static void ArraySafety(String targetDirectory, String tClass, String tMethod, Map<Integer, String> safetyMap) {
         // Create a file Output_tclass_tmethod.txt
-        String outputFileName = targetDirectory + "/Output_" + tClass + "_" + tMethod + ".txt";
+        String outputFileName = arraySafetyFile(targetDirectory, tClass, tMethod);
         try {
-            java.io.FileWriter fw = new java.io.FileWriter(outputFileName);
-            java.io.PrintWriter pw = new java.io.PrintWriter(fw);
-
-            for (Map.Entry<Integer, String> safetyEntry : safetyMap.entrySet()) {
-                pw.println(tClass + "." + tMethod + ": " + String.format("%02d", safetyEntry.getKey()) + ": " + safetyEntry.getValue());
+            Writer writer = open(outputFileName);
+            try {
+                // lines keep the iteration order of safetyMap, which the expected outputs follow
+                StringBuilder line = new StringBuilder();
+                for (Map.Entry<Integer, String> safetyEntry : safetyMap.entrySet()) {
+                    line.setLength(0);
+                    line.append(tClass).append('.').append(tMethod).append(": ");
+                    appendPadded(line, safetyEntry.getKey()).append(": ").append(safetyEntry.getValue()).append('\n');
+                    writer.append(line);
+                }
+            } finally {
+                writer.close();
             }
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + outputFileName);
+        }
+    }
 
-            pw.close();
-            fw.close();
-        } catch (java.io.IOException e) {
+    // Verdict of every array access with its reason (--details), in the order of the statements
+    public static void ArrayAccesses(String targetDirectory, String tClass, String tMethod,
+            List<ArrayAccessIndex.Access> accesses, ArrayAccessIndex.Verdict[] verdicts) {
+        String outputFileName = arrayAccessFile(targetDirectory, tClass, tMethod);
+        try {
+            Writer writer = open(outputFileName);
+            try {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < verdicts.length; i++) {
+                    line.setLength(0);
+                    line.append(tClass).append('.').append(tMethod).append(": ");
+                    appendPadded(line, accesses.get(i).line).append(": ").append(accesses.get(i)).append(": ")
+                            .append(verdicts[i]).append('\n');
+                    writer.append(line);
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
             System.out.println("Error writing to file " + outputFileName);
         }
     }
 
-    // Generate Points-to-Analysis output as mentioned in the requirements
-    public static void PointerAnalysis(String targetDirectory, String tClass, String tMethod, Map<Integer, LatticeElement> result) {
+    // Generate Points-to-Analysis output as mentioned in the requirements. Allocation sites are
+    // numbered in the order in which they are first printed; sites that first appear together in one
+    // points-to set are numbered in the order of their statements (pointBeforeUnit).
+    public static void PointerAnalysis(String targetDirectory, String tClass, String tMethod,
+            Map<Integer, LatticeElement> result, final Map<Unit, Integer> pointBeforeUnit) {
         // Create a file Output_tclass_points_to_analysis_tmethod.txt
-        String outputFileName = targetDirectory + "/Output_" + tClass + "_points_to_analysis_" + tMethod + ".txt";
-        Set<Unit> nullset = new HashSet<Unit>(); 
-        nullset.add((Unit) null);
+        String outputFileName = pointerAnalysisFile(targetDirectory, tClass, tMethod);
+        Comparator<Unit> statementOrder = new Comparator<Unit>() {
+            public int compare(Unit u1, Unit u2) {
+                return Integer.compare(pointBeforeUnit.get(u1), pointBeforeUnit.get(u2));
+            }
+        };
   
         try {
-            java.io.FileWriter fw = new java.io.FileWriter(outputFileName);
-            java.io.PrintWriter pw = new java.io.PrintWriter(fw);
-
-            for (Integer point: result.keySet()) {
-                if (point == 0) {
-                    continue;
-                }
-                String prefix = tClass + "." + tMethod + ": in" + String.format("%02d", point) + ": ";
-                LatticeElement latticeElement = result.get(point);
-                if (latticeElement instanceof IntegerArrayPointer) {
-                    IntegerArrayPointer intArrayPointer = (IntegerArrayPointer) latticeElement;
-                    Map<Local, Set<Unit>> pointerMap = new HashMap<>(intArrayPointer.pointerMap);
-                    Map<Unit, Integer> assignStmtMap = new HashMap<Unit, Integer>();
-
-                    // Sort variable names
-                    List<Local> locals = new ArrayList<Local>(pointerMap.keySet());
-                    Collections.sort(locals, new Comparator<Local>() {
-                        public int compare(Local l1, Local l2) {
-                            return l1.getName().compareTo(l2.getName());
-                        }
-                    });
-
+            Writer writer = open(outputFileName);
+            try {
+                List<Local> locals = sortedLocals(result.values());
+                Map<Unit, Integer> assignStmtMap = new HashMap<Unit, Integer>();
+                List<Unit> newSites = new ArrayList<>();
+                StringBuilder line = new StringBuilder();
+                for (Integer point : sortedPoints(result.keySet())) {
+                    if (point == 0) {
+                        continue;
+                    }
+                    LatticeElement latticeElement = result.get(point);
+                    if (!(latticeElement instanceof PointerLattice) || latticeElement.isBot()) {
+                        continue;
+                    }
+                    PointerLattice pointerElement = (PointerLattice) latticeElement;
+                    // allocation sites are numbered per program point
+                    assignStmtMap.clear();
                     for (Local local : locals) {
-                        // Skip singleton [null] sets
-                        if(pointerMap.get(local).equals(nullset)) {
+                        Set<Unit> pointsTo = pointerElement.getPointsTo(local);
+                        // Skip untracked locals and singleton [null] sets
+                        if (pointsTo == null || (pointsTo.size() == 1 && pointsTo.contains(null))) {
                             continue;
                         }
-                        // Create pointerSet from pointerMap using assignStmtMap
+                        // number the sites seen for the first time
+                        newSites.clear();
+                        for (Unit stmt : pointsTo) {
+                            if (stmt != null && !assignStmtMap.containsKey(stmt)) {
+                                newSites.add(stmt);
+                            }
+                        }
+                        Collections.sort(newSites, statementOrder);
+                        for (Unit stmt : newSites) {
+                            assignStmtMap.put(stmt, assignStmtMap.size());
+                        }
+                        // Create pointerSet from pointsTo using assignStmtMap
                         Set<String> pointerSet = new HashSet<String>();
-                        for(Unit stmt: pointerMap.get(local)) {
-                            if(stmt == (Unit) null) {
+                        for (Unit stmt : pointsTo) {
+                            if (stmt == null) {
                                 pointerSet.add("null");
-                            }
-                            else {
-                                if(! assignStmtMap.containsKey(stmt)) {
-                                    if (assignStmtMap.size() == 0) {
-                                        assignStmtMap.put(stmt, 0);
-                                    } else {
-                                        assignStmtMap.put(stmt, Collections.max(assignStmtMap.values()) + 1);
-                                    }
-                                }
-                                pointerSet.add("new" + String.format("%02d", assignStmtMap.get(stmt)));
+                            } else {
+                                pointerSet.add(appendPadded(new StringBuilder("new"), assignStmtMap.get(stmt)).toString());
                             }
                         }
-                        pw.println(prefix + local.getName() + ":" + pointerSet.toString());
+                        line.setLength(0);
+                        line.append(tClass).append('.').append(tMethod).append(": in");
+                        appendPadded(line, point).append(": ").append(local.getName()).append(':').append(pointerSet)
+                                .append('\n');
+                        writer.append(line);
                     }
-                    pw.println();
+                    writer.append('\n');
                 }
+            } finally {
+                writer.close();
             }
-
-            pw.close();
-            fw.close();
-        } catch (java.io.IOException e) {
+        } catch (IOException e) {
             System.out.println("Error writing to file " + outputFileName);
         }
     }
@@ -97,43 +194,50 @@ public class Printer{
     // Generate File 1 output as mentioned in the requirements
     public static void IntervalAnalysis(String targetDirectory, String tClass, String tMethod, Map<Integer, LatticeElement> result) {
         // Create a file Output_tclass_interval_analysis_tmethod.txt
-        String outputFileName = targetDirectory + "/Output_" + tClass + "_interval_analysis_" + tMethod + ".txt";
+        String outputFileName = intervalAnalysisFile(targetDirectory, tClass, tMethod);
         try {
-            java.io.FileWriter fw = new java.io.FileWriter(outputFileName);
-            java.io.PrintWriter pw = new java.io.PrintWriter(fw);
-
-            for (Integer point : result.keySet()) {
-                // Skip the entry point (0)
-                if (point == 0) {
-                    continue;
-                }
-                // Pad the point number so it is always 2 digits
-                String statementNumber = String.format("%02d", point);
-                if (((IntervalElement) result.get(point)).intervalMap == null) {
-                    // skip printing bot
-                    continue;
-                }
-                // Sort variables by name
-                List<Local> locals = new ArrayList<>(((IntervalElement) result.get(point)).intervalMap.keySet());
-                Collections.sort(locals, new Comparator<Local>() {
-                    public int compare(Local l1, Local l2) {
-                        return l1.getName().compareTo(l2.getName());
+            Writer writer = open(outputFileName);
+            try {
+                List<Local> locals = sortedLocals(result.values());
+                StringBuilder line = new StringBuilder();
+                for (Integer point : sortedPoints(result.keySet())) {
+                    // Skip the entry point (0)
+                    if (point == 0) {
+                        continue;
+                    }
+                    IntervalLattice element = (IntervalLattice) result.get(point);
+                    if (element.isBot()) {
+                        // skip printing bot
+                        continue;
                     }
-                });
-                for (Local local : locals) {
-                    Pair<Float, Float> interval = ((IntervalElement) result.get(point)).intervalMap.get(local);
-
-                    String lower = interval.first == Float.NEGATIVE_INFINITY ? "-inf" : String.valueOf(Math.round(interval.first));
-                    String upper = interval.second == Float.POSITIVE_INFINITY ? "inf" : String.valueOf(Math.round(interval.second));
-                    pw.print(tClass + "." + tMethod + ": in" + statementNumber + ": ");
-                    pw.println(local.getName() + ":[" + lower + ", " + upper + "]");
+                    for (Local local : locals) {
+                        long[] bounds = element.getBounds(local);
+                        if (bounds == null) {
+                            continue;
+                        }
+                        line.setLength(0);
+                        line.append(tClass).append('.').append(tMethod).append(": in");
+                        appendPadded(line, point).append(": ").append(local.getName()).append(":[");
+                        if (bounds[0] == Long.MIN_VALUE) {
+                            line.append("-inf");
+                        } else {
+                            line.append(bounds[0]);
+                        }
+                        line.append(", ");
+                        if (bounds[1] == Long.MAX_VALUE) {
+                            line.append("inf");
+                        } else {
+                            line.append(bounds[1]);
+                        }
+                        line.append("]\n");
+                        writer.append(line);
+                    }
+                    writer.append('\n');
                 }
-                pw.println();
+            } finally {
+                writer.close();
             }
-
-            pw.close();
-            fw.close();
-        } catch (java.io.IOException e) {
+        } catch (IOException e) {
             System.out.println("Error writing to file " + outputFileName);
         }
     }
@@ -0,0 +1,191 @@
+package pav;
+
+import java.util.*;
+
+import soot.Body;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.Local;
+import soot.jimple.AssignStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.NullConstant;
+import soot.jimple.Stmt;
+import soot.jimple.ArrayRef;
+
+// Product of an interval element and a points-to element, so that both analyses share one
+// fixpoint computation over the same program points. Without reduction every component is
+// computed exactly as it would be on its own. With reduction (arrayLengths is not null):
+//  - a component that becomes bot makes the whole element bot (e.g. a null check that cannot
+//    hold also removes the interval state), and
+//  - an array access that completes normally bounds its index by the largest constant length
+//    of the arrays its base may point to.
+// The points-to analysis only sees allocation sites, so an array from a parameter, a call or a
+// field keeps the points-to set the local had before (e.g. {null}). Such locals (see
+// unknownArrays) take part in neither reduction.
+public class ProductElement implements LatticeElement {
+    public final IntervalLattice intervals;
+    public final PointerLattice pointers;
+    // constant length of each allocation site (null if no reduction is done)
+    private final Map<Unit, Integer> arrayLengths;
+    // integer arrays that may hold arrays the points-to analysis does not see
+    private final Set<Local> unknownArrays;
+
+    public ProductElement(IntervalLattice intervals, PointerLattice pointers, Map<Unit, Integer> arrayLengths,
+            Set<Local> unknownArrays) {
+        this.intervals = intervals;
+        this.pointers = pointers;
+        this.arrayLengths = arrayLengths;
+        this.unknownArrays = unknownArrays;
+    }
+
+    // Integer arrays of a body with a definition that is not a copy of a known array, null or one of
+    // the allocation sites, such as parameters and the results of calls, field reads or casts
+    public static Set<Local> unknownArrays(Body body, Set<Local> integerArrays, Set<Unit> allocationSites) {
+        Set<Local> unknown = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Unit unit : body.getUnits()) {
+                for (ValueBox box : unit.getDefBoxes()) {
+                    Value left = box.getValue();
+                    if (!integerArrays.contains(left) || unknown.contains(left)) {
+                        continue;
+                    }
+                    Value right = unit instanceof AssignStmt ? ((AssignStmt) unit).getRightOp() : null;
+                    boolean known = right instanceof NullConstant || allocationSites.contains(unit)
+                            || (integerArrays.contains(right) && !unknown.contains(right));
+                    if (!known) {
+                        unknown.add((Local) left);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return unknown;
+    }
+
+    public LatticeElement getBot() {
+        return new ProductElement((IntervalLattice) intervals.getBot(), (PointerLattice) pointers.getBot(),
+                arrayLengths, unknownArrays);
+    }
+
+    // the product is bot only if both components are (always the case for reduced elements)
+    public boolean isBot() {
+        return intervals.isBot() && pointers.isBot();
+    }
+
+    // Element with the given components, reusing this element if nothing changed
+    private LatticeElement with(LatticeElement newIntervals, LatticeElement newPointers) {
+        if (arrayLengths != null && (newIntervals.isBot() || newPointers.isBot())) {
+            newIntervals = newIntervals.isBot() ? newIntervals : newIntervals.getBot();
+            newPointers = newPointers.isBot() ? newPointers : newPointers.getBot();
+        }
+        if (newIntervals == intervals && newPointers == pointers) {
+            return this;
+        }
+        return new ProductElement((IntervalLattice) newIntervals, (PointerLattice) newPointers, arrayLengths,
+                unknownArrays);
+    }
+
+    public LatticeElement join(LatticeElement other) {
+        if (!(other instanceof ProductElement)) {
+            throw new IllegalArgumentException("Incompatible types for join");
+        }
+        ProductElement otherProduct = (ProductElement) other;
+        return with(intervals.join(otherProduct.intervals), pointers.join(otherProduct.pointers));
+    }
+
+    public LatticeElement widen(LatticeElement other) {
+        if (!(other instanceof ProductElement)) {
+            throw new IllegalArgumentException("Incompatible types for widening");
+        }
+        ProductElement otherProduct = (ProductElement) other;
+        return with(intervals.widen(otherProduct.intervals), pointers.widen(otherProduct.pointers));
+    }
+
+    public LatticeElement narrow(LatticeElement other) {
+        if (!(other instanceof ProductElement)) {
+            throw new IllegalArgumentException("Incompatible types for narrowing");
+        }
+        ProductElement otherProduct = (ProductElement) other;
+        return with(intervals.narrow(otherProduct.intervals), pointers.narrow(otherProduct.pointers));
+    }
+
+    public LatticeElement retain(LocalIndex localIndex, BitSet liveLocals, LatticeElement initialElement) {
+        ProductElement initialProduct = (ProductElement) initialElement;
+        return with(intervals.retain(localIndex, liveLocals, initialProduct.intervals),
+                pointers.retain(localIndex, liveLocals, initialProduct.pointers));
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
+        LatticeElement before = arrayLengths == null ? intervals : boundIndex(stmt);
+        LatticeElement newPointers = pointers.tf_assignment(stmt, isTrueBranch);
+        if (arrayLengths != null && newPointers.isBot() && !pointers.isBot() && comparesUnknownArray(stmt)) {
+            // a null check of an unknown array can go either way, so it does not make the branch bot
+            newPointers = pointers;
+        }
+        return with(before.tf_assignment(stmt, isTrueBranch), newPointers);
+    }
+
+    private boolean comparesUnknownArray(Stmt stmt) {
+        if (!(stmt instanceof IfStmt)) {
+            return false;
+        }
+        for (ValueBox box : stmt.getUseBoxes()) {
+            if (unknownArrays.contains(box.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Intervals on the normal successor of stmt: if stmt accesses an integer array, its index is
+    // within [0, length - 1] of one of the arrays that the base may point to (the CFG has no
+    // exceptional edges, so the successor is only reached if the access succeeds)
+    private LatticeElement boundIndex(Stmt stmt) {
+        if (!stmt.containsArrayRef() || intervals.isBot() || pointers.isBot()) {
+            return intervals;
+        }
+        ArrayRef arrayRef = stmt.getArrayRef();
+        Value index = arrayRef.getIndex();
+        if (unknownArrays.contains(arrayRef.getBase())) {
+            return intervals; // the base may point to arrays of any length
+        }
+        Set<Unit> basePointsTo = pointers.getPointsTo((Local) arrayRef.getBase());
+        if (basePointsTo == null || !(index instanceof Local)) {
+            return intervals;
+        }
+        int maxLength = -1;
+        for (Unit site : basePointsTo) {
+            if (site == null) {
+                continue; // the access throws if the base is null
+            }
+            Integer length = arrayLengths.get(site);
+            if (length == null) {
+                return intervals; // the length is not a constant
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+        if (maxLength < 0) {
+            return intervals.getBot(); // the base is always null
+        }
+        return intervals.restrict((Local) index, 0, maxLength - 1);
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt) {
+        return tf_assignment(stmt, true);
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof ProductElement) {
+            ProductElement other = (ProductElement) o;
+            return this.intervals.equals(other.intervals) && this.pointers.equals(other.pointers);
+        }
+        return false;
+    }
+
+    public String toString() {
+        return "(" + intervals + ", " + pointers + ")";
+    }
+}
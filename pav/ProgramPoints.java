@@ -0,0 +1,51 @@
+package pav;
+
+import java.util.*;
+
+import soot.Body;
+import soot.Unit;
+import soot.jimple.IfStmt;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.graph.BriefUnitGraph;
+
+// CFG of a method body over program points: there is a point before every unit (the entry unit
+// gets point 0), and an edge between two points for every edge between their units
+public class ProgramPoints {
+    // edges between the points, each with the unit it crosses and whether it is a true branch
+    public final PointGraph graph;
+
+    // program point before every unit
+    public final Map<Unit, Integer> pointBeforeUnit = new HashMap<>();
+
+    public ProgramPoints(Body body) {
+        // Create the CFG for the method
+        UnitGraph unitGraph = new BriefUnitGraph(body);
+        Unit entry = unitGraph.getHeads().get(0);
+
+        // Add a point before every unit
+        int entryPoint = 0;
+        pointBeforeUnit.put(entry, entryPoint);
+        int i = 1;
+        for (Unit u : unitGraph) {
+            if (u != entry) {
+                pointBeforeUnit.put(u, i);
+                i++;
+            }
+        }
+
+        // an edge for every successor of every unit (a unit may list a successor twice, as the
+        // target and the fall-through of an if)
+        PointGraph.Builder builder = new PointGraph.Builder(pointBeforeUnit.size());
+        for (Unit u : unitGraph) {
+            int uPoint = pointBeforeUnit.get(u);
+            builder.addPoint(uPoint);
+            Set<Unit> succs = new LinkedHashSet<>(unitGraph.getSuccsOf(u));
+            for (Unit succ : succs) {
+                // if u was an if statement, check if succ is the true-descendant
+                boolean isTrueBranch = u instanceof IfStmt && succ.equals(((IfStmt) u).getTarget());
+                builder.addEdge(uPoint, pointBeforeUnit.get(succ), u, isTrueBranch);
+            }
+        }
+        graph = builder.build();
+    }
+}
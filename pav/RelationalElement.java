@@ -0,0 +1,559 @@
+package pav;
+
+import java.util.*;
+
+import soot.Local;
+import soot.Value;
+import soot.jimple.AddExpr;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.CastExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.LeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.LongConstant;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.Stmt;
+import soot.jimple.SubExpr;
+
+// Relational analysis (--relational): constraints x - y <= c between the variables of a method
+// (see VariablePacks), kept as one difference-bound matrix per pack. Entry (i, j) of a matrix of n
+// positions, at i * n + j, bounds v_i - v_j, with position 0 standing for the constant 0 and INF
+// for no bound. Matrices are kept closed: every constraint is added with an incremental closure
+// over its pack, in O(n^2), and unchanged packs are shared between elements. As in the interval
+// analysis, bounds are kept within the width of [lowerBound, upperBound]: bounds above it are
+// dropped and bounds below its negation are raised to it. Every entry then takes one of finitely
+// many values, so the ascending chains are finite for Kildall's algorithm. Both are weakenings, so
+// a matrix may be left less than closed, which only costs precision. Arithmetic is over the
+// integers.
+public class RelationalElement implements LatticeElement {
+    public static final RelationalElement bot = new RelationalElement();
+
+    static final long INF = Long.MAX_VALUE;
+
+    private final VariablePacks packs;
+    // bounds above limit are dropped and bounds below -limit are raised to -limit
+    private final long limit;
+    // matrix of every pack, or null for bot
+    private final long[][] matrices;
+
+    public LatticeElement getBot() {
+        return bot;
+    }
+
+    // Top element: no constraints
+    public RelationalElement(VariablePacks packs, AnalysisContext context) {
+        this.packs = packs;
+        this.limit = context.lowerBound > context.upperBound ? 0
+                : (long) Math.floor((double) context.upperBound - context.lowerBound);
+        this.matrices = new long[packs.packCount()][];
+        for (int pack = 0; pack < matrices.length; pack++) {
+            int n = packs.packSize(pack);
+            long[] matrix = new long[n * n];
+            Arrays.fill(matrix, INF);
+            for (int i = 0; i < n; i++) {
+                matrix[i * n + i] = 0;
+            }
+            matrices[pack] = matrix;
+        }
+    }
+
+    private RelationalElement(RelationalElement shape, long[][] matrices) {
+        this.packs = shape.packs;
+        this.limit = shape.limit;
+        this.matrices = matrices;
+    }
+
+    // Private constructor for bot
+    private RelationalElement() {
+        this.packs = null;
+        this.limit = 0;
+        this.matrices = null;
+    }
+
+    public boolean isBot() {
+        return matrices == null;
+    }
+
+    private static long add(long bound1, long bound2) {
+        if (bound1 == INF || bound2 == INF) {
+            return INF;
+        }
+        long sum = bound1 + bound2;
+        // saturate on overflow
+        if (((bound1 ^ sum) & (bound2 ^ sum)) < 0) {
+            return sum < 0 ? INF : Long.MIN_VALUE + 1;
+        }
+        return sum;
+    }
+
+    // Add v_a - v_b <= c to a closed matrix of n positions, with an incremental closure; returns
+    // false if the matrix becomes empty
+    private static boolean addConstraint(long[] matrix, int n, int a, int b, long c) {
+        if (c >= matrix[a * n + b]) {
+            return true;
+        }
+        if (add(c, matrix[b * n + a]) < 0) {
+            return false; // v_b - v_a <= -c cannot hold
+        }
+        long[] toA = new long[n];
+        long[] fromB = new long[n];
+        for (int i = 0; i < n; i++) {
+            toA[i] = matrix[i * n + a];
+            fromB[i] = matrix[b * n + i];
+        }
+        for (int i = 0; i < n; i++) {
+            long viaA = add(toA[i], c);
+            if (viaA == INF) {
+                continue;
+            }
+            for (int j = 0; j < n; j++) {
+                long bound = add(viaA, fromB[j]);
+                if (bound < matrix[i * n + j]) {
+                    matrix[i * n + j] = bound;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Drop all constraints on the position p (a closed matrix stays closed)
+    private static void forget(long[] matrix, int n, int p) {
+        for (int i = 0; i < n; i++) {
+            matrix[i * n + p] = INF;
+            matrix[p * n + i] = INF;
+        }
+        matrix[p * n + p] = 0;
+    }
+
+    // Replace v_p by v_p + d, with d in [lower, upper]
+    private static void shift(long[] matrix, int n, int p, long lower, long upper) {
+        for (int i = 0; i < n; i++) {
+            if (i != p) {
+                matrix[p * n + i] = add(matrix[p * n + i], upper);
+                matrix[i * n + p] = add(matrix[i * n + p], lower == -INF ? INF : -lower);
+            }
+        }
+    }
+
+    private void clampBounds(long[] matrix) {
+        for (int i = 0; i < matrix.length; i++) {
+            if (matrix[i] > limit) {
+                matrix[i] = INF;
+            } else if (matrix[i] < -limit) {
+                matrix[i] = -limit;
+            }
+        }
+    }
+
+    // Copy of this element with a new matrix for one pack, or bot if it is null
+    private LatticeElement withMatrix(int pack, long[] matrix) {
+        if (matrix == null) {
+            return getBot();
+        }
+        clampBounds(matrix);
+        if (Arrays.equals(matrix, matrices[pack])) {
+            return this;
+        }
+        long[][] newMatrices = matrices.clone();
+        newMatrices[pack] = matrix;
+        return new RelationalElement(this, newMatrices);
+    }
+
+    // Upper bound of v_x - v_y (INF if there is none); variables of different packs are only related
+    // through their bounds
+    private long difference(int x, int y) {
+        int pack = packs.pack(x);
+        int n = packs.packSize(pack);
+        long[] matrix = matrices[pack];
+        if (pack == packs.pack(y)) {
+            return matrix[packs.position(x) * n + packs.position(y)];
+        }
+        long[] other = matrices[packs.pack(y)];
+        return add(matrix[packs.position(x) * n], other[packs.position(y)]);
+    }
+
+    // Check that the index of an access base[index] is below the length of the array held by base
+    public boolean indexBelowLength(Value index, Local base) {
+        int length = packs.length(base);
+        if (isBot() || length < 0) {
+            return isBot();
+        }
+        if (index instanceof IntConstant) {
+            // length >= index + 1, that is 0 - length <= -index - 1
+            int pack = packs.pack(length);
+            long bound = matrices[pack][packs.position(length)];
+            return bound != INF && bound <= -((IntConstant) index).value - 1;
+        }
+        int variable = packs.variable(index);
+        if (variable < 0) {
+            return false;
+        }
+        long bound = difference(variable, length);
+        return bound != INF && bound <= -1;
+    }
+
+    public LatticeElement join(LatticeElement other) {
+        if (!(other instanceof RelationalElement)) {
+            throw new IllegalArgumentException("Incompatible types for join");
+        }
+        RelationalElement otherElement = (RelationalElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        long[][] newMatrices = null;
+        for (int pack = 0; pack < matrices.length; pack++) {
+            long[] matrix = matrices[pack];
+            long[] otherMatrix = otherElement.matrices[pack];
+            if (matrix == otherMatrix) {
+                continue;
+            }
+            long[] joined = null;
+            for (int i = 0; i < matrix.length; i++) {
+                if (otherMatrix[i] > matrix[i]) {
+                    if (joined == null) {
+                        joined = matrix.clone();
+                    }
+                    joined[i] = otherMatrix[i];
+                }
+            }
+            if (joined != null) {
+                if (newMatrices == null) {
+                    newMatrices = matrices.clone();
+                }
+                newMatrices[pack] = joined;
+            }
+        }
+        if (newMatrices == null) {
+            return this; // other is already included in this
+        }
+        return new RelationalElement(this, newMatrices);
+    }
+
+    // Widening: bounds that are still growing are dropped
+    public LatticeElement widen(LatticeElement other) {
+        if (!(other instanceof RelationalElement)) {
+            throw new IllegalArgumentException("Incompatible types for widening");
+        }
+        RelationalElement otherElement = (RelationalElement) other;
+        if (this.isBot()) {
+            return otherElement;
+        }
+        if (otherElement.isBot()) {
+            return this;
+        }
+        long[][] newMatrices = matrices.clone();
+        for (int pack = 0; pack < matrices.length; pack++) {
+            long[] matrix = matrices[pack];
+            long[] otherMatrix = otherElement.matrices[pack];
+            for (int i = 0; i < matrix.length; i++) {
+                if (otherMatrix[i] > matrix[i]) {
+                    if (newMatrices[pack] == matrix) {
+                        newMatrices[pack] = matrix.clone();
+                    }
+                    newMatrices[pack][i] = INF;
+                }
+            }
+        }
+        return new RelationalElement(this, newMatrices);
+    }
+
+    // Narrowing: only missing bounds are refined
+    public LatticeElement narrow(LatticeElement other) {
+        if (!(other instanceof RelationalElement)) {
+            throw new IllegalArgumentException("Incompatible types for narrowing");
+        }
+        RelationalElement otherElement = (RelationalElement) other;
+        if (this.isBot() || otherElement.isBot()) {
+            return otherElement;
+        }
+        long[][] newMatrices = matrices.clone();
+        for (int pack = 0; pack < matrices.length; pack++) {
+            long[] matrix = matrices[pack];
+            long[] otherMatrix = otherElement.matrices[pack];
+            for (int i = 0; i < matrix.length; i++) {
+                if (matrix[i] == INF && otherMatrix[i] != INF) {
+                    if (newMatrices[pack] == matrix) {
+                        newMatrices[pack] = matrix.clone();
+                    }
+                    newMatrices[pack][i] = otherMatrix[i];
+                }
+            }
+        }
+        return new RelationalElement(this, newMatrices);
+    }
+
+    // Value of an operand as position + offset in the pack of the variable v (position 0 for a
+    // constant); null if it is neither a constant nor a variable of that pack
+    private long[] operand(Value value, int v) {
+        if (value instanceof IntConstant) {
+            return new long[] { 0, ((IntConstant) value).value };
+        } else if (value instanceof LongConstant) {
+            return new long[] { 0, ((LongConstant) value).value };
+        }
+        int variable = packs.variable(value);
+        if (variable < 0 || packs.pack(variable) != packs.pack(v)) {
+            return null;
+        }
+        return new long[] { packs.position(variable), 0 };
+    }
+
+    // Assignment of the right-hand side to the variable v, in a copy of its matrix (null if empty)
+    private long[] assign(int v, Value rightOp) {
+        int pack = packs.pack(v);
+        int n = packs.packSize(pack);
+        int p = packs.position(v);
+        long[] matrix = matrices[pack].clone();
+
+        long[] source = null;
+        if (rightOp instanceof Local || rightOp instanceof IntConstant || rightOp instanceof LongConstant) {
+            // v = w, v = c
+            source = operand(rightOp, v);
+        } else if (rightOp instanceof CastExpr) {
+            // v = (type) w copies w if the type is at least as wide; v = (type) c wraps c
+            CastExpr castExpr = (CastExpr) rightOp;
+            int width = LongIntervalElement.width(castExpr.getCastType());
+            Value op = castExpr.getOp();
+            if (op instanceof IntConstant || op instanceof LongConstant) {
+                long value = LongIntervalElement.getValueFromConstant(op);
+                source = new long[] { 0, width == 64 ? value : (value << (64 - width)) >> (64 - width) };
+            } else if (op instanceof Local && width >= LongIntervalElement.width(op.getType())) {
+                source = operand(op, v);
+            }
+        } else if (rightOp instanceof LengthExpr) {
+            // v = lengthof a
+            int length = packs.length(((LengthExpr) rightOp).getOp());
+            if (length >= 0 && packs.pack(length) == pack) {
+                source = new long[] { packs.position(length), 0 };
+            }
+        } else if (rightOp instanceof AddExpr || rightOp instanceof SubExpr) {
+            BinopExpr binopExpr = (BinopExpr) rightOp;
+            boolean subtract = rightOp instanceof SubExpr;
+            long[] operand1 = operand(binopExpr.getOp1(), v);
+            long[] operand2 = operand(binopExpr.getOp2(), v);
+            if (operand1 != null && operand2 != null) {
+                if (operand2[0] == 0) {
+                    // v = w + c, v = w - c
+                    source = new long[] { operand1[0], operand1[1] + (subtract ? -operand2[1] : operand2[1]) };
+                } else if (operand1[0] == 0 && !subtract) {
+                    // v = c + w
+                    source = new long[] { operand2[0], operand2[1] + operand1[1] };
+                } else if (operand1[0] != 0) {
+                    // v = w + u, v = w - u: v - w is u (or -u), whose bounds are known
+                    int w = (int) operand1[0];
+                    int u = (int) operand2[0];
+                    long lower = matrix[u] == INF ? -INF : -matrix[u];
+                    long upper = matrix[u * n];
+                    if (subtract) {
+                        long negatedLower = upper == INF ? -INF : -upper;
+                        upper = lower == -INF ? INF : -lower;
+                        lower = negatedLower;
+                    }
+                    if (w == p) {
+                        shift(matrix, n, p, lower, upper);
+                        return matrix;
+                    }
+                    if (u == p && !subtract) {
+                        // v = w + v: v - w was v
+                        long lowerV = matrix[p] == INF ? -INF : -matrix[p];
+                        long upperV = matrix[p * n];
+                        forget(matrix, n, p);
+                        if ((upperV != INF && !addConstraint(matrix, n, p, w, upperV))
+                                || (lowerV != -INF && !addConstraint(matrix, n, w, p, -lowerV))) {
+                            return null;
+                        }
+                        return matrix;
+                    }
+                    forget(matrix, n, p);
+                    if (u == p) {
+                        return matrix; // v = w - v
+                    }
+                    if ((upper != INF && !addConstraint(matrix, n, p, w, upper))
+                            || (lower != -INF && !addConstraint(matrix, n, w, p, -lower))) {
+                        return null;
+                    }
+                    return matrix;
+                }
+            }
+        }
+
+        if (source == null) {
+            forget(matrix, n, p);
+            return matrix;
+        }
+        int q = (int) source[0];
+        long offset = source[1];
+        if (q == p) {
+            shift(matrix, n, p, offset, offset);
+        } else {
+            // v - v_q = offset
+            forget(matrix, n, p);
+            if (!addConstraint(matrix, n, p, q, offset) || !addConstraint(matrix, n, q, p, -offset)) {
+                return null;
+            }
+        }
+        if (rightOp instanceof LengthExpr && !addConstraint(matrix, n, 0, p, 0)) {
+            return null; // lengths are not negative
+        }
+        return matrix;
+    }
+
+    // Constraint of a comparison that holds: op1 opSymbol op2
+    private LatticeElement compare(String opSymbol, Value op1, Value op2) {
+        int v = packs.variable(op1) >= 0 ? packs.variable(op1) : packs.variable(op2);
+        if (v < 0) {
+            return this;
+        }
+        long[] operand1 = operand(op1, v);
+        long[] operand2 = operand(op2, v);
+        if (operand1 == null || operand2 == null) {
+            return this;
+        }
+        int pack = packs.pack(v);
+        int n = packs.packSize(pack);
+        int a = (int) operand1[0];
+        int b = (int) operand2[0];
+        // a + offsetA op b + offsetB, as v_a - v_b op offsetB - offsetA
+        long c = operand2[1] - operand1[1];
+        long[] matrix = matrices[pack].clone();
+        boolean feasible;
+        switch (opSymbol) {
+            case "<":
+                feasible = addConstraint(matrix, n, a, b, c - 1);
+                break;
+            case "<=":
+                feasible = addConstraint(matrix, n, a, b, c);
+                break;
+            case ">":
+                feasible = addConstraint(matrix, n, b, a, -c - 1);
+                break;
+            case ">=":
+                feasible = addConstraint(matrix, n, b, a, -c);
+                break;
+            case "==":
+                feasible = addConstraint(matrix, n, a, b, c) && addConstraint(matrix, n, b, a, -c);
+                break;
+            default:
+                return this;
+        }
+        return withMatrix(pack, feasible ? matrix : null);
+    }
+
+    // isTrueBranch is False if an alternate branch is taken (like the false branch
+    // of an if statement)
+    public LatticeElement tf_assignment(Stmt stmt, boolean isTrueBranch) {
+        if (this.isBot()) {
+            return bot; // bot is always transformed to bot
+        }
+        if (stmt instanceof AssignStmt) {
+            AssignStmt assignStmt = (AssignStmt) stmt;
+            Value leftOp = assignStmt.getLeftOp();
+            Value rightOp = assignStmt.getRightOp();
+            int v = packs.variable(leftOp);
+            if (v >= 0) {
+                return withMatrix(packs.pack(v), assign(v, rightOp));
+            }
+            int length = packs.length(leftOp);
+            if (length >= 0) {
+                // a = newarray (int)[size], a = b, or any other array
+                Value size = null;
+                if (rightOp instanceof NewArrayExpr) {
+                    size = ((NewArrayExpr) rightOp).getSize();
+                } else if (packs.length(rightOp) >= 0 && packs.pack(packs.length(rightOp)) == packs.pack(length)) {
+                    int pack = packs.pack(length);
+                    int n = packs.packSize(pack);
+                    int p = packs.position(length);
+                    int q = packs.position(packs.length(rightOp));
+                    long[] matrix = matrices[pack].clone();
+                    if (p != q) {
+                        forget(matrix, n, p);
+                        if (!addConstraint(matrix, n, p, q, 0) || !addConstraint(matrix, n, q, p, 0)) {
+                            matrix = null;
+                        }
+                    }
+                    return withMatrix(pack, matrix);
+                }
+                long[] matrix = assign(length, size);
+                if (matrix != null && size != null) {
+                    // the allocation throws unless the size is not negative
+                    int n = packs.packSize(packs.pack(length));
+                    if (!addConstraint(matrix, n, 0, packs.position(length), 0)) {
+                        matrix = null;
+                    }
+                }
+                return withMatrix(packs.pack(length), matrix);
+            }
+            return this;
+        } else if (stmt instanceof IfStmt) {
+            ConditionExpr condition = (ConditionExpr) ((IfStmt) stmt).getCondition();
+            String opSymbol = null;
+            if (condition instanceof LtExpr) {
+                opSymbol = isTrueBranch ? "<" : ">=";
+            } else if (condition instanceof GtExpr) {
+                opSymbol = isTrueBranch ? ">" : "<=";
+            } else if (condition instanceof LeExpr) {
+                opSymbol = isTrueBranch ? "<=" : ">";
+            } else if (condition instanceof GeExpr) {
+                opSymbol = isTrueBranch ? ">=" : "<";
+            } else if (condition instanceof EqExpr) {
+                opSymbol = isTrueBranch ? "==" : "!=";
+            } else if (condition instanceof NeExpr) {
+                opSymbol = isTrueBranch ? "!=" : "==";
+            }
+            return opSymbol == null ? this : compare(opSymbol, condition.getOp1(), condition.getOp2());
+        } else if (stmt instanceof IdentityStmt) {
+            Value leftOp = ((IdentityStmt) stmt).getLeftOp();
+            int v = packs.variable(leftOp) >= 0 ? packs.variable(leftOp) : packs.length(leftOp);
+            if (v >= 0) {
+                return withMatrix(packs.pack(v), assign(v, null));
+            }
+        }
+        return this; // unhandled statements
+    }
+
+    public LatticeElement tf_assignment(Stmt stmt) {
+        return tf_assignment(stmt, true);
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof RelationalElement) {
+            RelationalElement other = (RelationalElement) o;
+            if (this.isBot() || other.isBot()) {
+                return this.isBot() && other.isBot();
+            }
+            for (int pack = 0; pack < matrices.length; pack++) {
+                if (matrices[pack] != other.matrices[pack] && !Arrays.equals(matrices[pack], other.matrices[pack])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        if (isBot()) {
+            return "bot";
+        }
+        List<String> constraints = new ArrayList<>();
+        for (int x = 0; x < packs.size(); x++) {
+            for (int y = 0; y < packs.size(); y++) {
+                if (x != y && packs.pack(x) >= 0 && packs.pack(x) == packs.pack(y) && difference(x, y) != INF) {
+                    constraints.add(packs.name(x) + " - " + packs.name(y) + " <= " + difference(x, y));
+                }
+            }
+        }
+        return constraints.toString();
+    }
+}
@@ -0,0 +1,253 @@
+package pav;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import soot.Body;
+import soot.Unit;
+
+// On-disk cache of the output files of doAnalysis. An entry is a directory named by the SHA-256
+// of the method's Jimple body and of every setting that can change the results, so restoring it
+// gives exactly the files the analysis would write. Once the cache grows beyond maxBytes, the
+// least recently used entries (by modification time, which is updated on every hit) are removed.
+// In interprocedural mode, the summaries of the callees are part of the key, and an entry also
+// holds the summary of the method itself. With --binary, an entry also holds the binary record.
+public class ResultCache {
+    // options that do not change the output files
+    private static final Set<String> NEUTRAL_OPTIONS = new HashSet<>(
+            Arrays.asList("batch", "threads", "stats", "cache", "cache-size", "server", "port", "incremental",
+                    "binary", "lazy", "input", "lean", "dot", "metrics"));
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SUMMARY_FILE = "summary";
+    private static final String RECORD_FILE = "record";
+
+    private final File directory;
+    private final long maxBytes;
+    // size of all entries (guarded by this)
+    private long totalBytes;
+
+    public final AtomicInteger hits = new AtomicInteger();
+    public final AtomicInteger misses = new AtomicInteger();
+
+    public ResultCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        directory.mkdirs();
+        for (File entry : entries()) {
+            if (entry.getName().contains(TEMP_SUFFIX)) {
+                delete(entry); // left over from an interrupted run
+            } else {
+                totalBytes += size(entry);
+            }
+        }
+        if (totalBytes > maxBytes) {
+            evict();
+        }
+    }
+
+    // Key of the results of a method body under the given configuration
+    public String key(Body body, AnalysisContext context) {
+        StringBuilder text = new StringBuilder();
+        text.append(body.getMethod().getSignature()).append('\n');
+        text.append(context.tClass).append('.').append(context.tMethod).append('\n');
+        text.append(configuration(context));
+        // summaries of the callees, by the position of the call site
+        int position = 0;
+        for (Unit unit : body.getUnits()) {
+            MethodSummary summary = context.callSummary(unit);
+            if (summary != null) {
+                text.append("call ").append(position).append('\n').append(summary);
+            }
+            position++;
+        }
+        text.append(body.toString());
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    // Bounds and options of context that can change the results, one per line
+    public static String configuration(AnalysisContext context) {
+        StringBuilder text = new StringBuilder();
+        text.append(context.lowerBound).append(' ').append(context.upperBound).append('\n');
+        for (Map.Entry<String, String> option : new TreeMap<>(context.options()).entrySet()) {
+            if (!NEUTRAL_OPTIONS.contains(option.getKey())) {
+                text.append("--").append(option.getKey()).append('=').append(option.getValue()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    // Copy the cached output files of key to the target directory of context; returns false on a miss
+    public boolean restore(String key, AnalysisContext context) {
+        File entry = new File(directory, key);
+        File[] files = entry.listFiles();
+        if (files == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        try {
+            for (File file : files) {
+                if (!file.getName().equals(SUMMARY_FILE) && !file.getName().equals(RECORD_FILE)) {
+                    Files.copy(file.toPath(), Paths.get(context.targetDirectory, file.getName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            misses.incrementAndGet(); // evicted while it was being read
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        return true;
+    }
+
+    // Summary stored with key, or null if it has none
+    public MethodSummary summary(String key) {
+        try {
+            return MethodSummary.parse(Files.readAllLines(new File(new File(directory, key), SUMMARY_FILE).toPath(),
+                    StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Binary record (see ResultFormat) stored with key, or null if it has none
+    public byte[] record(String key) {
+        try {
+            return Files.readAllBytes(new File(new File(directory, key), RECORD_FILE).toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Store the output files that doAnalysis has just written for context, the summary it returned
+    // and the binary record of its results (if not null)
+    public void store(String key, AnalysisContext context, MethodSummary summary, byte[] record) {
+        File entry = new File(directory, key);
+        if (entry.exists()) {
+            // an entry stored without --binary gets the record that it lacks
+            File recordFile = new File(entry, RECORD_FILE);
+            if (record != null && !recordFile.exists()) {
+                File temp = new File(entry, RECORD_FILE + TEMP_SUFFIX + Thread.currentThread().getId());
+                try {
+                    Files.write(temp.toPath(), record);
+                    Files.move(temp.toPath(), recordFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    synchronized (this) {
+                        totalBytes += record.length;
+                    }
+                } catch (IOException e) {
+                    temp.delete();
+                }
+            }
+            return;
+        }
+        // entries are built under a temporary name and then renamed, so a reader never sees a
+        // partial entry
+        File temp = new File(directory, key + TEMP_SUFFIX + Thread.currentThread().getId());
+        List<String> outputs = new ArrayList<>(Arrays.asList(
+                Printer.intervalAnalysisFile(context.targetDirectory, context.tClass, context.tMethod),
+                Printer.pointerAnalysisFile(context.targetDirectory, context.tClass, context.tMethod),
+                Printer.arraySafetyFile(context.targetDirectory, context.tClass, context.tMethod)));
+        if (context.flag("details")) {
+            outputs.add(Printer.arrayAccessFile(context.targetDirectory, context.tClass, context.tMethod));
+        }
+        try {
+            temp.mkdirs();
+            long bytes = 0;
+            for (String output : outputs) {
+                Path source = Paths.get(output);
+                Files.copy(source, temp.toPath().resolve(source.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                bytes += Files.size(source);
+            }
+            if (summary != null) {
+                Path summaryFile = temp.toPath().resolve(SUMMARY_FILE);
+                Files.write(summaryFile, summary.toString().getBytes(StandardCharsets.UTF_8));
+                bytes += Files.size(summaryFile);
+            }
+            if (record != null) {
+                Files.write(temp.toPath().resolve(RECORD_FILE), record);
+                bytes += record.length;
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                totalBytes += bytes;
+                if (totalBytes > maxBytes) {
+                    evict();
+                }
+            }
+        } catch (IOException e) {
+            delete(temp); // the cache is only an optimization
+        }
+    }
+
+    // Remove the least recently used entries until the cache fits in maxBytes
+    private synchronized void evict() {
+        List<File> entries = new ArrayList<>();
+        Map<File, Long> sizes = new HashMap<>();
+        final Map<File, Long> lastUsed = new HashMap<>();
+        totalBytes = 0;
+        for (File entry : entries()) {
+            if (!entry.getName().contains(TEMP_SUFFIX)) {
+                entries.add(entry);
+                sizes.put(entry, size(entry));
+                lastUsed.put(entry, entry.lastModified());
+                totalBytes += sizes.get(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(lastUsed.get(f1), lastUsed.get(f2));
+            }
+        });
+        for (File entry : entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            delete(entry);
+            totalBytes -= sizes.get(entry);
+        }
+    }
+
+    private File[] entries() {
+        File[] entries = directory.listFiles();
+        return entries == null ? new File[0] : entries;
+    }
+
+    private static long size(File entry) {
+        long bytes = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static void delete(File entry) {
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        entry.delete();
+    }
+}
@@ -0,0 +1,89 @@
+package pav;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Reader of a binary result file (see ResultFileWriter). Only the index is read into the heap;
+// records are read through memory-mapped windows of the file, so a query over all the records of
+// a large file only touches the pages it needs.
+public class ResultFileReader implements Closeable {
+    // Position of the record of one method
+    public static class Entry {
+        public final String tClass;
+        public final String tMethod;
+        final long offset;
+        final int length;
+
+        Entry(String tClass, String tMethod, long offset, int length) {
+            this.tClass = tClass;
+            this.tMethod = tMethod;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // size of the windows in which the file is mapped (at least the size of a record)
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final List<Entry> entries = new ArrayList<>();
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    public ResultFileReader(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        long size = channel.size();
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 9));
+        if (size < 4 + 1 + ResultFileWriter.TRAILER_SIZE || header.getInt() != ResultFileWriter.HEADER_MAGIC) {
+            channel.close();
+            throw new IOException("Not a binary result file: " + fileName);
+        }
+        int version = (int) ResultFormat.readVarint(header);
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - ResultFileWriter.TRAILER_SIZE,
+                ResultFileWriter.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        if (version != ResultFileWriter.VERSION || trailer.getInt() != ResultFileWriter.TRAILER_MAGIC) {
+            channel.close();
+            throw new IOException("Unsupported or incomplete binary result file: " + fileName);
+        }
+
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+                size - ResultFileWriter.TRAILER_SIZE - indexOffset);
+        int records = (int) ResultFormat.readVarint(index);
+        for (int i = 0; i < records; i++) {
+            String tClass = ResultFormat.readString(index);
+            String tMethod = ResultFormat.readString(index);
+            long offset = ResultFormat.readVarint(index);
+            int length = (int) ResultFormat.readVarint(index);
+            entries.add(new Entry(tClass, tMethod, offset, length));
+        }
+    }
+
+    // Records in the order in which they were written
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    // Record of an entry, read through the mapped window that holds it
+    public ByteBuffer record(Entry entry) throws IOException {
+        if (window == null || entry.offset < windowStart
+                || entry.offset + entry.length > windowStart + window.capacity()) {
+            windowStart = entry.offset;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(Math.max(WINDOW_SIZE, entry.length), channel.size() - windowStart));
+        }
+        ByteBuffer record = window.duplicate();
+        record.position((int) (entry.offset - windowStart));
+        record.limit((int) (entry.offset - windowStart) + entry.length);
+        return record.slice();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,51 @@
+package pav;
+
+import java.io.*;
+
+// A binary result file (--binary=file): a header, the records of the analyzed methods (see
+// ResultFormat) in the order in which they were appended, an index of the records by class and
+// method, and a trailer with the position of the index. Methods analyzed in parallel append their
+// records one at a time; the index is kept in memory and written by close.
+//   header   magic "PAVR", format version (varint)
+//   index    number of records, then for each: class, method, offset and length (varints)
+//   trailer  offset of the index (8 bytes, big-endian), magic "PAVI"
+public class ResultFileWriter {
+    static final int HEADER_MAGIC = 0x50415652; // "PAVR"
+    static final int TRAILER_MAGIC = 0x50415649; // "PAVI"
+    static final int VERSION = 1;
+    static final int TRAILER_SIZE = 12;
+
+    public final String fileName;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private int records = 0;
+    // bytes written so far (DataOutputStream counts in an int, which overflows past 2 GB)
+    private long position;
+
+    public ResultFileWriter(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+        out.writeInt(HEADER_MAGIC);
+        ResultFormat.writeVarint(out, VERSION);
+        position = out.size();
+    }
+
+    public synchronized void append(String tClass, String tMethod, byte[] record) throws IOException {
+        ResultFormat.writeString(index, tClass);
+        ResultFormat.writeString(index, tMethod);
+        ResultFormat.writeVarint(index, position);
+        ResultFormat.writeVarint(index, record.length);
+        records++;
+        out.write(record);
+        position += record.length;
+    }
+
+    public synchronized void close() throws IOException {
+        long indexOffset = position;
+        ResultFormat.writeVarint(out, records);
+        index.writeTo(out);
+        out.writeLong(indexOffset);
+        out.writeInt(TRAILER_MAGIC);
+        out.close();
+    }
+}
@@ -0,0 +1,255 @@
+package pav;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import soot.Local;
+import soot.Unit;
+
+// Binary encoding of the results of one method, a compact alternative to its three text files for
+// whole-program runs (see ResultFileWriter). Integers are LEB128 varints, signed ones zigzag-encoded,
+// and strings are a varint length followed by UTF-8 bytes. A record has three sections, with the
+// verdicts first so that safety queries only read the start of each record:
+//   safety     n, then n times the statement number and the verdict (0 safe, 1 potentially unsafe)
+//   intervals  number of points, bot column (1 for every point that is bot), local names, then one
+//              column per local with its interval at every point that is not bot: the lower bound
+//              (0 if the local is untracked, 1 for -inf, else zigzag + 2) and, if tracked, the upper
+//              bound (0 for inf, else zigzag + 1)
+//   pointers   number of points, bot column, allocation sites (their statement numbers), local names,
+//              then one column per local with its points-to set at every point that is not bot: 0 if
+//              the local is untracked, else the number of words + 1 and the words of a bitset in which
+//              bit 0 is null and bit i + 1 is site i
+public class ResultFormat {
+    public static final byte SAFE = 0;
+    public static final byte POTENTIALLY_UNSAFE = 1;
+
+    // Encode the results of a method; sites are its allocation sites, numbered in statement order
+    public static void encode(OutputStream out, Map<Integer, LatticeElement> resultIntervalAnalysis,
+            Map<Integer, LatticeElement> resultPointerAnalysis, Map<Integer, String> safetyMap, Set<Unit> sites,
+            final Map<Unit, Integer> pointBeforeUnit) throws IOException {
+        List<Integer> lines = new ArrayList<>(safetyMap.keySet());
+        Collections.sort(lines);
+        writeVarint(out, lines.size());
+        for (Integer line : lines) {
+            writeVarint(out, line);
+            out.write(safetyMap.get(line).equals("Safe") ? SAFE : POTENTIALLY_UNSAFE);
+        }
+
+        int points = points(resultIntervalAnalysis);
+        List<Local> locals = locals(resultIntervalAnalysis);
+        writeVarint(out, points);
+        writeBotColumn(out, resultIntervalAnalysis, points);
+        writeNames(out, locals);
+        for (Local local : locals) {
+            for (int point = 0; point < points; point++) {
+                LatticeElement element = resultIntervalAnalysis.get(point);
+                if (element == null || element.isBot()) {
+                    continue;
+                }
+                long[] bounds = ((IntervalLattice) element).getBounds(local);
+                if (bounds == null) {
+                    writeVarint(out, 0);
+                    continue;
+                }
+                writeVarint(out, bounds[0] == Long.MIN_VALUE ? 1 : zigzag(bounds[0]) + 2);
+                writeVarint(out, bounds[1] == Long.MAX_VALUE ? 0 : zigzag(bounds[1]) + 1);
+            }
+        }
+
+        List<Unit> siteList = new ArrayList<>(sites);
+        Collections.sort(siteList, new Comparator<Unit>() {
+            public int compare(Unit u1, Unit u2) {
+                return Integer.compare(pointBeforeUnit.get(u1), pointBeforeUnit.get(u2));
+            }
+        });
+        Map<Unit, Integer> siteIndex = new HashMap<>();
+        points = points(resultPointerAnalysis);
+        locals = locals(resultPointerAnalysis);
+        writeVarint(out, points);
+        writeBotColumn(out, resultPointerAnalysis, points);
+        writeVarint(out, siteList.size());
+        for (Unit site : siteList) {
+            siteIndex.put(site, siteIndex.size());
+            writeVarint(out, pointBeforeUnit.get(site));
+        }
+        writeNames(out, locals);
+        long[] words = new long[(siteList.size() + 1 + 63) / 64];
+        for (Local local : locals) {
+            for (int point = 0; point < points; point++) {
+                LatticeElement element = resultPointerAnalysis.get(point);
+                if (element == null || element.isBot()) {
+                    continue;
+                }
+                Set<Unit> pointsTo = ((PointerLattice) element).getPointsTo(local);
+                if (pointsTo == null) {
+                    writeVarint(out, 0);
+                    continue;
+                }
+                Arrays.fill(words, 0);
+                for (Unit site : pointsTo) {
+                    int bit = site == null ? 0 : siteIndex.get(site) + 1;
+                    words[bit >>> 6] |= 1L << bit;
+                }
+                writeVarint(out, words.length + 1);
+                for (long word : words) {
+                    writeVarint(out, word);
+                }
+            }
+        }
+    }
+
+    // Number of points of a result (points are numbered from 0)
+    private static int points(Map<Integer, LatticeElement> result) {
+        int points = 0;
+        for (Integer point : result.keySet()) {
+            points = Math.max(points, point + 1);
+        }
+        return points;
+    }
+
+    // Locals of all the elements of a result that are not bot, sorted by name
+    private static List<Local> locals(Map<Integer, LatticeElement> result) {
+        Set<Local> locals = new HashSet<>();
+        for (LatticeElement element : result.values()) {
+            if (element.isBot()) {
+                continue;
+            }
+            if (element instanceof IntervalLattice) {
+                locals.addAll(((IntervalLattice) element).getLocals());
+            } else {
+                locals.addAll(((PointerLattice) element).getLocals());
+            }
+        }
+        List<Local> sorted = new ArrayList<>(locals);
+        Collections.sort(sorted, new Comparator<Local>() {
+            public int compare(Local l1, Local l2) {
+                return l1.getName().compareTo(l2.getName());
+            }
+        });
+        return sorted;
+    }
+
+    private static void writeBotColumn(OutputStream out, Map<Integer, LatticeElement> result, int points)
+            throws IOException {
+        for (int point = 0; point < points; point++) {
+            LatticeElement element = result.get(point);
+            out.write(element == null || element.isBot() ? 1 : 0);
+        }
+    }
+
+    private static void writeNames(OutputStream out, List<Local> locals) throws IOException {
+        writeVarint(out, locals.size());
+        for (Local local : locals) {
+            writeString(out, local.getName());
+        }
+    }
+
+    public static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Verdicts of a record as pairs of statement number and verdict; leaves in at the intervals section
+    public static List<int[]> readSafety(ByteBuffer in) {
+        int n = (int) readVarint(in);
+        List<int[]> verdicts = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int line = (int) readVarint(in);
+            verdicts.add(new int[] { line, in.get() });
+        }
+        return verdicts;
+    }
+
+    // Interval section of a record, starting after the safety section
+    public static class Intervals {
+        public final int points;
+        public final boolean[] bot;
+        public final List<String> locals = new ArrayList<>();
+        // bounds by local and point (null if the local is untracked or the point is bot)
+        public final Long[][] lower;
+        public final Long[][] upper;
+
+        public Intervals(ByteBuffer in) {
+            points = (int) readVarint(in);
+            bot = new boolean[points];
+            for (int point = 0; point < points; point++) {
+                bot[point] = in.get() != 0;
+            }
+            int n = (int) readVarint(in);
+            for (int i = 0; i < n; i++) {
+                locals.add(readString(in));
+            }
+            lower = new Long[n][points];
+            upper = new Long[n][points];
+            for (int i = 0; i < n; i++) {
+                for (int point = 0; point < points; point++) {
+                    if (bot[point]) {
+                        continue;
+                    }
+                    long code = readVarint(in);
+                    if (code == 0) {
+                        continue;
+                    }
+                    lower[i][point] = code == 1 ? Long.MIN_VALUE : unzigzag(code - 2);
+                    code = readVarint(in);
+                    upper[i][point] = code == 0 ? Long.MAX_VALUE : unzigzag(code - 1);
+                }
+            }
+        }
+
+        // Text of the interval file of the method (as written by Printer.IntervalAnalysis)
+        public void print(PrintStream out, String prefix) {
+            for (int point = 1; point < points; point++) {
+                if (bot[point]) {
+                    continue;
+                }
+                for (int i = 0; i < locals.size(); i++) {
+                    if (lower[i][point] == null) {
+                        continue;
+                    }
+                    out.println(prefix + "in" + String.format("%02d", point) + ": " + locals.get(i) + ":["
+                            + (lower[i][point] == Long.MIN_VALUE ? "-inf" : lower[i][point].toString()) + ", "
+                            + (upper[i][point] == Long.MAX_VALUE ? "inf" : upper[i][point].toString()) + "]");
+                }
+                out.println();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package pav;
+
+import java.util.*;
+
+import soot.Unit;
+
+// Program-point graph in which chains of statements that cannot change any fact are collapsed.
+// A point whose only predecessor holds such a statement (with a single successor) always has the
+// same fact as that predecessor, so it is represented by it and removed from the graph. Loop
+// heads and other join points are never removed, so widening happens at the same places.
+public class SparseGraph {
+    public final PointGraph graph;
+
+    // representative of every point of the original graph
+    private final Map<Integer, Integer> representative = new HashMap<>();
+
+    // relevantUnits are the statements that may change a fact; all others are identity transfers
+    public SparseGraph(PointGraph givenGraph, Set<Unit> relevantUnits) {
+        // number of predecessors of every point
+        int[] predecessorCount = new int[givenGraph.size];
+        for (int e = 0; e < givenGraph.edgeCount(); e++) {
+            predecessorCount[givenGraph.targets[e]]++;
+        }
+
+        // points whose statement is an identity transfer with a single successor
+        boolean[] passThrough = new boolean[givenGraph.size];
+        for (int point : givenGraph.points()) {
+            int first = givenGraph.offsets[point];
+            if (givenGraph.offsets[point + 1] - first == 1 && !relevantUnits.contains(givenGraph.statements[first])) {
+                passThrough[point] = true;
+            }
+        }
+
+        // breadth-first from the entry, so the only predecessor of a point is visited before it
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        representative.put(0, 0);
+        while (!queue.isEmpty()) {
+            int point = queue.poll();
+            for (int e = givenGraph.offsets[point]; e < givenGraph.offsets[point + 1]; e++) {
+                int succ = givenGraph.targets[e];
+                if (representative.containsKey(succ)) {
+                    continue;
+                }
+                if (passThrough[point] && predecessorCount[succ] == 1 && succ != 0) {
+                    representative.put(succ, representative.get(point));
+                } else {
+                    representative.put(succ, succ);
+                }
+                queue.add(succ);
+            }
+        }
+        // unreachable points are kept as they are
+        for (int point : givenGraph.points()) {
+            representative.putIfAbsent(point, point);
+        }
+
+        // every chain ends in one point, whose edges become the edges of the representative
+        PointGraph.Builder builder = new PointGraph.Builder(givenGraph.size);
+        for (int point : givenGraph.points()) {
+            int rep = representative.get(point);
+            builder.addPoint(rep);
+            for (int e = givenGraph.offsets[point]; e < givenGraph.offsets[point + 1]; e++) {
+                int succ = givenGraph.targets[e];
+                if (representative.get(succ) == rep && succ != rep) {
+                    continue; // edge inside a chain
+                }
+                builder.addEdge(rep, succ, givenGraph.statements[e], givenGraph.trueBranch[e]);
+            }
+        }
+        graph = builder.build();
+    }
+
+    // Facts of all points of the original graph, from the facts of the sparse graph
+    public Map<Integer, LatticeElement> expand(Map<Integer, LatticeElement> facts) {
+        Map<Integer, LatticeElement> expanded = new HashMap<>();
+        for (Integer point : representative.keySet()) {
+            expanded.put(point, facts.get(representative.get(point)));
+        }
+        return expanded;
+    }
+
+    // Number of points of the sparse graph
+    public int size() {
+        return graph.pointCount();
+    }
+}
@@ -0,0 +1,177 @@
+package pav;
+
+import java.util.*;
+
+import soot.Body;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.AddExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.CastExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.LengthExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.SubExpr;
+
+// Variables of the relational analysis of one method, computed once and shared by all its
+// elements: the integer locals, and for every integer-array local the length of the array it holds.
+// Variables that occur together in a statement the domain can relate (copies, casts, additions and
+// subtractions, comparisons, allocations, lengths, and accesses a[i]) are packed together, up to
+// MAX_PACK_SIZE variables, and each pack gets its own difference-bound matrix. Only the packs with
+// an array length are kept, since the others cannot decide any access; their variables are not
+// tracked. Position 0 of every pack is the constant 0.
+public class VariablePacks {
+    // larger packs are not merged, which keeps each closure within MAX_PACK_SIZE^2 steps
+    public static final int MAX_PACK_SIZE = 64;
+
+    private final Map<Local, Integer> integers = new HashMap<>();
+    private final Map<Local, Integer> lengths = new HashMap<>();
+    // pack of every variable, and its position in the pack
+    private final int[] packOf;
+    private final int[] positionOf;
+    // number of positions of every pack (its variables and 0)
+    private final int[] packSizes;
+    private final String[] names;
+
+    public VariablePacks(Body body, Collection<Local> integerLocals, Collection<Local> integerArrays) {
+        List<String> variableNames = new ArrayList<>();
+        for (Local local : integerLocals) {
+            integers.put(local, variableNames.size());
+            variableNames.add(local.getName());
+        }
+        for (Local local : integerArrays) {
+            lengths.put(local, variableNames.size());
+            variableNames.add(local.getName() + ".length");
+        }
+        names = variableNames.toArray(new String[0]);
+
+        // union-find over the variables
+        int[] parent = new int[names.length];
+        int[] sizeOfRoot = new int[names.length];
+        for (int v = 0; v < parent.length; v++) {
+            parent[v] = v;
+            sizeOfRoot[v] = 1;
+        }
+        for (Unit unit : body.getUnits()) {
+            if (unit instanceof AssignStmt) {
+                AssignStmt assignStmt = (AssignStmt) unit;
+                Value left = assignStmt.getLeftOp();
+                Value right = assignStmt.getRightOp();
+                if (right instanceof Local || right instanceof CastExpr) {
+                    if (right instanceof CastExpr) {
+                        right = ((CastExpr) right).getOp();
+                    }
+                    union(parent, sizeOfRoot, integers.get(left), integers.get(right));
+                    union(parent, sizeOfRoot, lengths.get(left), lengths.get(right));
+                } else if (right instanceof AddExpr || right instanceof SubExpr) {
+                    union(parent, sizeOfRoot, integers.get(left), integers.get(((BinopExpr) right).getOp1()));
+                    union(parent, sizeOfRoot, integers.get(left), integers.get(((BinopExpr) right).getOp2()));
+                } else if (right instanceof NewArrayExpr) {
+                    union(parent, sizeOfRoot, lengths.get(left), integers.get(((NewArrayExpr) right).getSize()));
+                } else if (right instanceof LengthExpr) {
+                    union(parent, sizeOfRoot, integers.get(left), lengths.get(((LengthExpr) right).getOp()));
+                }
+            } else if (unit instanceof IfStmt) {
+                ConditionExpr condition = (ConditionExpr) ((IfStmt) unit).getCondition();
+                union(parent, sizeOfRoot, integers.get(condition.getOp1()), integers.get(condition.getOp2()));
+            }
+            for (ValueBox box : unit.getUseAndDefBoxes()) {
+                if (box.getValue() instanceof ArrayRef) {
+                    ArrayRef arrayRef = (ArrayRef) box.getValue();
+                    union(parent, sizeOfRoot, integers.get(arrayRef.getIndex()), lengths.get(arrayRef.getBase()));
+                }
+            }
+        }
+
+        // number the packs with a length and the positions in them, in the order of the variables
+        boolean[] hasLength = new boolean[names.length];
+        for (int v : lengths.values()) {
+            hasLength[find(parent, v)] = true;
+        }
+        packOf = new int[names.length];
+        positionOf = new int[names.length];
+        int[] packOfRoot = new int[names.length];
+        Arrays.fill(packOfRoot, -1);
+        List<Integer> sizes = new ArrayList<>();
+        for (int v = 0; v < names.length; v++) {
+            int root = find(parent, v);
+            if (!hasLength[root]) {
+                packOf[v] = -1;
+                continue;
+            }
+            if (packOfRoot[root] < 0) {
+                packOfRoot[root] = sizes.size();
+                sizes.add(1);
+            }
+            int pack = packOfRoot[root];
+            packOf[v] = pack;
+            positionOf[v] = sizes.get(pack);
+            sizes.set(pack, sizes.get(pack) + 1);
+        }
+        packSizes = new int[sizes.size()];
+        for (int pack = 0; pack < packSizes.length; pack++) {
+            packSizes[pack] = sizes.get(pack);
+        }
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] parent, int[] sizeOfRoot, Integer v1, Integer v2) {
+        if (v1 == null || v2 == null) {
+            return;
+        }
+        int root1 = find(parent, v1);
+        int root2 = find(parent, v2);
+        if (root1 != root2 && sizeOfRoot[root1] + sizeOfRoot[root2] <= MAX_PACK_SIZE) {
+            parent[root1] = root2;
+            sizeOfRoot[root2] += sizeOfRoot[root1];
+        }
+    }
+
+    // Variable of an integer local, or -1 if it is not tracked
+    public int variable(Value value) {
+        Integer v = integers.get(value);
+        return v == null || packOf[v] < 0 ? -1 : v;
+    }
+
+    // Variable of the length of the array held by an integer-array local, or -1 if it is not tracked
+    public int length(Value value) {
+        Integer v = lengths.get(value);
+        return v == null || packOf[v] < 0 ? -1 : v;
+    }
+
+    public int pack(int variable) {
+        return packOf[variable];
+    }
+
+    public int position(int variable) {
+        return positionOf[variable];
+    }
+
+    public int packCount() {
+        return packSizes.length;
+    }
+
+    public int packSize(int pack) {
+        return packSizes[pack];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int variable) {
+        return names[variable];
+    }
+}
@@ -0,0 +1,168 @@
+package pav;
+
+import java.util.*;
+
+// Bourdoncle's weak topological ordering of the program points.
+// It is built by hierarchical SCC decomposition: the strongly connected components are
+// listed in topological order, and every non-trivial component is split into its head
+// (the point that comes first in reverse post-order) followed by the ordering of the rest
+// of the component. Recursion depth is therefore the loop nesting depth only.
+public class WeakTopologicalOrder {
+    // A plain program point (body == null) or a component with a head and a body
+    public static class Element {
+        public final int point;
+        public final List<Element> body;
+
+        Element(int point, List<Element> body) {
+            this.point = point;
+            this.body = body;
+        }
+
+        public boolean isComponent() {
+            return body != null;
+        }
+
+        public String toString() {
+            return body == null ? String.valueOf(point) : "(" + point + " " + body + ")";
+        }
+    }
+
+    public final List<Element> elements;
+    private final PointGraph graph;
+    private final int[] rank;
+
+    // State of Tarjan's algorithm, by point, allocated once and shared by all levels of the
+    // decomposition: every call of decompose numbers its points with a new region, so that a point
+    // belongs to the subgraph being split iff its region is the current one
+    private final int[] region;
+    private int regions = 0;
+    // index of every visited point (-1 if unvisited) and its low link
+    private final int[] index;
+    private final int[] lowLink;
+    private final boolean[] onStack;
+    private final int[] sccStack;
+    // points of the DFS, and the next of their edges to follow
+    private final int[] callStack;
+    private final int[] nextEdge;
+
+    public WeakTopologicalOrder(PointGraph graph) {
+        this.graph = graph;
+        int[] order = Worklist.reversePostOrder(graph);
+        rank = new int[graph.size];
+        for (int i = 0; i < order.length; i++) {
+            rank[order[i]] = i;
+        }
+        region = new int[graph.size];
+        index = new int[graph.size];
+        lowLink = new int[graph.size];
+        onStack = new boolean[graph.size];
+        sccStack = new int[graph.size];
+        callStack = new int[graph.size];
+        nextEdge = new int[graph.size];
+        List<Integer> all = new ArrayList<>();
+        for (int point : order) {
+            all.add(point);
+        }
+        this.elements = decompose(all);
+    }
+
+    // Order the given points (listed in reverse post-order) by decomposing them into SCCs
+    private List<Element> decompose(List<Integer> points) {
+        List<Element> result = new ArrayList<>();
+        for (List<Integer> scc : stronglyConnectedComponents(points)) {
+            int head = scc.get(0);
+            for (int point : scc) {
+                if (rank[point] < rank[head]) {
+                    head = point;
+                }
+            }
+            if (scc.size() == 1 && graph.edge(head, head) < 0) {
+                result.add(new Element(head, null));
+            } else {
+                // the rest of the component, in reverse post-order, without the head
+                List<Integer> rest = new ArrayList<>(scc);
+                rest.remove(Integer.valueOf(head));
+                Collections.sort(rest, new Comparator<Integer>() {
+                    public int compare(Integer p1, Integer p2) {
+                        return Integer.compare(rank[p1], rank[p2]);
+                    }
+                });
+                result.add(new Element(head, decompose(rest)));
+            }
+        }
+        return result;
+    }
+
+    // Tarjan's algorithm (iterative) on the subgraph induced by the given points.
+    // Components are returned in topological order.
+    private List<List<Integer>> stronglyConnectedComponents(List<Integer> points) {
+        int current = ++regions;
+        for (int point : points) {
+            region[point] = current;
+            index[point] = -1;
+        }
+        List<List<Integer>> components = new ArrayList<>();
+        int sccDepth = 0;
+        int depth = 0;
+        int counter = 0;
+        for (int root : points) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = counter;
+            lowLink[root] = counter;
+            counter++;
+            sccStack[sccDepth++] = root;
+            onStack[root] = true;
+            callStack[0] = root;
+            nextEdge[0] = graph.offsets[root];
+            depth = 1;
+
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (nextEdge[depth - 1] < graph.offsets[v + 1]) {
+                    int w = graph.targets[nextEdge[depth - 1]++];
+                    if (region[w] != current) {
+                        continue;
+                    }
+                    if (index[w] < 0) {
+                        index[w] = counter;
+                        lowLink[w] = counter;
+                        counter++;
+                        sccStack[sccDepth++] = w;
+                        onStack[w] = true;
+                        callStack[depth] = w;
+                        nextEdge[depth] = graph.offsets[w];
+                        depth++;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                } else {
+                    depth--;
+                    if (depth > 0) {
+                        int parent = callStack[depth - 1];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                    if (lowLink[v] == index[v]) {
+                        List<Integer> component = new ArrayList<>();
+                        int w;
+                        do {
+                            w = sccStack[--sccDepth];
+                            onStack[w] = false;
+                            component.add(w);
+                        } while (w != v);
+                        components.add(component);
+                    }
+                }
+            }
+        }
+
+        // Tarjan finds the components in reverse topological order
+        Collections.reverse(components);
+        return components;
+    }
+
+    public String toString() {
+        return elements.toString();
+    }
+}
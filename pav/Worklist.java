@@ -0,0 +1,133 @@
+package pav;
+
+import java.util.*;
+
+// Scheduling strategy for the program points still to be processed by Kildall's algorithm
+public abstract class Worklist {
+    public abstract void add(int point);
+
+    public abstract int poll();
+
+    public abstract boolean isEmpty();
+
+    // Create the worklist named by the "worklist" option (fifo or rpo)
+    public static Worklist create(String strategy, PointGraph graph) {
+        if (strategy.equals("fifo")) {
+            return new FifoWorklist();
+        } else if (strategy.equals("rpo")) {
+            return new PriorityWorklist(graph);
+        }
+        throw new IllegalArgumentException("Unknown worklist strategy: " + strategy);
+    }
+
+    // Compute a reverse post-order of the program points, starting from the entry point 0.
+    // Points not reachable from the entry are ordered after all reachable ones.
+    public static int[] reversePostOrder(PointGraph graph) {
+        int[] postOrder = new int[graph.pointCount()];
+        int postOrderSize = 0;
+        boolean[] visited = new boolean[graph.size];
+
+        // iterative DFS (deep methods would overflow the stack otherwise): the points on the
+        // stack, and the next of their edges to follow
+        int[] stack = new int[graph.pointCount()];
+        int[] nextEdge = new int[graph.pointCount()];
+        int depth = 0;
+        if (graph.contains(0)) {
+            visited[0] = true;
+            stack[0] = 0;
+            nextEdge[0] = graph.offsets[0];
+            depth = 1;
+        }
+        while (depth > 0) {
+            int point = stack[depth - 1];
+            if (nextEdge[depth - 1] < graph.offsets[point + 1]) {
+                int succ = graph.targets[nextEdge[depth - 1]++];
+                if (!visited[succ]) {
+                    visited[succ] = true;
+                    stack[depth] = succ;
+                    nextEdge[depth] = graph.offsets[succ];
+                    depth++;
+                }
+            } else {
+                postOrder[postOrderSize++] = point;
+                depth--;
+            }
+        }
+
+        int[] order = new int[graph.pointCount()];
+        int n = 0;
+        for (int i = postOrderSize - 1; i >= 0; i--) {
+            order[n++] = postOrder[i];
+        }
+        for (int point : graph.points()) {
+            if (!visited[point]) {
+                order[n++] = point;
+            }
+        }
+        return order;
+    }
+}
+
+// First-in first-out queue, without de-duplication (the original scheduling), in a growing ring
+// buffer of ints
+class FifoWorklist extends Worklist {
+    private int[] queue = new int[64];
+    private int head = 0;
+    private int count = 0;
+
+    public void add(int point) {
+        if (count == queue.length) {
+            int[] grown = new int[queue.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = queue[(head + i) % queue.length];
+            }
+            queue = grown;
+            head = 0;
+        }
+        queue[(head + count) % queue.length] = point;
+        count++;
+    }
+
+    public int poll() {
+        int point = queue[head];
+        head = (head + 1) % queue.length;
+        count--;
+        return point;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+}
+
+// Always picks the queued point that comes first in reverse post-order, so that loop bodies
+// are stabilized before their exits. Each point is queued at most once.
+class PriorityWorklist extends Worklist {
+    // rank (position in reverse post-order) of every point, and the point at every rank
+    private final int[] rankOf;
+    private final int[] pointAt;
+    // ranks of the queued points
+    private final BitSet queued = new BitSet();
+
+    PriorityWorklist(PointGraph graph) {
+        pointAt = reversePostOrder(graph);
+        rankOf = new int[graph.size];
+        for (int rank = 0; rank < pointAt.length; rank++) {
+            rankOf[pointAt[rank]] = rank;
+        }
+    }
+
+    public void add(int point) {
+        queued.set(rankOf[point]);
+    }
+
+    public int poll() {
+        int rank = queued.nextSetBit(0);
+        queued.clear(rank);
+        return pointAt[rank];
+    }
+
+    public boolean isEmpty() {
+        return queued.isEmpty();
+    }
+}
@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+
+set -e
+
+if [ $# -lt 4 ]; then
+    echo "Usage: run-batch.sh dirname classglob methodglob upperbound [--threads=N]"
+    exit 1
+fi
+
+DIRNAME=$1
+CLASSGLOB=$2
+METHODGLOB=$3
+UPPERBOUND=$4
+shift 4
+
+source environ.sh
+
+echo === running Analysis.java in batch mode
+
+echo  "=== Running" Analysis --batch "$DIRNAME" "$CLASSGLOB" "$METHODGLOB" "$UPPERBOUND" "$@"
+
+time \
+    java -Xms800m -Xmx3g Analysis --batch "$DIRNAME" "$CLASSGLOB" "$METHODGLOB" "$UPPERBOUND" "$@"
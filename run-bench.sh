@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+
+set -e
+
+# Builds the analysis and the JMH benchmarks in bench/, runs them and writes the results to
+# bench-results.json. Extra arguments are passed to JMH (e.g. a benchmark regex, or
+# -p shape=loops -p size=256 to run a single configuration).
+
+source environ.sh
+
+JMH_CP="pkgs/jmh-core-1.37.jar:pkgs/jopt-simple-5.0.4.jar:pkgs/commons-math3-3.6.1.jar"
+ANNPROCESS="pkgs/jmh-generator-annprocess-1.37.jar:$JMH_CP"
+
+echo === building benchmarks
+rm -rf bench-classes
+mkdir -p bench-classes
+javac -g -d bench-classes -cp "$CLASSPATH:$JMH_CP" -processorpath "$ANNPROCESS" pav/*.java bench/*.java
+
+echo === running benchmarks
+java -cp "bench-classes:$CLASSPATH:$JMH_CP" org.openjdk.jmh.Main -rf json -rff bench-results.json "$@"
@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+
+set -e
+
+if [ $# -lt 2 ]; then
+    echo "Usage: run-query.sh file unsafe|methods [prefix]"
+    echo "       run-query.sh file intervals class method"
+    exit 1
+fi
+
+source environ.sh
+
+java -Xmx512m Analysis --query "$@"
@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+
+set -e
+
+if [ $# -lt 1 ]; then
+    echo "Usage: run-server.sh dirname [--port=N] [flags]"
+    exit 1
+fi
+
+DIRNAME=$1
+shift 1
+
+source environ.sh
+
+echo === running Analysis.java in server mode
+
+echo  "=== Running" Analysis --server "$DIRNAME" "$@"
+
+java -Xms800m -Xmx3g Analysis --server "$DIRNAME" "$@"